@@ -28,9 +28,11 @@ import static com.google.common.collect.Maps.newHashMap;
 import static com.typesafe.config.ConfigRenderOptions.concise;
 import static es.upv.grycap.coreutils.logging.LogManager.getLogManager;
 import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -238,6 +240,19 @@ public abstract class OgDaemon implements Daemon {
 		final Map<String, Object> verticleConfig = newHashMap();
 		verticleConfig.put("daemon-service.startup-timeout", config.getLong("opengateway.daemon-service.startup-timeout"));
 		verticleConfig.put("http-server.port", config.getInt("opengateway.http-server.port"));		
+		verticleConfig.put("http-server.client-backend", config.getString("opengateway.http-server.client-backend"));
+		verticleConfig.put("http-server.upstream-client", new JsonObject(config.getObject("opengateway.http-server.upstream-client").render(concise())));
+		verticleConfig.put("http-server.request-timeout", config.getLong("opengateway.http-server.request-timeout"));
+		verticleConfig.put("http-server.request-coalescing", config.getString("opengateway.http-server.request-coalescing"));
+		final JsonObject responseCache = new JsonObject(config.getObject("opengateway.http-server.response-cache").render(concise()));
+		ofNullable(responseCache.getJsonObject("disk")).ifPresent(disk -> disk.put("path", Paths.get(config.getString("opengateway.files.local-cache"), "responses").toString()));
+		ofNullable(responseCache.getJsonObject("snapshot")).ifPresent(snapshot -> snapshot.put("path", Paths.get(config.getString("opengateway.files.local-cache"), 
+				"response-cache.snapshot").toString()));
+		verticleConfig.put("http-server.response-cache", responseCache);
+		verticleConfig.put("http-server.key-affinity", new JsonObject(config.getObject("opengateway.http-server.key-affinity").render(concise())));
+		verticleConfig.put("http-server.negative-cache", new JsonObject(config.getObject("opengateway.http-server.negative-cache").render(concise())));
+		verticleConfig.put("http-server.circuit-breaker", new JsonObject(config.getObject("opengateway.http-server.circuit-breaker").render(concise())));
+		verticleConfig.put("http-server.concurrency-limit", new JsonObject(config.getObject("opengateway.http-server.concurrency-limit").render(concise())));
 		verticleConfig.put("cluster.name", config.getString("opengateway.cluster.name"));
 		verticleConfig.put("cluster.secret", config.getString("opengateway.cluster.secret"));
 		verticleConfig.put("cluster.network", config.getString("opengateway.cluster.network"));
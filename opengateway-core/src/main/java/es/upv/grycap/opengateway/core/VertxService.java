@@ -29,8 +29,14 @@ import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -47,16 +53,20 @@ import com.hazelcast.config.GroupConfig;
 import com.hazelcast.config.JoinConfig;
 import com.hazelcast.config.NetworkConfig;
 
+import es.upv.grycap.opengateway.core.cache.DistributedCache;
+import es.upv.grycap.opengateway.core.cache.ResponseCache;
+import es.upv.grycap.opengateway.core.loadbalancer.ClusterRouter;
 import es.upv.grycap.opengateway.core.loadbalancer.LoadBalancerClient;
 import es.upv.grycap.opengateway.core.vertx.OgVerticleFactory;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
-import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.core.json.JsonObject;
 import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
 
 /**
- * Vert.x managed service.
+ * Vert.x managed service. When the snapshots of the response cache are enabled, the most used responses are saved to a file when the service
+ * is stopped, and they are loaded in memory when the service is started again, before the verticles are deployed.
  * @author Erik Torres <etserrano@gmail.com>
  * @since 0.0.1
  */
@@ -69,6 +79,9 @@ public class VertxService extends AbstractIdleService {
 	private final LoadBalancerClient loadBalancerClient;
 
 	private Vertx vertx;
+	private ResponseCache responseCache = null;
+	private ClusterRouter clusterRouter = null;
+	private DistributedCache distributedCache = null;
 
 	private final List<Class<?>> verticles;
 
@@ -110,21 +123,40 @@ public class VertxService extends AbstractIdleService {
 			hazelcastNetwork.getInterfaces().addInterface(deploymentOptions.getConfig().getString("cluster.network")).setEnabled(true);
 			final GroupConfig hazelcastGroup = hazelcastConfig.getGroupConfig();
 			hazelcastGroup.setName(deploymentOptions.getConfig().getString("cluster.name")).setPassword(deploymentOptions.getConfig().getString("cluster.secret"));        	
-			final ClusterManager clusterManager = new HazelcastClusterManager(hazelcastConfig);
+			// the distributed response cache needs the near-cache configured before Hazelcast is started
+			final JsonObject distributedConfig = cacheConfig().getJsonObject("distributed", new JsonObject());
+			if (cacheConfig().getBoolean("enabled", true) && distributedConfig.getBoolean("enabled", false)) DistributedCache.configure(hazelcastConfig, distributedConfig);
+			final HazelcastClusterManager clusterManager = new HazelcastClusterManager(hazelcastConfig);
 			vertxOptions.setClusterManager(clusterManager);
 			Vertx.clusteredVertx(vertxOptions, res -> {
 				if (res.succeeded()) {
 					vertx = res.result();
+					// the verticles forward the requests to the nodes that own the items, which are assigned with the membership of the cluster
+					final JsonObject keyAffinity = ofNullable(deploymentOptions.getConfig()).map(c -> c.getJsonObject("http-server.key-affinity")).orElse(new JsonObject());
+					if (keyAffinity.getBoolean("enabled", false)) clusterRouter = ClusterRouter.sharedRouter(vertx, clusterManager.getHazelcastInstance());
 					vertx.registerVerticleFactory(new OgVerticleFactory(loadBalancerClient));
-					// TODO
-					runner.accept(vertx);
-				} else LOGGER.error("Failed to start Vert.x system.", res.cause());
-				future.complete(null);
+					loadBalancerClient.start(vertx);
+					// the snapshot is read outside the event loop
+					vertx.executeBlocking(f -> {
+						loadCacheSnapshot(vertx);
+						// the responses that are not found in this node are looked up in the other nodes of the cluster
+						if (responseCache != null && distributedConfig.getBoolean("enabled", false)) distributedCache = DistributedCache.sharedCache(vertx, 
+								clusterManager.getHazelcastInstance(), distributedConfig, responseCache);
+						f.complete();
+					}, false, res2 -> {
+						runner.accept(vertx);
+						future.complete(null);
+					});
+				} else {
+					LOGGER.error("Failed to start Vert.x system.", res.cause());
+					future.complete(null);
+				}
 			});
 		} else {
 			vertx = Vertx.vertx(vertxOptions);
 			vertx.registerVerticleFactory(new OgVerticleFactory(loadBalancerClient));
-			// TODO
+			loadBalancerClient.start(vertx);
+			loadCacheSnapshot(vertx);
 			runner.accept(vertx);
 			future.complete(null);
 		}
@@ -141,6 +173,12 @@ public class VertxService extends AbstractIdleService {
 
 	@Override
 	protected void shutDown() throws Exception {
+		loadBalancerClient.stop();
+		// the verticles are stopped before saving the snapshot, so that the hits served from their local caches are counted
+		undeployVerticles();
+		if (distributedCache != null) distributedCache.close();
+		saveCacheSnapshot();
+		if (clusterRouter != null) clusterRouter.close();
 		vertx.close(res -> {
 			if (res != null) {
 				if (res.succeeded()) LOGGER.info("Shutdown succeeded.");
@@ -149,6 +187,60 @@ public class VertxService extends AbstractIdleService {
 		});
 	}
 
+	private void undeployVerticles() throws InterruptedException {
+		final Set<String> deploymentIds = vertx.deploymentIDs();
+		final CountDownLatch latch = new CountDownLatch(deploymentIds.size());
+		deploymentIds.stream().forEach(id -> vertx.undeploy(id, res -> {
+			if (res.failed()) LOGGER.warn("Failed to undeploy verticle: " + id, res.cause());
+			latch.countDown();
+		}));
+		if (!latch.await(deploymentOptions.getConfig().getLong("daemon-service.startup-timeout"), TimeUnit.SECONDS)) {
+			LOGGER.warn("Given up to undeploy verticles due to timeout.");
+		}
+	}
+
+	private JsonObject cacheConfig() {
+		return ofNullable(deploymentOptions.getConfig()).map(c -> c.getJsonObject("http-server.response-cache")).orElse(new JsonObject());
+	}
+
+	private @Nullable Path snapshotFile() {
+		final JsonObject snapshot = cacheConfig().getJsonObject("snapshot", new JsonObject());
+		final String path = snapshot.getString("path");
+		return snapshot.getBoolean("enabled", false) && path != null ? Paths.get(path) : null;
+	}
+
+	private void loadCacheSnapshot(final Vertx vertx) {
+		final JsonObject config = cacheConfig();
+		if (!config.getBoolean("enabled", true)) return;
+		// the cache is created before the verticles, which will find it already loaded
+		responseCache = ResponseCache.sharedCache(vertx, config);
+		final Path file = snapshotFile();
+		if (file == null || !Files.exists(file)) return;
+		try {
+			final JsonObject stats = responseCache.loadSnapshot(file);
+			final double mib = stats.getLong("bytes") / (1024.0d * 1024.0d), seconds = Math.max(stats.getLong("millis"), 1l) / 1000.0d;
+			LOGGER.info(String.format("Response cache snapshot loaded in %d ms [responses=%d, skipped=%d, size=%.1f MiB, throughput=%.1f MiB/s].", 
+					stats.getLong("millis"), stats.getLong("loaded"), stats.getLong("skipped"), mib, mib / seconds));
+		} catch (IOException e) {
+			LOGGER.warn("Failed to load response cache snapshot: " + file, e);
+		}
+	}
+
+	private void saveCacheSnapshot() {
+		if (responseCache == null) return;
+		final Path file = snapshotFile();
+		if (file != null) {
+			try {
+				final JsonObject stats = responseCache.writeSnapshot(file, cacheConfig().getJsonObject("snapshot").getInteger("max-entries", 10000));
+				LOGGER.info(String.format("Response cache snapshot saved in %d ms [responses=%d, size=%.1f MiB].", stats.getLong("millis"), 
+						stats.getInteger("entries"), stats.getLong("bytes") / (1024.0d * 1024.0d)));
+			} catch (IOException e) {
+				LOGGER.warn("Failed to save response cache snapshot: " + file, e);
+			}
+		}
+		responseCache.close();
+	}
+
 	public static String verticleName(final Class<?> clazz) {
 		return String.format("%s:%s", OG_VERTICLE_FACTORY_PREFIX, clazz.getCanonicalName());
 	}
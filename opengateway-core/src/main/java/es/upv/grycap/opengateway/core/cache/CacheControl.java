@@ -0,0 +1,181 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.trimToEmpty;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+/**
+ * Directives of the <tt>Cache-Control</tt> header that are relevant to a shared cache (RFC 7234, section 5.2.2), including the extensions
+ * that allow serving stale responses (RFC 5861).
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CacheControl {
+
+	private final boolean noStore;
+	private final boolean noCache;
+	private final boolean isPrivate;
+	private final long maxAge;
+	private final long sMaxAge;
+	private final long staleWhileRevalidate;
+	private final long staleIfError;
+	private final String value;
+
+	private CacheControl(final String value, final boolean noStore, final boolean noCache, final boolean isPrivate, final long maxAge, final long sMaxAge, 
+			final long staleWhileRevalidate, final long staleIfError) {
+		this.noStore = noStore;
+		this.noCache = noCache;
+		this.isPrivate = isPrivate;
+		this.maxAge = maxAge;
+		this.sMaxAge = sMaxAge;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+		this.staleIfError = staleIfError;
+		this.value = value;
+	}
+
+	/**
+	 * Parses the values of the <tt>Cache-Control</tt> header. Unknown directives are ignored.
+	 * @param values - the values of the header (each value can contain several comma-separated directives)
+	 * @return The directives found in the header.
+	 */
+	public static CacheControl parse(final @Nullable List<String> values) {
+		boolean noStore = false, noCache = false, isPrivate = false;
+		long maxAge = -1l, sMaxAge = -1l, staleWhileRevalidate = -1l, staleIfError = -1l;
+		if (values != null) {
+			for (final String value : values) {
+				if (isBlank(value)) continue;
+				for (final String directive : value.split(",")) {
+					final String[] pair = directive.split("=", 2);
+					final String name = trimToEmpty(pair[0]).toLowerCase();
+					final String argument = pair.length > 1 ? trimToEmpty(pair[1]).replace("\"", "") : null;
+					switch (name) {
+					case "no-store":
+						noStore = true;
+						break;
+					case "no-cache":
+						noCache = true;
+						break;
+					case "private":
+						isPrivate = true;
+						break;
+					case "max-age":
+						maxAge = seconds(argument);
+						break;
+					case "s-maxage":
+						sMaxAge = seconds(argument);
+						break;
+					case "stale-while-revalidate":
+						staleWhileRevalidate = seconds(argument);
+						break;
+					case "stale-if-error":
+						staleIfError = seconds(argument);
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+		final String value = values != null ? values.stream().filter(v -> !isBlank(v)).map(String::trim).collect(Collectors.joining(", ")) : "";
+		return new CacheControl(value, noStore, noCache, isPrivate, maxAge, sMaxAge, staleWhileRevalidate, staleIfError);
+	}
+
+	private static long seconds(final @Nullable String argument) {
+		try {
+			return argument != null ? Math.max(0l, Long.parseLong(argument)) : -1l;
+		} catch (NumberFormatException e) {
+			return -1l;
+		}
+	}
+
+	/**
+	 * Gets the directives as they were received, which can be forwarded to the clients.
+	 * @return The comma-separated directives, or an empty string when no directive was received.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isNoStore() {
+		return noStore;
+	}
+
+	public boolean isNoCache() {
+		return noCache;
+	}
+
+	public boolean isPrivate() {
+		return isPrivate;
+	}
+
+	/**
+	 * Gets the value of the <tt>max-age</tt> directive.
+	 * @return The value of the <tt>max-age</tt> directive in seconds, or <tt>-1</tt> when the directive is not present.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Gets the value of the <tt>s-maxage</tt> directive.
+	 * @return The value of the <tt>s-maxage</tt> directive in seconds, or <tt>-1</tt> when the directive is not present.
+	 */
+	public long getSMaxAge() {
+		return sMaxAge;
+	}
+
+	/**
+	 * Gets the value of the <tt>stale-while-revalidate</tt> directive.
+	 * @return The time (in seconds) that a stale response can be served while it's revalidated in the background, or <tt>-1</tt> when the 
+	 *         directive is not present.
+	 */
+	public long getStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	/**
+	 * Gets the value of the <tt>stale-if-error</tt> directive.
+	 * @return The time (in seconds) that a stale response can be served when the upstream service fails, or <tt>-1</tt> when the directive
+	 *         is not present.
+	 */
+	public long getStaleIfError() {
+		return staleIfError;
+	}
+
+	/**
+	 * Gets the time that a response can be stored in a shared cache, giving precedence to <tt>s-maxage</tt> over <tt>max-age</tt>.
+	 * @return The freshness lifetime of the response in seconds, or <tt>0</tt> when the response must not be stored in a shared cache.
+	 */
+	public long sharedMaxAge() {
+		if (noStore || noCache || isPrivate) return 0l;
+		return Math.max(0l, sMaxAge >= 0l ? sMaxAge : maxAge);
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Reads and writes snapshots of the {@link ResponseCache}, which are used to start the gateway with the most used responses already in
+ * memory. A snapshot is a file with a fixed header followed by the responses, each one written as a record with the key, the metadata and
+ * the body of the response. The times of the responses are absolute, so the remaining lifetime of the responses is preserved across restarts,
+ * and the responses that expire while the gateway is stopped are discarded when the snapshot is loaded. Snapshots are read with a single
+ * sequential pass over a memory-mapped window of the file that advances with the records, so the heap is only used to copy the bodies of
+ * the responses that are loaded.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+final class CacheSnapshot {
+
+	private static final Logger LOGGER = getLogger(CacheSnapshot.class);
+
+	private static final int MAGIC = 0x4f475353; // "OGSS"
+	private static final int VERSION = 1;
+	private static final int HEADER = 24;
+	private static final int RECORD_HEADER = 16;
+	private static final long WINDOW = 64l * 1024l * 1024l;
+
+	private CacheSnapshot() { }
+
+	/**
+	 * Writes a snapshot to a temporary file that replaces the specified file when all the responses are written, so that a failure during
+	 * the write does not destroy the previous snapshot.
+	 * @param file - the snapshot file
+	 * @param entries - the responses that are written, in the order that they will be loaded
+	 * @return The number of bytes written.
+	 * @throws IOException if an error occurs writing the file.
+	 */
+	public static long write(final Path file, final List<Map.Entry<String, CachedResponse>> entries) throws IOException {
+		requireNonNull(file, "A valid file expected");
+		requireNonNull(entries, "Valid entries expected");
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		long size = HEADER;
+		try (final FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(entries.size());
+			for (final Map.Entry<String, CachedResponse> entry : entries) {
+				final byte[] key = entry.getKey().getBytes(UTF_8);
+				final byte[] meta = entry.getValue().encodeMetadata();
+				final byte[] body = entry.getValue().getBody().getBytes();
+				final CRC32 crc = new CRC32();
+				crc.update(key);
+				crc.update(meta);
+				crc.update(body);
+				out.writeInt(key.length);
+				out.writeInt(meta.length);
+				out.writeInt(body.length);
+				out.writeInt((int)crc.getValue());
+				out.write(key);
+				out.write(meta);
+				out.write(body);
+				size += RECORD_HEADER + key.length + meta.length + body.length;
+			}
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+		return size;
+	}
+
+	/**
+	 * Reads a snapshot, passing the responses to the specified consumer in the same order that they were written. Reading stops at the first
+	 * damaged record, keeping the responses read before it.
+	 * @param file - the snapshot file
+	 * @param filter - decides whether a response must be loaded from its key and metadata, before the body is read
+	 * @param consumer - receives the responses that pass the filter, returning <tt>true</tt> when the response is loaded
+	 * @return Metrics of the load: number of loaded and skipped responses, bytes read and elapsed time in milliseconds.
+	 * @throws IOException if the file cannot be read or it's not a snapshot.
+	 */
+	public static JsonObject read(final Path file, final Predicate<CachedResponse> filter, final BiPredicate<String, CachedResponse> consumer)
+			throws IOException {
+		requireNonNull(file, "A valid file expected");
+		requireNonNull(filter, "A valid filter expected");
+		requireNonNull(consumer, "A valid consumer expected");
+		final long startTime = System.nanoTime();
+		long loaded = 0l, skipped = 0l;
+		try (final FileChannel channel = FileChannel.open(file, READ)) {
+			final Reader reader = new Reader(channel);
+			if (!reader.ensure(HEADER) || reader.window.getInt() != MAGIC) throw new IOException("Not a cache snapshot: " + file);
+			final int version = reader.window.getInt();
+			if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+			reader.window.getLong();
+			final long count = reader.window.getLong();
+			reader.position += HEADER;
+			for (long i = 0l; i < count; i++) {
+				if (!reader.ensure(RECORD_HEADER)) {
+					LOGGER.warn("Cache snapshot is truncated, " + (count - i) + " responses were lost: " + file);
+					break;
+				}
+				final int keyLength = reader.window.getInt(), metaLength = reader.window.getInt(), bodyLength = reader.window.getInt(),
+						checksum = reader.window.getInt();
+				if (keyLength < 0 || metaLength < 0 || bodyLength < 0 || !reader.ensure((long)RECORD_HEADER + keyLength + metaLength + bodyLength)) {
+					LOGGER.warn("Cache snapshot is damaged, " + (count - i) + " responses were lost: " + file);
+					break;
+				}
+				reader.window.position(reader.window.position() + RECORD_HEADER);
+				final byte[] key = new byte[keyLength], meta = new byte[metaLength];
+				reader.window.get(key).get(meta);
+				final CachedResponse header = CachedResponse.decode(meta, Buffer.buffer(0));
+				final int bodyStart = reader.window.position();
+				reader.position += RECORD_HEADER + keyLength + metaLength + bodyLength;
+				// expired responses are skipped without reading the body
+				if (!filter.test(header)) {
+					skipped++;
+					continue;
+				}
+				final byte[] body = new byte[bodyLength];
+				reader.window.get(body);
+				final CRC32 crc = new CRC32();
+				crc.update(key);
+				crc.update(meta);
+				crc.update(body);
+				if ((int)crc.getValue() != checksum) {
+					LOGGER.warn("Cache snapshot is damaged, " + (count - i) + " responses were lost: " + file);
+					break;
+				}
+				final CachedResponse response = CachedResponse.decode(meta, Buffer.buffer(body));
+				if (consumer.test(new String(key, UTF_8), response)) loaded++;
+				else skipped++;
+				reader.window.position(bodyStart + bodyLength);
+			}
+			return new JsonObject()
+					.put("loaded", loaded)
+					.put("skipped", skipped)
+					.put("bytes", channel.size())
+					.put("millis", (System.nanoTime() - startTime) / 1000000l);
+		}
+	}
+
+	/**
+	 * Maps the file in consecutive windows, so that files larger than the maximum size of a mapped buffer can be read.
+	 */
+	private static class Reader {
+		private final FileChannel channel;
+		private final long size;
+		private long position = 0l;
+		private long windowStart = 0l;
+		private MappedByteBuffer window = null;
+		public Reader(final FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+		/**
+		 * Makes the specified number of bytes available in the window, starting from the current position. The window is positioned at the
+		 * current position.
+		 */
+		public boolean ensure(final long length) throws IOException {
+			if (length > Integer.MAX_VALUE || position + length > size) return false;
+			if (window == null || position + length > windowStart + window.limit()) {
+				windowStart = position;
+				window = channel.map(MapMode.READ_ONLY, windowStart, Math.min(Math.max(WINDOW, length), size - windowStart));
+			}
+			window.position((int)(position - windowStart));
+			return true;
+		}
+	}
+
+}
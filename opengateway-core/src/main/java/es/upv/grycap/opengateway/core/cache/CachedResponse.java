@@ -0,0 +1,264 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A response stored in the {@link ResponseCache}. The body is the content that is sent to the clients (after any conversion applied by
+ * the gateway), so that hits are served without processing the response again. Instances of this class are immutable, except for the number
+ * of hits, which is used to find the most used responses.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CachedResponse {
+
+	private final Buffer body;
+	private final long storedAt;
+	private final long expiresAt;
+	private final long staleWhileRevalidateUntil;
+	private final long staleIfErrorUntil;
+	private final Validators validators;
+	private final String cacheControl;
+	private final Validators upstreamValidators;
+
+	private static final AtomicIntegerFieldUpdater<CachedResponse> HITS = AtomicIntegerFieldUpdater.newUpdater(CachedResponse.class, "hits");
+	private volatile int hits = 0;
+
+	/**
+	 * Creates a new entry that is never served stale.
+	 * @param body - content of the response
+	 * @param storedAt - time when the response was received (milliseconds since the epoch)
+	 * @param expiresAt - time when the response is no longer fresh (milliseconds since the epoch)
+	 */
+	public CachedResponse(final Buffer body, final long storedAt, final long expiresAt) {
+		this(body, storedAt, expiresAt, expiresAt, expiresAt);
+	}
+
+	/**
+	 * Creates a new entry.
+	 * @param body - content of the response
+	 * @param storedAt - time when the response was received (milliseconds since the epoch)
+	 * @param expiresAt - time when the response is no longer fresh (milliseconds since the epoch)
+	 * @param staleWhileRevalidateUntil - time until the response can be served stale while it's revalidated (milliseconds since the epoch)
+	 * @param staleIfErrorUntil - time until the response can be served stale when the upstream service fails (milliseconds since the epoch)
+	 */
+	public CachedResponse(final Buffer body, final long storedAt, final long expiresAt, final long staleWhileRevalidateUntil, final long staleIfErrorUntil) {
+		this(body, storedAt, expiresAt, staleWhileRevalidateUntil, staleIfErrorUntil, new Validators(Validators.strongETag(body), null), null, null);
+	}
+
+	/**
+	 * Creates a new entry with the validators and the directives that are sent to the clients with the response.
+	 * @param body - content of the response
+	 * @param storedAt - time when the response was received (milliseconds since the epoch)
+	 * @param expiresAt - time when the response is no longer fresh (milliseconds since the epoch)
+	 * @param staleWhileRevalidateUntil - time until the response can be served stale while it's revalidated (milliseconds since the epoch)
+	 * @param staleIfErrorUntil - time until the response can be served stale when the upstream service fails (milliseconds since the epoch)
+	 * @param validators - validators of the response
+	 * @param cacheControl - (optional) value of the <tt>Cache-Control</tt> header received from the upstream service
+	 * @param upstreamValidators - (optional) validators received from the upstream service, which are used to revalidate the response when 
+	 *        it expires
+	 */
+	public CachedResponse(final Buffer body, final long storedAt, final long expiresAt, final long staleWhileRevalidateUntil, final long staleIfErrorUntil, 
+			final Validators validators, final @Nullable String cacheControl, final @Nullable Validators upstreamValidators) {
+		this.body = requireNonNull(body, "A valid body expected");
+		this.storedAt = storedAt;
+		this.expiresAt = expiresAt;
+		this.staleWhileRevalidateUntil = Math.max(expiresAt, staleWhileRevalidateUntil);
+		this.staleIfErrorUntil = Math.max(expiresAt, staleIfErrorUntil);
+		this.validators = requireNonNull(validators, "Valid validators expected");
+		this.cacheControl = cacheControl != null && !cacheControl.isEmpty() ? cacheControl : null;
+		this.upstreamValidators = upstreamValidators != null && (upstreamValidators.getETag() != null || upstreamValidators.getLastModified() != null) 
+				? upstreamValidators : null;
+	}
+
+	public Buffer getBody() {
+		return body;
+	}
+
+	public long getStoredAt() {
+		return storedAt;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	public long getStaleWhileRevalidateUntil() {
+		return staleWhileRevalidateUntil;
+	}
+
+	public long getStaleIfErrorUntil() {
+		return staleIfErrorUntil;
+	}
+
+	public Validators getValidators() {
+		return validators;
+	}
+
+	public @Nullable String getCacheControl() {
+		return cacheControl;
+	}
+
+	public @Nullable Validators getUpstreamValidators() {
+		return upstreamValidators;
+	}
+
+	/**
+	 * Gets the number of times that this response was served from the cache.
+	 * @return The number of hits of this response.
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Counts a new hit of this response.
+	 */
+	public void recordHit() {
+		HITS.incrementAndGet(this);
+	}
+
+	/**
+	 * Counts several hits of this response, which were served from a cache that doesn't count the hits one by one.
+	 * @param count - number of hits
+	 */
+	public void recordHits(final int count) {
+		HITS.addAndGet(this, count);
+	}
+
+	/**
+	 * Checks whether the response can be revalidated with the upstream service when it expires, instead of retrieving it again.
+	 * @return <tt>true</tt> when the upstream service sent validators with the response, otherwise <tt>false</tt>.
+	 */
+	public boolean isRevalidatable() {
+		return upstreamValidators != null;
+	}
+
+	/**
+	 * Checks whether the response can be served from the cache at the specified time.
+	 * @param now - current time (milliseconds since the epoch)
+	 * @return <tt>true</tt> when the response is fresh, otherwise <tt>false</tt>.
+	 */
+	public boolean isFresh(final long now) {
+		return now < expiresAt;
+	}
+
+	/**
+	 * Checks whether the response can be served stale at the specified time, while a fresh response is requested in the background.
+	 * @param now - current time (milliseconds since the epoch)
+	 * @return <tt>true</tt> when the response is stale and it can be served while it's revalidated, otherwise <tt>false</tt>.
+	 */
+	public boolean isStaleWhileRevalidate(final long now) {
+		return now >= expiresAt && now < staleWhileRevalidateUntil;
+	}
+
+	/**
+	 * Checks whether the response can be served stale at the specified time when the upstream service fails.
+	 * @param now - current time (milliseconds since the epoch)
+	 * @return <tt>true</tt> when the response is stale and it can be served in place of an error, otherwise <tt>false</tt>.
+	 */
+	public boolean isStaleIfError(final long now) {
+		return now >= expiresAt && now < staleIfErrorUntil;
+	}
+
+	/**
+	 * Checks whether the response is still useful at the specified time, either fresh or stale.
+	 * @param now - current time (milliseconds since the epoch)
+	 * @return <tt>true</tt> when the response can be served in some circumstance, otherwise <tt>false</tt>.
+	 */
+	public boolean isUsable(final long now) {
+		return now < Math.max(staleWhileRevalidateUntil, staleIfErrorUntil);
+	}
+
+	/**
+	 * Gets the age of the response at the specified time.
+	 * @param now - current time (milliseconds since the epoch)
+	 * @return The age of the response in seconds.
+	 */
+	public long age(final long now) {
+		return Math.max(0l, (now - storedAt) / 1000l);
+	}
+
+	/**
+	 * Gets the approximated size of this entry in memory, which is used to bound the size of the cache.
+	 * @return The approximated size of this entry in bytes.
+	 */
+	public int weight() {
+		return body.length() + validators.weight() + (upstreamValidators != null ? upstreamValidators.weight() : 0) + (cacheControl != null ? cacheControl.length() : 0) + 64;
+	}
+
+	/**
+	 * Encodes the metadata of this response (everything but the body), which is stored along with the body when the response is written to
+	 * a file.
+	 * @return The metadata of this response in binary format.
+	 */
+	byte[] encodeMetadata() {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(storedAt);
+			out.writeLong(expiresAt);
+			out.writeLong(staleWhileRevalidateUntil);
+			out.writeLong(staleIfErrorUntil);
+			for (final String value : Arrays.asList(validators.getETag(), validators.getLastModified(), cacheControl,
+					upstreamValidators != null ? upstreamValidators.getETag() : null, upstreamValidators != null ? upstreamValidators.getLastModified() : null)) {
+				out.writeBoolean(value != null);
+				if (value != null) out.writeUTF(value);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to encode response", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Creates a response from the metadata encoded with {@link #encodeMetadata()}.
+	 * @param metadata - metadata of the response
+	 * @param body - content of the response
+	 * @return A new response.
+	 * @throws IOException if the metadata cannot be decoded.
+	 */
+	static CachedResponse decode(final byte[] metadata, final Buffer body) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata))) {
+			final long storedAt = in.readLong(), expiresAt = in.readLong(), staleWhileRevalidateUntil = in.readLong(), staleIfErrorUntil = in.readLong();
+			final String[] values = new String[5];
+			for (int i = 0; i < values.length; i++) values[i] = in.readBoolean() ? in.readUTF() : null;
+			return new CachedResponse(body, storedAt, expiresAt, staleWhileRevalidateUntil, staleIfErrorUntil, new Validators(values[0], values[1]), values[2],
+					new Validators(values[3], values[4]));
+		}
+	}
+
+}
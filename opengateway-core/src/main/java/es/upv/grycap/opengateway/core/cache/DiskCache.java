@@ -0,0 +1,847 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Second tier of the {@link ResponseCache}, which stores the responses in the local disk so that they don't use heap memory and they
+ * survive restarts of the gateway. Responses are appended to a log of segment files, and the position of the current version of each
+ * response is kept in an open-addressing hash table stored in a memory-mapped file. The table is rebuilt from the segments when the cache
+ * was not closed cleanly. The size of the cache is bounded: the segments whose responses are mostly outdated are compacted in the background,
+ * copying the current responses to the active segment, and the oldest segments are dropped when the cache grows beyond its maximum size.
+ * Writes and compactions run in a background thread, while reads block the caller, so they must not be called from an event loop. The
+ * number of writes waiting for the background thread is bounded, so that the responses waiting to be written don't fill the heap: new
+ * responses are dropped when the queue is full, while removals are applied by the caller. The
+ * index can be probed without blocking (see {@link #mightContain(String)}) to avoid reading the responses that are not in the disk.
+ * This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class DiskCache implements Closeable {
+
+	public static final long MAX_SIZE_MIB = 1024l;
+	public static final long SEGMENT_SIZE_MIB = 64l;
+	public static final int MAX_ENTRIES = 100000;
+	public static final int MAX_PENDING_WRITES = 1000;
+
+	private static final Logger LOGGER = getLogger(DiskCache.class);
+
+	private static final int RECORD_MAGIC = 0x4f475231; // OGR1
+	private static final long INDEX_MAGIC = 0x4f47494e44455831l; // OGINDEX1
+	/**
+	 * Records: magic, CRC-32 of the rest of the record, key length, metadata length, body length (-1 for removals), retention time, key,
+	 * metadata and body.
+	 */
+	private static final int RECORD_HEADER = 28;
+	/**
+	 * Index: magic, capacity, clean shutdown flag and slots. Slots: hash of the key (0 for empty slots), segment (-1 for removed slots),
+	 * offset, length, padding and retention time.
+	 */
+	private static final int INDEX_HEADER = 64;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int CLEAN_OFFSET = 12;
+	private static final int SLOT_SIZE = 32;
+	private static final int REMOVED = -1;
+	private static final double MAX_LOAD = 0.75d;
+	private static final double COMPACTION_THRESHOLD = 0.5d;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final Path directory;
+	private final long maxSize;
+	private final long segmentSize;
+	private final int capacity;
+
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private final FileChannel indexChannel;
+	private final MappedByteBuffer index;
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+	private Segment active;
+	private int entries = 0;
+	private int used = 0;
+	private volatile boolean closed = false;
+
+	private final ThreadPoolExecutor writer;
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+	private final Thread shutdownHook;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder droppedWrites = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder compactions = new LongAdder();
+
+	/**
+	 * Opens the cache stored in the specified directory, creating a new cache when the directory is empty.
+	 * @param directory - directory where the cache is stored, which cannot be shared with other running instances of the gateway
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param segmentSize - size of the segment files in bytes
+	 * @param maxEntries - maximum number of responses stored in the cache
+	 * @throws IOException when the cache cannot be opened, or when the directory is in use by another instance
+	 */
+	public DiskCache(final Path directory, final long maxSize, final long segmentSize, final int maxEntries) throws IOException {
+		this(directory, maxSize, segmentSize, maxEntries, MAX_PENDING_WRITES);
+	}
+
+	/**
+	 * Opens the cache stored in the specified directory, creating a new cache when the directory is empty.
+	 * @param directory - directory where the cache is stored, which cannot be shared with other running instances of the gateway
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param segmentSize - size of the segment files in bytes
+	 * @param maxEntries - maximum number of responses stored in the cache
+	 * @param maxPendingWrites - maximum number of writes waiting for the background thread
+	 * @throws IOException when the cache cannot be opened, or when the directory is in use by another instance
+	 */
+	public DiskCache(final Path directory, final long maxSize, final long segmentSize, final int maxEntries, final int maxPendingWrites) throws IOException {
+		this.directory = requireNonNull(directory, "A valid directory expected");
+		if (maxSize <= 0l || segmentSize <= 0l || segmentSize > Integer.MAX_VALUE || maxEntries <= 0 || maxPendingWrites <= 0) throw new IllegalArgumentException("Valid sizes expected");
+		this.maxSize = maxSize;
+		this.segmentSize = Math.min(segmentSize, maxSize);
+		this.capacity = Integer.highestOneBit(Math.max(16, (int)Math.min(1 << 30, (long)(maxEntries / MAX_LOAD) + 1)) - 1) << 1;
+		Files.createDirectories(directory);
+		lockChannel = FileChannel.open(directory.resolve("lock"), CREATE, WRITE);
+		FileLock lock = null;
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// the cache is open in this application
+		}
+		this.lock = lock;
+		if (lock == null) {
+			lockChannel.close();
+			throw new IOException("Cache directory is in use: " + directory);
+		}
+		// open the index, which is rebuilt from the segments when it doesn't match the configuration or the cache was not closed cleanly
+		final long indexSize = INDEX_HEADER + (long)capacity * SLOT_SIZE;
+		indexChannel = FileChannel.open(directory.resolve("index"), CREATE, READ, WRITE);
+		final boolean reusable = indexChannel.size() == indexSize;
+		if (indexChannel.size() > indexSize) indexChannel.truncate(indexSize);
+		index = indexChannel.map(MapMode.READ_WRITE, 0l, indexSize);
+		final boolean valid = reusable && index.getLong(0) == INDEX_MAGIC && index.getInt(CAPACITY_OFFSET) == capacity && index.getInt(CLEAN_OFFSET) == 1;
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (final Path file : stream) {
+				final String name = file.getFileName().toString();
+				try {
+					final int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					segments.put(id, new Segment(id, file));
+				} catch (NumberFormatException e) {
+					LOGGER.warn("Ignoring unknown file in cache directory: " + file);
+				}
+			}
+		}
+		if (valid) countLive();
+		else rebuild();
+		index.putInt(CLEAN_OFFSET, 0);
+		index.force();
+		active = segments.isEmpty() || segments.lastEntry().getValue().size >= this.segmentSize ? newSegment() : segments.lastEntry().getValue();
+		writer = new ThreadPoolExecutor(1, 1, 0l, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxPendingWrites), 
+				new ThreadFactoryBuilder().setNameFormat("opengateway-disk-cache-%d").setDaemon(true).build());
+		// close the cache cleanly when the application exits, so that the index is reused in the next start
+		shutdownHook = new Thread(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to close cache: " + directory, e);
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		LOGGER.info("Disk cache opened [directory=" + directory + ", entries=" + entries + ", segments=" + segments.size() + ", rebuilt=" + !valid + "].");
+		scheduleCompaction();
+	}
+
+	/**
+	 * Gets a response from the cache. This method blocks while the response is read from the disk.
+	 * @param key - key of the response
+	 * @return The response, or <tt>null</tt> when the response is not found in the cache or when its retention time has passed.
+	 */
+	public @Nullable CachedResponse get(final String key) {
+		final long hash = hash(requireNonNull(key, "A valid key expected"));
+		// the position of the record is read with the lock held, but the record is read without the lock, since the records are never
+		// modified once written. The segment can be deleted while it's read, in which case the response is not found
+		final Segment segment;
+		final long offset;
+		final int length;
+		synchronized (this) {
+			if (closed) return null;
+			final int slot = find(hash);
+			if (slot < 0 || retainUntil(slot) <= System.currentTimeMillis()) {
+				misses.increment();
+				return null;
+			}
+			segment = segments.get(segmentOf(slot));
+			offset = offsetOf(slot);
+			length = lengthOf(slot);
+		}
+		try {
+			final ByteBuffer record = segment.read(offset, length);
+			if (crc(record) != record.getInt(4)) {
+				LOGGER.warn("Corrupted response found in cache, the response will be removed: " + key);
+				misses.increment();
+				dropCorrupted(hash, segment, offset);
+				return null;
+			}
+			final int keyLength = record.getInt(8), metaLength = record.getInt(12), bodyLength = record.getInt(16);
+			final byte[] keyBytes = new byte[keyLength];
+			record.position(RECORD_HEADER);
+			record.get(keyBytes);
+			if (!key.equals(new String(keyBytes, UTF_8))) {
+				misses.increment();
+				return null;
+			}
+			final byte[] meta = new byte[metaLength];
+			record.get(meta);
+			final byte[] body = new byte[bodyLength];
+			record.get(body);
+			hits.increment();
+			return CachedResponse.decode(meta, Buffer.buffer(body));
+		} catch (ClosedChannelException e) {
+			misses.increment();
+			return null;
+		} catch (IOException e) {
+			LOGGER.warn("Failed to read response from cache: " + key, e);
+			misses.increment();
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a response might be stored in the cache. This method reads the index without blocking, so it can be called from an 
+	 * event loop. The answer is not exact: it can be wrong when the response is changed while the index is read, and the response can be
+	 * discarded when it's read with {@link #get(String)}.
+	 * @param key - key of the response
+	 * @return <tt>true</tt> when the response might be stored in the cache, <tt>false</tt> when the response is not stored in the cache.
+	 */
+	public boolean mightContain(final String key) {
+		if (closed) return false;
+		final int slot = find(hash(requireNonNull(key, "A valid key expected")));
+		return slot >= 0 && retainUntil(slot) > System.currentTimeMillis();
+	}
+
+	/**
+	 * Stores a response in the cache in the background. The response is dropped when too many writes are waiting for the background thread.
+	 * @param key - key of the response
+	 * @param response - response to store
+	 * @param retainUntil - time until the response is kept in the cache (milliseconds since the epoch)
+	 */
+	public void putAsync(final String key, final CachedResponse response, final long retainUntil) {
+		requireNonNull(key, "A valid key expected");
+		requireNonNull(response, "A valid response expected");
+		if (!submit(() -> put(key, response, retainUntil)) && !writer.isShutdown()) droppedWrites.increment();
+	}
+
+	/**
+	 * Removes a response from the cache in the background.
+	 * @param key - key of the response
+	 * @param completionHandler - is called when the response is removed
+	 */
+	public void invalidateAsync(final String key, final Runnable completionHandler) {
+		requireNonNull(key, "A valid key expected");
+		requireNonNull(completionHandler, "A valid completion handler expected");
+		submitOrRun(() -> {
+			try {
+				invalidate(key);
+			} finally {
+				completionHandler.run();
+			}
+		});
+	}
+
+	/**
+	 * Removes all the responses from the cache in the background.
+	 * @param completionHandler - is called when the responses are removed
+	 */
+	public void invalidateAllAsync(final Runnable completionHandler) {
+		requireNonNull(completionHandler, "A valid completion handler expected");
+		submitOrRun(() -> {
+			try {
+				invalidateAll();
+			} finally {
+				completionHandler.run();
+			}
+		});
+	}
+
+	/**
+	 * Stores a response in the cache. This method blocks while the response is written to the disk.
+	 * @param key - key of the response
+	 * @param response - response to store
+	 * @param retainUntil - time until the response is kept in the cache (milliseconds since the epoch)
+	 * @return <tt>true</tt> when the response was stored, otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean put(final String key, final CachedResponse response, final long retainUntil) {
+		if (closed) return false;
+		final long hash = hash(requireNonNull(key, "A valid key expected"));
+		final ByteBuffer record = encode(key, requireNonNull(response, "A valid response expected"), retainUntil);
+		if (record.remaining() > segmentSize) return false;
+		try {
+			if (find(hash) < 0 && !ensureCapacity()) return false;
+			final int length = record.remaining();
+			final long offset = append(record);
+			setSlot(hash, active.id, offset, length, retainUntil);
+			writes.increment();
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write response to cache: " + key, e);
+			return false;
+		}
+		if (totalSize() > maxSize) scheduleCompaction();
+		return true;
+	}
+
+	/**
+	 * Removes a response from the cache. The removal is also written to the log, so that the response is not restored when the index is
+	 * rebuilt.
+	 * @param key - key of the response
+	 */
+	public synchronized void invalidate(final String key) {
+		if (closed) return;
+		final long hash = hash(requireNonNull(key, "A valid key expected"));
+		final int slot = find(hash);
+		if (slot < 0) return;
+		removeSlot(slot);
+		try {
+			append(encode(key, null, 0l));
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write removal to cache: " + key, e);
+		}
+	}
+
+	/**
+	 * Removes all the responses from the cache, deleting all the segments.
+	 */
+	public synchronized void invalidateAll() {
+		if (closed) return;
+		for (int slot = 0; slot < capacity; slot++) clearSlot(slot);
+		entries = used = 0;
+		for (final Segment segment : segments.values().toArray(new Segment[0])) deleteSegment(segment);
+		try {
+			active = newSegment();
+		} catch (IOException e) {
+			LOGGER.warn("Failed to create segment in cache: " + directory, e);
+			closed = true;
+		}
+	}
+
+	/**
+	 * Gets the number of responses stored in the cache.
+	 * @return The number of responses stored in the cache.
+	 */
+	public synchronized int size() {
+		return entries;
+	}
+
+	/**
+	 * Gets the size of the segments in the disk.
+	 * @return The size of the segments in bytes.
+	 */
+	public synchronized long totalSize() {
+		return segments.values().stream().mapToLong(s -> s.size).sum();
+	}
+
+	/**
+	 * Waits until the writes and compactions submitted to the background thread complete.
+	 * @param timeout - maximum time to wait (in milliseconds)
+	 * @return <tt>true</tt> when the pending tasks completed, otherwise <tt>false</tt>.
+	 */
+	public boolean awaitPending(final long timeout) {
+		final long deadline = System.currentTimeMillis() + timeout;
+		try {
+			Future<?> pending = null;
+			// the queue can be full, in which case the submission is retried until the deadline
+			while (pending == null) {
+				try {
+					pending = writer.submit(() -> { });
+				} catch (RejectedExecutionException e) {
+					if (writer.isShutdown() || System.currentTimeMillis() >= deadline) return false;
+					Thread.sleep(10l);
+				}
+			}
+			return pending.get(Math.max(0l, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS) == null;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the metrics of the cache: number of hits and misses, number of writes, number of writes dropped because the queue of the background
+	 * thread was full, number of responses dropped to bound the size of the cache, number of compacted segments, number of responses and size
+	 * of the segments.
+	 * @return A JSON object with the metrics of the cache.
+	 */
+	public JsonObject stats() {
+		synchronized (this) {
+			return new JsonObject()
+					.put("hits", hits.sum())
+					.put("misses", misses.sum())
+					.put("writes", writes.sum())
+					.put("dropped-writes", droppedWrites.sum())
+					.put("evictions", evictions.sum())
+					.put("compactions", compactions.sum())
+					.put("entries", entries)
+					.put("segments", segments.size())
+					.put("size-bytes", totalSize());
+		}
+	}
+
+	/**
+	 * Completes the pending writes and closes the cache, marking the index as clean so that it's reused when the cache is opened again.
+	 */
+	@Override
+	public void close() throws IOException {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10l, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			try {
+				for (final Segment segment : segments.values()) segment.close();
+				index.putInt(CLEAN_OFFSET, 1);
+				index.force();
+				indexChannel.close();
+			} finally {
+				lock.release();
+				lockChannel.close();
+			}
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException ignore) {
+			// the application is exiting
+		}
+		LOGGER.info("Disk cache closed [directory=" + directory + "].");
+	}
+
+	/**
+	 * Submits a task to the background thread.
+	 * @return <tt>true</tt> when the task was submitted, <tt>false</tt> when the queue is full or the cache is closed.
+	 */
+	private boolean submit(final Runnable task) {
+		try {
+			writer.execute(() -> run(task));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Submits a task to the background thread, running the task in the caller when the queue is full. Used for the removals, which cannot be 
+	 * dropped without serving outdated responses.
+	 */
+	private void submitOrRun(final Runnable task) {
+		if (!submit(task) && !writer.isShutdown()) run(task);
+	}
+
+	private void run(final Runnable task) {
+		try {
+			task.run();
+		} catch (Exception e) {
+			LOGGER.warn("Failed to update cache: " + directory, e);
+		}
+	}
+
+	private void scheduleCompaction() {
+		// the compaction is scheduled again by the next write when the queue is full
+		if (compactionScheduled.compareAndSet(false, true) && !submit(() -> {
+			compactionScheduled.set(false);
+			compact();
+		})) compactionScheduled.set(false);
+	}
+
+	/**
+	 * Drops the oldest segments while the cache is larger than its maximum size, and compacts the segments whose live responses are below
+	 * the threshold, copying the live responses to the active segment. Runs in the background thread, which is the only thread that deletes
+	 * segments, so the sealed segments can be read without holding the lock.
+	 */
+	private void compact() {
+		for (;;) {
+			synchronized (this) {
+				if (closed || totalSize() <= maxSize || segments.size() < 2) break;
+				evictions.add(dropSegment(segments.firstEntry().getValue()));
+			}
+		}
+		final Segment[] sealed;
+		synchronized (this) {
+			if (closed) return;
+			sealed = segments.values().stream().filter(s -> s != active && s.live < s.size * COMPACTION_THRESHOLD).toArray(Segment[]::new);
+		}
+		for (final Segment segment : sealed) {
+			try {
+				long offset = 0l;
+				while (offset + RECORD_HEADER <= segment.size) {
+					final ByteBuffer header = segment.read(offset, RECORD_HEADER);
+					final int length = RECORD_HEADER + header.getInt(8) + header.getInt(12) + Math.max(0, header.getInt(16));
+					final ByteBuffer record = segment.read(offset, length);
+					final byte[] key = new byte[header.getInt(8)];
+					record.position(RECORD_HEADER);
+					record.get(key);
+					record.position(0);
+					synchronized (this) {
+						if (closed) return;
+						final int slot = find(hash(new String(key, UTF_8)));
+						if (header.getInt(16) >= 0) {
+							// copy the current version of the response, unless its retention time has passed
+							if (slot >= 0 && segmentOf(slot) == segment.id && offsetOf(slot) == offset) {
+								if (retainUntil(slot) > System.currentTimeMillis()) setSlot(hashOf(slot), active.id, append(record), length, retainUntil(slot));
+								else removeSlot(slot);
+							}
+						} else if (slot < 0 && segments.firstKey() < segment.id) {
+							// keep the removals that hide older versions of the response stored in older segments
+							append(record);
+						}
+					}
+					offset += length;
+				}
+				synchronized (this) {
+					if (closed) return;
+					evictions.add(dropSegment(segment));
+					compactions.increment();
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Failed to compact segment: " + segment.file, e);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the segments, replaying the records in the order they were written. Segments are truncated at the first
+	 * invalid record, which can be found when the gateway stopped while a record was written.
+	 */
+	private void rebuild() throws IOException {
+		for (int i = 0; i < INDEX_HEADER + capacity * SLOT_SIZE; i += 8) index.putLong(i, 0l);
+		index.putLong(0, INDEX_MAGIC);
+		index.putInt(CAPACITY_OFFSET, capacity);
+		entries = used = 0;
+		final long now = System.currentTimeMillis();
+		for (final Segment segment : segments.values()) {
+			long offset = 0l;
+			while (offset + RECORD_HEADER <= segment.size) {
+				final ByteBuffer header = segment.read(offset, RECORD_HEADER);
+				final int keyLength = header.getInt(8), metaLength = header.getInt(12), bodyLength = header.getInt(16);
+				final long length = (long)RECORD_HEADER + keyLength + metaLength + Math.max(0, bodyLength);
+				if (header.getInt(0) != RECORD_MAGIC || keyLength < 0 || metaLength < 0 || bodyLength < -1 || offset + length > segment.size) break;
+				final ByteBuffer record = segment.read(offset, (int)length);
+				if (crc(record) != record.getInt(4)) break;
+				final byte[] key = new byte[keyLength];
+				record.position(RECORD_HEADER);
+				record.get(key);
+				final long hash = hash(new String(key, UTF_8)), retainUntil = record.getLong(20);
+				final int slot = find(hash);
+				if (slot >= 0) removeSlot(slot);
+				if (used + 1 > capacity * MAX_LOAD && entries + 1 <= capacity * MAX_LOAD / 2) rehash();
+				if (bodyLength >= 0 && retainUntil > now && used + 1 <= capacity * MAX_LOAD) setSlot(hash, segment.id, offset, (int)length, retainUntil);
+				offset += length;
+			}
+			if (offset < segment.size) {
+				LOGGER.warn("Truncating segment at offset " + offset + ": " + segment.file);
+				segment.truncate(offset);
+			}
+		}
+		countLive();
+	}
+
+	/**
+	 * Counts the number of responses and the bytes of the live responses in each segment, removing the slots that point to missing segments.
+	 */
+	private void countLive() {
+		entries = used = 0;
+		segments.values().forEach(s -> s.live = 0l);
+		for (int slot = 0; slot < capacity; slot++) {
+			if (hashOf(slot) == 0l) continue;
+			used++;
+			if (segmentOf(slot) == REMOVED) continue;
+			final Segment segment = segments.get(segmentOf(slot));
+			if (segment == null || offsetOf(slot) + lengthOf(slot) > segment.size) {
+				index.putInt(slotOffset(slot) + 8, REMOVED);
+			} else {
+				segment.live += lengthOf(slot);
+				entries++;
+			}
+		}
+	}
+
+	/**
+	 * Makes room for a new slot: the table is rehashed when it's full of removed slots, otherwise the oldest segment is dropped.
+	 * @return <tt>true</tt> when a new slot can be used.
+	 */
+	private boolean ensureCapacity() {
+		while (used + 1 > capacity * MAX_LOAD) {
+			if (entries + 1 <= capacity * MAX_LOAD / 2) {
+				rehash();
+			} else if (segments.size() > 1) {
+				evictions.add(dropSegment(segments.firstEntry().getValue()));
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		final long[][] live = new long[entries][];
+		int n = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (hashOf(slot) != 0l && segmentOf(slot) != REMOVED) {
+				live[n++] = new long[] { hashOf(slot), segmentOf(slot), offsetOf(slot), lengthOf(slot), retainUntil(slot) };
+			}
+			clearSlot(slot);
+		}
+		entries = used = 0;
+		final Map<Integer, Long> liveBytes = new TreeMap<>();
+		segments.values().forEach(s -> liveBytes.put(s.id, s.live));
+		for (int i = 0; i < n; i++) setSlot(live[i][0], (int)live[i][1], live[i][2], (int)live[i][3], live[i][4]);
+		// setting the slots counted the live bytes again
+		segments.values().forEach(s -> s.live = liveBytes.get(s.id));
+	}
+
+	private int dropSegment(final Segment segment) {
+		int dropped = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (hashOf(slot) != 0l && segmentOf(slot) == segment.id) {
+				removeSlot(slot);
+				dropped++;
+			}
+		}
+		deleteSegment(segment);
+		if (segment == active) {
+			try {
+				active = newSegment();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to create segment in cache: " + directory, e);
+				closed = true;
+			}
+		}
+		return dropped;
+	}
+
+	private void deleteSegment(final Segment segment) {
+		segments.remove(segment.id);
+		try {
+			segment.close();
+			Files.deleteIfExists(segment.file);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to delete segment: " + segment.file, e);
+		}
+	}
+
+	private Segment newSegment() throws IOException {
+		final int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		final Segment segment = new Segment(id, directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private long append(final ByteBuffer record) throws IOException {
+		if (active.size + record.remaining() > segmentSize) active = newSegment();
+		return active.append(record);
+	}
+
+	private int find(final long hash) {
+		final int mask = capacity - 1;
+		for (int slot = (int)(hash ^ (hash >>> 32)) & mask, i = 0; i < capacity; slot = (slot + 1) & mask, i++) {
+			final long current = hashOf(slot);
+			if (current == 0l) return -1;
+			if (current == hash && segmentOf(slot) != REMOVED) return slot;
+		}
+		return -1;
+	}
+
+	private void setSlot(final long hash, final int segmentId, final long offset, final int length, final long retainUntil) {
+		int slot = find(hash);
+		if (slot >= 0) {
+			removeSlot(slot);
+		} else {
+			final int mask = capacity - 1;
+			slot = (int)(hash ^ (hash >>> 32)) & mask;
+			while (hashOf(slot) != 0l && segmentOf(slot) != REMOVED) slot = (slot + 1) & mask;
+		}
+		if (hashOf(slot) == 0l) used++;
+		final int position = slotOffset(slot);
+		index.putLong(position, hash);
+		index.putInt(position + 8, segmentId);
+		index.putInt(position + 12, (int)offset);
+		index.putInt(position + 16, length);
+		index.putLong(position + 24, retainUntil);
+		final Segment segment = segments.get(segmentId);
+		if (segment != null) segment.live += length;
+		entries++;
+	}
+
+	/**
+	 * Removes a corrupted record from the index, unless the key was updated or the record was moved while it was read.
+	 */
+	private synchronized void dropCorrupted(final long hash, final Segment segment, final long offset) {
+		if (closed) return;
+		final int slot = find(hash);
+		if (slot >= 0 && segments.get(segmentOf(slot)) == segment && offsetOf(slot) == offset) removeSlot(slot);
+	}
+
+	private void removeSlot(final int slot) {
+		final Segment segment = segments.get(segmentOf(slot));
+		if (segment != null) segment.live -= lengthOf(slot);
+		index.putInt(slotOffset(slot) + 8, REMOVED);
+		entries--;
+	}
+
+	private void clearSlot(final int slot) {
+		final int position = slotOffset(slot);
+		for (int i = 0; i < SLOT_SIZE; i += 8) index.putLong(position + i, 0l);
+	}
+
+	private static int slotOffset(final int slot) {
+		return INDEX_HEADER + slot * SLOT_SIZE;
+	}
+
+	private long hashOf(final int slot) {
+		return index.getLong(slotOffset(slot));
+	}
+
+	private int segmentOf(final int slot) {
+		return index.getInt(slotOffset(slot) + 8);
+	}
+
+	private long offsetOf(final int slot) {
+		return index.getInt(slotOffset(slot) + 12) & 0xffffffffl;
+	}
+
+	private int lengthOf(final int slot) {
+		return index.getInt(slotOffset(slot) + 16);
+	}
+
+	private long retainUntil(final int slot) {
+		return index.getLong(slotOffset(slot) + 24);
+	}
+
+	private static long hash(final String key) {
+		final long hash = HASH.hashString(key, UTF_8).asLong();
+		// zero marks the empty slots
+		return hash != 0l ? hash : 1l;
+	}
+
+	private static int crc(final ByteBuffer record) {
+		final CRC32 crc = new CRC32();
+		crc.update(record.array(), record.arrayOffset() + 8, record.limit() - 8);
+		return (int)crc.getValue();
+	}
+
+	private static ByteBuffer encode(final String key, final @Nullable CachedResponse response, final long retainUntil) {
+		final byte[] keyBytes = key.getBytes(UTF_8);
+		final byte[] meta = response != null ? response.encodeMetadata() : new byte[0];
+		final int bodyLength = response != null ? response.getBody().length() : -1;
+		final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + keyBytes.length + meta.length + Math.max(0, bodyLength));
+		record.putInt(RECORD_MAGIC).putInt(0).putInt(keyBytes.length).putInt(meta.length).putInt(bodyLength).putLong(retainUntil).put(keyBytes).put(meta);
+		if (response != null) record.put(response.getBody().getByteBuf().nioBuffer());
+		record.flip();
+		record.putInt(4, crc(record));
+		return record;
+	}
+
+	/**
+	 * A segment file. Records are only appended to the active segment.
+	 */
+	private static class Segment {
+		private final int id;
+		private final Path file;
+		private final FileChannel channel;
+		private long size;
+		private long live = 0l;
+		public Segment(final int id, final Path file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+			this.size = channel.size();
+		}
+		public ByteBuffer read(final long offset, final int length) throws IOException {
+			final ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of segment: " + file);
+			}
+			buffer.flip();
+			return buffer;
+		}
+		public long append(final ByteBuffer record) throws IOException {
+			final long offset = size;
+			while (record.hasRemaining()) size += channel.write(record, size);
+			return offset;
+		}
+		public void truncate(final long newSize) throws IOException {
+			channel.truncate(newSize);
+			size = newSize;
+		}
+		public void close() throws IOException {
+			if (channel.isOpen()) {
+				channel.force(false);
+				channel.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.MaxSizeConfig.MaxSizePolicy;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ICompletableFuture;
+import com.hazelcast.core.IMap;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Response cache shared by all the nodes of a gateway cluster, which is stored in a distributed map of the Hazelcast cluster that Vert.x
+ * uses for clustering. This cache sits below the {@link ResponseCache} of each node: responses that are not found in the local cache are
+ * looked up in this cache before contacting the upstream service, so each response is retrieved from the upstream service once per cluster
+ * instead of once per node. Each node keeps a near-cache of the distributed map (see {@link #configure(Config, JsonObject)}), which
+ * Hazelcast invalidates when the responses change. Removals are also broadcast to the other nodes over the event bus, so that they
+ * remove the response from their local caches. Only fresh responses are shared, and lookups that take longer than a configurable timeout
+ * are considered misses. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class DistributedCache implements Shareable {
+
+	public static final String MAP_NAME = "opengateway.response-cache";
+	public static final String INVALIDATIONS_ADDRESS = "opengateway.response-cache.invalidations";
+	public static final long TIMEOUT_MS = 100l;
+	public static final int MAX_SIZE_MIB = 256;
+	public static final int NEAR_CACHE_MAX_ENTRIES = 10000;
+
+	private static final Logger LOGGER = getLogger(DistributedCache.class);
+
+	private static final String SHARED_MAP = "opengateway.distributed-cache";
+
+	private final Vertx vertx;
+	private final IMap<String, byte[]> map;
+	private final ResponseCache localCache;
+	private final long timeout;
+	private final String nodeId = UUID.randomUUID().toString();
+	private final MessageConsumer<JsonObject> consumer;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder puts = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Creates a new cache.
+	 * @param vertx - Vert.x instance used to broadcast the removals
+	 * @param map - distributed map where the responses are stored
+	 * @param localCache - cache of this node, where the removals broadcast by the other nodes are applied
+	 * @param timeout - maximum time (in milliseconds) to wait for a lookup
+	 */
+	public DistributedCache(final Vertx vertx, final IMap<String, byte[]> map, final ResponseCache localCache, final long timeout) {
+		this.vertx = requireNonNull(vertx, "A valid Vert.x instance expected");
+		this.map = requireNonNull(map, "A valid map expected");
+		this.localCache = requireNonNull(localCache, "A valid local cache expected");
+		this.timeout = timeout;
+		this.consumer = vertx.eventBus().<JsonObject>consumer(INVALIDATIONS_ADDRESS, message -> {
+			final JsonObject invalidation = message.body();
+			if (!nodeId.equals(invalidation.getString("node"))) localCache.invalidate(invalidation.getString("appId"), invalidation.getString("path"));
+		});
+	}
+
+	/**
+	 * Adds the configuration of the distributed map to the configuration of a Hazelcast instance, which must be done before the instance
+	 * is created. The map is read from the configuration: <tt>max-size</tt> (MiB of heap used by the map in each node), and the near-cache
+	 * from the property <tt>near-cache</tt>: <tt>enabled</tt>, <tt>max-entries</tt> and <tt>ttl</tt> (seconds).
+	 * @param hazelcastConfig - configuration of the Hazelcast instance
+	 * @param config - configuration of the cache
+	 */
+	public static void configure(final Config hazelcastConfig, final JsonObject config) {
+		requireNonNull(hazelcastConfig, "A valid Hazelcast configuration expected");
+		requireNonNull(config, "A valid configuration expected");
+		// responses can be retrieved again from the upstream services, so they are not backed up in other nodes
+		final MapConfig mapConfig = new MapConfig(MAP_NAME)
+				.setBackupCount(0)
+				.setEvictionPolicy(EvictionPolicy.LRU)
+				.setMaxSizeConfig(new MaxSizeConfig(config.getInteger("max-size", MAX_SIZE_MIB), MaxSizePolicy.USED_HEAP_SIZE));
+		final JsonObject nearCache = config.getJsonObject("near-cache", new JsonObject());
+		if (nearCache.getBoolean("enabled", true)) {
+			mapConfig.setNearCacheConfig(new NearCacheConfig()
+					.setInvalidateOnChange(true)
+					.setInMemoryFormat(InMemoryFormat.OBJECT)
+					.setEvictionPolicy("LRU")
+					.setMaxSize(nearCache.getInteger("max-entries", NEAR_CACHE_MAX_ENTRIES))
+					.setTimeToLiveSeconds(nearCache.getInteger("ttl", 0)));
+		}
+		hazelcastConfig.addMapConfig(mapConfig);
+	}
+
+	/**
+	 * Gets the cache shared by the verticles deployed in the specified Vert.x instance, creating a new cache that stores the responses in the
+	 * specified Hazelcast instance the first time that this method is called. The timeout of the lookups is read from the property 
+	 * <tt>timeout</tt> (milliseconds) of the configuration. The cache must be closed when Vert.x is closed.
+	 * @param vertx - Vert.x instance
+	 * @param hazelcast - Hazelcast instance that Vert.x uses for clustering
+	 * @param config - configuration of the cache
+	 * @param localCache - cache of this node
+	 * @return The cache shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static DistributedCache sharedCache(final Vertx vertx, final HazelcastInstance hazelcast, final JsonObject config, final ResponseCache localCache) {
+		requireNonNull(hazelcast, "A valid Hazelcast instance expected");
+		requireNonNull(config, "A valid configuration expected");
+		final LocalMap<String, DistributedCache> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		synchronized (DistributedCache.class) {
+			DistributedCache cache = map.get(SHARED_MAP);
+			if (cache == null) {
+				cache = new DistributedCache(vertx, hazelcast.getMap(MAP_NAME), localCache, config.getLong("timeout", TIMEOUT_MS));
+				map.put(SHARED_MAP, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Gets the cache shared by the verticles deployed in the specified Vert.x instance, which is created with 
+	 * {@link #sharedCache(Vertx, HazelcastInstance, JsonObject, ResponseCache)} when Vert.x is clustered.
+	 * @param vertx - Vert.x instance
+	 * @return The cache shared by the verticles deployed in the specified Vert.x instance, or <tt>null</tt> when no cache was created.
+	 */
+	public static @Nullable DistributedCache sharedCache(final Vertx vertx) {
+		final LocalMap<String, DistributedCache> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		return map.get(SHARED_MAP);
+	}
+
+	/**
+	 * Looks up a fresh response in the cache. The handler is called in the context of the caller.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param handler - receives the response, or <tt>null</tt> when no fresh response is found in the cache or the lookup fails
+	 */
+	public void get(final String appId, final String path, final Handler<CachedResponse> handler) {
+		requireNonNull(handler, "A valid handler expected");
+		final Context context = vertx.getOrCreateContext();
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final long timerId = vertx.setTimer(timeout, id -> {
+			if (done.compareAndSet(false, true)) {
+				timeouts.increment();
+				handler.handle(null);
+			}
+		});
+		((ICompletableFuture<byte[]>)map.getAsync(key(appId, path))).andThen(new ExecutionCallback<byte[]>() {
+			@Override
+			public void onResponse(final byte[] value) {
+				CachedResponse entry = null;
+				try {
+					entry = value != null ? decode(value) : null;
+				} catch (IOException e) {
+					LOGGER.trace("Failed to decode distributed response.", e);
+				}
+				final CachedResponse response = entry != null && entry.isFresh(System.currentTimeMillis()) ? entry : null;
+				complete(response);
+			}
+			@Override
+			public void onFailure(final Throwable cause) {
+				errors.increment();
+				LOGGER.trace("Failed to read distributed response.", cause);
+				complete(null);
+			}
+			private void complete(final @Nullable CachedResponse response) {
+				if (!done.compareAndSet(false, true)) return;
+				if (response != null) hits.increment();
+				else misses.increment();
+				context.runOnContext(v -> {
+					vertx.cancelTimer(timerId);
+					handler.handle(response);
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stores a fresh response in the cache, which is kept until it expires. The response is written in the background.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param response - the response to store, which is ignored when it's <tt>null</tt> or it's not fresh
+	 */
+	public void put(final String appId, final String path, final @Nullable CachedResponse response) {
+		final long ttl = response != null ? response.getExpiresAt() - System.currentTimeMillis() : 0l;
+		if (ttl <= 0l) return;
+		puts.increment();
+		((ICompletableFuture<byte[]>)map.putAsync(key(appId, path), encode(response), ttl, MILLISECONDS)).andThen(new ErrorCounter());
+	}
+
+	/**
+	 * Removes a response from the cache and from the local caches of the other nodes of the cluster. The removal is done in the background.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	public void invalidate(final String appId, final String path) {
+		invalidations.increment();
+		((ICompletableFuture<byte[]>)map.removeAsync(key(appId, path))).andThen(new ErrorCounter());
+		vertx.eventBus().publish(INVALIDATIONS_ADDRESS, new JsonObject().put("node", nodeId).put("appId", appId).put("path", path));
+	}
+
+	/**
+	 * Stops receiving the removals broadcast by the other nodes.
+	 */
+	public void close() {
+		consumer.unregister();
+	}
+
+	/**
+	 * Gets the metrics of the cache: number of hits and misses (including timeouts and errors), hit ratio, number of lookups that timed out,
+	 * number of errors, number of responses stored and removed by this node, and number of responses stored in this node.
+	 * @return A JSON object with the metrics of the cache.
+	 */
+	public JsonObject stats() {
+		final long hitCount = hits.sum(), missCount = misses.sum();
+		return new JsonObject()
+				.put("hits", hitCount)
+				.put("misses", missCount)
+				.put("hit-ratio", hitCount + missCount > 0l ? (double)hitCount / (hitCount + missCount) : 0.0d)
+				.put("timeouts", timeouts.sum())
+				.put("errors", errors.sum())
+				.put("puts", puts.sum())
+				.put("invalidations", invalidations.sum())
+				.put("local-entries", map.getLocalMapStats().getOwnedEntryCount());
+	}
+
+	private static byte[] encode(final CachedResponse response) {
+		final byte[] meta = response.encodeMetadata();
+		final ByteBuffer value = ByteBuffer.allocate(4 + meta.length + response.getBody().length());
+		value.putInt(meta.length).put(meta).put(response.getBody().getBytes());
+		return value.array();
+	}
+
+	private static CachedResponse decode(final byte[] value) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(value);
+		final int metaLength = buffer.getInt();
+		if (metaLength < 0 || metaLength > buffer.remaining()) throw new IOException("Invalid response");
+		return CachedResponse.decode(Arrays.copyOfRange(value, 4, 4 + metaLength), Buffer.buffer(Arrays.copyOfRange(value, 4 + metaLength, value.length)));
+	}
+
+	private static String key(final String appId, final String path) {
+		return requireNonNull(appId, "A valid application id expected") + " " + requireNonNull(path, "A valid path expected");
+	}
+
+	private class ErrorCounter implements ExecutionCallback<byte[]> {
+		@Override
+		public void onResponse(final byte[] response) { }
+		@Override
+		public void onFailure(final Throwable cause) {
+			errors.increment();
+			LOGGER.trace("Failed to update distributed response.", cause);
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * First level of the response cache, which holds a small number of fresh responses in front of the {@link ResponseCache} that is shared by
+ * all the verticles (second level). Each instance is confined to the event loop of a verticle: lookups are not synchronized and they don't
+ * allocate memory, so the most used responses are served without contending with the other event loops. Responses found in the shared cache
+ * are promoted to this cache. The shared cache notifies every change of a response to all the local caches, which apply the changes on their
+ * own event loop before the next lookup. Entries are placed in a set-associative table, evicting the least recently used entry of the set.
+ * Except where noted, the methods of this class must be called from the event loop that owns the instance.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class LocalResponseCache {
+
+	public static final int MAX_ENTRIES = 1024;
+
+	private static final int WAYS = 4;
+	private static final String[] INVALIDATE_ALL = new String[0];
+
+	private final ResponseCache shared;
+	private final int mask;
+	private final String[] appIds;
+	private final String[] paths;
+	private final CachedResponse[] entries;
+	private final long[] lastUsed;
+	private final int[] hits;
+	private long clock = 0l;
+
+	// changes received from other threads, which are applied before the next lookup
+	private final Queue<String[]> invalidations = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final int maxPending;
+	private volatile boolean overflow = false;
+
+	/**
+	 * Creates a new local cache and registers it with the shared cache to receive the changes of the responses.
+	 * @param shared - the cache shared by all the verticles
+	 * @param maxEntries - maximum number of responses (rounded to a power of two)
+	 */
+	public LocalResponseCache(final ResponseCache shared, final int maxEntries) {
+		this.shared = requireNonNull(shared, "A valid shared cache expected");
+		final int sets = (Integer.highestOneBit(Math.max(WAYS, maxEntries) - 1) << 1) / WAYS;
+		this.mask = sets - 1;
+		this.appIds = new String[sets * WAYS];
+		this.paths = new String[sets * WAYS];
+		this.entries = new CachedResponse[sets * WAYS];
+		this.lastUsed = new long[sets * WAYS];
+		this.hits = new int[sets * WAYS];
+		this.maxPending = Math.max(MAX_ENTRIES, sets * WAYS);
+		shared.register(this);
+	}
+
+	/**
+	 * Gets a fresh response, looking first in this cache and then in the shared cache. Responses found in the shared cache are promoted to
+	 * this cache.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return A fresh response, or <tt>null</tt> when no fresh response is found in any level of the cache.
+	 */
+	public @Nullable CachedResponse get(final String appId, final String path) {
+		applyInvalidations();
+		final int base = set(appId, path);
+		final int slot = find(base, appId, path);
+		if (slot >= 0) {
+			final CachedResponse entry = entries[slot];
+			if (entry.isFresh(System.currentTimeMillis())) {
+				lastUsed[slot] = ++clock;
+				hits[slot]++;
+				shared.recordLocalHit();
+				return entry;
+			}
+			remove(slot);
+		}
+		final CachedResponse entry = shared.get(appId, path);
+		if (entry != null) promote(base, appId, path, entry);
+		return entry;
+	}
+
+	/**
+	 * Checks whether a fresh response is stored in this cache, without updating the metrics of the cache.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return <tt>true</tt> when a fresh response is stored in this cache for the request, otherwise <tt>false</tt>.
+	 */
+	public boolean isPresent(final String appId, final String path) {
+		applyInvalidations();
+		final int slot = find(set(appId, path), appId, path);
+		return slot >= 0 && entries[slot].isFresh(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the number of responses stored in this cache.
+	 * @return The number of responses stored in this cache.
+	 */
+	public int size() {
+		applyInvalidations();
+		int size = 0;
+		for (final CachedResponse entry : entries) if (entry != null) size++;
+		return size;
+	}
+
+	/**
+	 * Unregisters this cache from the shared cache and empties it. The cache can no longer be used after calling this method.
+	 */
+	public void close() {
+		shared.unregister(this);
+		clear();
+		invalidations.clear();
+	}
+
+	/**
+	 * Receives the change of a response from the shared cache. This method can be called from any thread.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	void invalidate(final String appId, final String path) {
+		enqueue(new String[]{ appId, path });
+	}
+
+	/**
+	 * Receives the removal of all the responses from the shared cache. This method can be called from any thread.
+	 */
+	void invalidateAll() {
+		enqueue(INVALIDATE_ALL);
+	}
+
+	private void enqueue(final String[] invalidation) {
+		if (overflow) return;
+		// too many changes were received without lookups, the cache will be emptied before the next lookup
+		if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			overflow = true;
+			return;
+		}
+		invalidations.offer(invalidation);
+	}
+
+	private void applyInvalidations() {
+		if (overflow) {
+			overflow = false;
+			clear();
+		}
+		String[] invalidation;
+		while ((invalidation = invalidations.poll()) != null) {
+			pending.decrementAndGet();
+			if (invalidation == INVALIDATE_ALL) clear();
+			else {
+				final int slot = find(set(invalidation[0], invalidation[1]), invalidation[0], invalidation[1]);
+				if (slot >= 0) remove(slot);
+			}
+		}
+	}
+
+	private int set(final String appId, final String path) {
+		int hash = appId.hashCode() * 31 + path.hashCode();
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return (hash & mask) * WAYS;
+	}
+
+	private int find(final int base, final String appId, final String path) {
+		for (int i = base; i < base + WAYS; i++) {
+			if (entries[i] != null && path.equals(paths[i]) && appId.equals(appIds[i])) return i;
+		}
+		return -1;
+	}
+
+	private void promote(final int base, final String appId, final String path, final CachedResponse entry) {
+		int victim = base;
+		for (int i = base; i < base + WAYS; i++) {
+			if (entries[i] == null) {
+				victim = i;
+				break;
+			}
+			if (lastUsed[i] < lastUsed[victim]) victim = i;
+		}
+		if (entries[victim] != null) remove(victim);
+		appIds[victim] = appId;
+		paths[victim] = path;
+		entries[victim] = entry;
+		lastUsed[victim] = ++clock;
+	}
+
+	private void remove(final int slot) {
+		// the hits served from this cache are counted in the response when it leaves the cache, to find the most used responses
+		if (hits[slot] > 0) entries[slot].recordHits(hits[slot]);
+		appIds[slot] = null;
+		paths[slot] = null;
+		entries[slot] = null;
+		hits[slot] = 0;
+	}
+
+	private void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i] != null) remove(i);
+		}
+		Arrays.fill(lastUsed, 0l);
+	}
+
+}
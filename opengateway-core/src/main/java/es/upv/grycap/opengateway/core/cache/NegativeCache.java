@@ -0,0 +1,288 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Short-lived cache of the requests that the upstream services answered with "not found", so that repeated requests for missing items are 
+ * not sent to the upstream services again. Only a 64-bit hash of the path is stored, in open-addressing hash sets of primitive values, one 
+ * per application and time bucket: an entry is added to the bucket of the current time and it's discarded when its bucket is recycled, so 
+ * expiration costs nothing per entry. With <tt>N</tt> buckets, entries live between <tt>(N-1)/N</tt> and <tt>1</tt> times the configured 
+ * lifetime. A single instance is shared by all the verticles deployed in the same Vert.x instance (see {@link #sharedCache(Vertx, JsonObject)}).
+ * This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class NegativeCache implements Shareable {
+
+	public static final long TTL_SECONDS = 10l;
+	public static final int MAX_ENTRIES = 100000;
+
+	private static final String SHARED_MAP = "opengateway.negative-cache";
+	private static final int BUCKETS = 4;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final long bucketWidth;
+	private final int maxEntries;
+	private final LongSupplier clock;
+	private final ConcurrentMap<String, Generations> apis = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Creates a new cache.
+	 * @param ttl - lifetime of the entries (in seconds)
+	 * @param maxEntries - maximum number of entries stored per application and time bucket
+	 */
+	public NegativeCache(final long ttl, final int maxEntries) {
+		this(ttl * 1000l, maxEntries, System::currentTimeMillis);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * @param ttlMillis - lifetime of the entries (in milliseconds)
+	 * @param maxEntries - maximum number of entries stored per application and time bucket
+	 * @param clock - source of the current time (in milliseconds)
+	 */
+	public NegativeCache(final long ttlMillis, final int maxEntries, final LongSupplier clock) {
+		if (ttlMillis < BUCKETS || maxEntries <= 0) throw new IllegalArgumentException("Positive lifetime and number of entries expected");
+		this.bucketWidth = ttlMillis / BUCKETS;
+		this.maxEntries = maxEntries;
+		this.clock = requireNonNull(clock, "A valid clock expected");
+	}
+
+	/**
+	 * Gets the cache shared by the verticles deployed in the specified Vert.x instance, creating a new cache the first time that this method
+	 * is called. The lifetime of the entries is read from the property <tt>ttl</tt> (seconds) of the configuration, and the number of entries 
+	 * from the property <tt>max-entries</tt>.
+	 * @param vertx - Vert.x instance
+	 * @param config - configuration of the cache
+	 * @return The cache shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static NegativeCache sharedCache(final Vertx vertx, final JsonObject config) {
+		requireNonNull(config, "A valid configuration expected");
+		final LocalMap<String, NegativeCache> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		NegativeCache cache = map.get(SHARED_MAP);
+		if (cache == null) {
+			final NegativeCache newCache = new NegativeCache(config.getLong("ttl", TTL_SECONDS), config.getInteger("max-entries", MAX_ENTRIES));
+			cache = map.putIfAbsent(SHARED_MAP, newCache);
+			if (cache == null) cache = newCache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Checks whether the upstream service recently answered "not found" to a request.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return <tt>true</tt> when the request was recently answered with "not found", otherwise <tt>false</tt>.
+	 */
+	public boolean contains(final String appId, final String path) {
+		final Generations generations = apis.get(requireNonNull(appId, "A valid application id expected"));
+		final boolean found = generations != null && generations.contains(epoch(), hash(path));
+		if (found) hits.increment();
+		return found;
+	}
+
+	/**
+	 * Records that the upstream service answered "not found" to a request. The request is not recorded when the bucket is full.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	public void add(final String appId, final String path) {
+		final Generations generations = apis.computeIfAbsent(requireNonNull(appId, "A valid application id expected"), k -> new Generations());
+		if (!generations.add(epoch(), hash(path), maxEntries)) rejected.increment();
+	}
+
+	/**
+	 * Removes a request from the cache (e.g. the item was created).
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	public void invalidate(final String appId, final String path) {
+		final Generations generations = apis.get(requireNonNull(appId, "A valid application id expected"));
+		if (generations != null) generations.remove(hash(path));
+	}
+
+	/**
+	 * Removes all the requests of an application from the cache.
+	 * @param appId - application id
+	 */
+	public void invalidateAll(final String appId) {
+		apis.remove(requireNonNull(appId, "A valid application id expected"));
+	}
+
+	/**
+	 * Gets the number of requests stored in the cache, including the entries of the expired buckets that were not yet recycled.
+	 * @return The number of requests stored in the cache.
+	 */
+	public long size() {
+		return apis.values().stream().mapToLong(Generations::size).sum();
+	}
+
+	/**
+	 * Gets the metrics of the cache: number of hits, number of entries not stored because their bucket was full, number of entries and 
+	 * approximated memory used by the hash sets.
+	 * @return A JSON object with the metrics of the cache.
+	 */
+	public JsonObject stats() {
+		return new JsonObject()
+				.put("hits", hits.sum())
+				.put("rejected", rejected.sum())
+				.put("entries", size())
+				.put("memory-bytes", apis.values().stream().mapToLong(Generations::memory).sum());
+	}
+
+	private long epoch() {
+		return clock.getAsLong() / bucketWidth;
+	}
+
+	private static long hash(final String path) {
+		final long hash = HASH.hashString(requireNonNull(path, "A valid path expected"), UTF_8).asLong();
+		// zero marks the empty slots of the hash sets
+		return hash != LongSet.EMPTY && hash != LongSet.DELETED ? hash : 1l;
+	}
+
+	/**
+	 * The time buckets of an application. Bucket <tt>i</tt> holds the entries added in the epochs congruent with <tt>i</tt> modulo the number
+	 * of buckets, and it's cleared when it's reused for a new epoch.
+	 */
+	private static class Generations {
+		private final long[] epochs = new long[BUCKETS];
+		private final LongSet[] sets = new LongSet[BUCKETS];
+		public Generations() {
+			Arrays.fill(epochs, -1l);
+			for (int i = 0; i < BUCKETS; i++) sets[i] = new LongSet();
+		}
+		public synchronized boolean contains(final long epoch, final long hash) {
+			for (int i = 0; i < BUCKETS; i++) {
+				if (epoch - epochs[i] < BUCKETS && sets[i].contains(hash)) return true;
+			}
+			return false;
+		}
+		public synchronized boolean add(final long epoch, final long hash, final int maxEntries) {
+			final int i = (int)(epoch % BUCKETS);
+			if (epochs[i] != epoch) {
+				epochs[i] = epoch;
+				sets[i].clear();
+			}
+			if (sets[i].size() >= maxEntries) return false;
+			sets[i].add(hash);
+			return true;
+		}
+		public synchronized void remove(final long hash) {
+			for (int i = 0; i < BUCKETS; i++) sets[i].remove(hash);
+		}
+		public synchronized long size() {
+			return Arrays.stream(sets).mapToLong(LongSet::size).sum();
+		}
+		public synchronized long memory() {
+			return Arrays.stream(sets).mapToLong(LongSet::capacity).sum() * 8l;
+		}
+	}
+
+	/**
+	 * Hash set of <tt>long</tt> values with open addressing and linear probing. Removed values leave a tombstone that is cleared when the
+	 * table is rebuilt. This class is not thread-safe.
+	 */
+	static class LongSet {
+		static final long EMPTY = 0l;
+		static final long DELETED = -1l;
+		private static final int INITIAL_CAPACITY = 16;
+		private long[] table = new long[INITIAL_CAPACITY];
+		private int size = 0;
+		private int used = 0;
+		public boolean contains(final long value) {
+			final int mask = table.length - 1;
+			for (int i = index(value, mask); table[i] != EMPTY; i = (i + 1) & mask) {
+				if (table[i] == value) return true;
+			}
+			return false;
+		}
+		public boolean add(final long value) {
+			if (contains(value)) return false;
+			// keep the load factor (including tombstones) below 1/2
+			if ((used + 1) * 2 > table.length) rebuild(size + 1 > table.length / 4 ? table.length * 2 : table.length);
+			final int mask = table.length - 1;
+			int i = index(value, mask);
+			while (table[i] != EMPTY && table[i] != DELETED) i = (i + 1) & mask;
+			if (table[i] == EMPTY) used++;
+			table[i] = value;
+			size++;
+			return true;
+		}
+		public boolean remove(final long value) {
+			final int mask = table.length - 1;
+			for (int i = index(value, mask); table[i] != EMPTY; i = (i + 1) & mask) {
+				if (table[i] == value) {
+					table[i] = DELETED;
+					size--;
+					return true;
+				}
+			}
+			return false;
+		}
+		public void clear() {
+			// shrink the tables that grew during a burst
+			if (table.length > INITIAL_CAPACITY && size * 8 < table.length) table = new long[Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size * 4)))];
+			else Arrays.fill(table, EMPTY);
+			size = used = 0;
+		}
+		public int size() {
+			return size;
+		}
+		public int capacity() {
+			return table.length;
+		}
+		private void rebuild(final int capacity) {
+			final long[] old = table;
+			table = new long[capacity];
+			size = used = 0;
+			for (final long value : old) {
+				if (value != EMPTY && value != DELETED) add(value);
+			}
+		}
+		private static int index(final long value, final int mask) {
+			return (int)(value ^ (value >>> 32)) & mask;
+		}
+	}
+
+}
@@ -0,0 +1,582 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Bounded in-memory cache of the responses received from the upstream services, keyed by the application id and the path of the request.
+ * The freshness lifetime of the entries is taken from the <tt>Cache-Control</tt> header of the upstream response, and the cache is bounded
+ * by the total size of the stored bodies, evicting the least recently used entries first. A single instance is shared by all the verticles
+ * deployed in the same Vert.x instance (see {@link #sharedCache(Vertx, JsonObject)}). Expired responses are kept while the upstream service
+ * allows serving them stale (<tt>stale-while-revalidate</tt> and <tt>stale-if-error</tt> extensions), up to a configurable limit. Optionally,
+ * the responses are also written to a {@link DiskCache} (second tier), from which the responses evicted from memory can be loaded again, 
+ * even after the gateway is restarted. The most used responses can be saved to a snapshot file when the gateway stops, and loaded when the
+ * gateway starts again (see {@link #writeSnapshot(Path, int)}). The verticles can put a {@link LocalResponseCache} in front of this cache, 
+ * which is kept consistent with this cache. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class ResponseCache implements Shareable {
+
+	public static final long MAX_SIZE_MIB = 64l;
+	public static final int MAX_ENTRY_SIZE_KIB = 1024;
+	public static final long MAX_TTL_SECONDS = 86400l;
+	public static final long MAX_STALE_SECONDS = 3600l;
+	public static final int STRIPES = 16;
+
+	private static final Logger LOGGER = getLogger(ResponseCache.class);
+
+	private static final String SHARED_MAP = "opengateway.response-cache";
+
+	private final Cache<String, CachedResponse> cache;
+	private final int maxEntrySize;
+	private final long maxTtl;
+	private final long maxStale;
+	private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+	private final DiskCache secondTier;
+	// responses whose removal was not yet written to the second tier, which cannot be loaded from the second tier
+	private final ConcurrentMap<String, Integer> pendingRemovals = new ConcurrentHashMap<>();
+	private final AtomicInteger pendingClears = new AtomicInteger();
+	// first level caches of the verticles, which receive the changes of the responses
+	private final Set<LocalResponseCache> localCaches = new CopyOnWriteArraySet<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder localHits = new LongAdder();
+
+	/**
+	 * Creates a new cache.
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param maxEntrySize - responses larger than this size (in bytes) are not cached
+	 * @param maxTtl - maximum time (in seconds) that a response is stored, regardless of the lifetime announced by the upstream service
+	 */
+	public ResponseCache(final long maxSize, final int maxEntrySize, final long maxTtl) {
+		this(maxSize, maxEntrySize, maxTtl, 0l);
+	}
+
+	/**
+	 * Creates a new cache that can serve stale responses.
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param maxEntrySize - responses larger than this size (in bytes) are not cached
+	 * @param maxTtl - maximum time (in seconds) that a response is fresh, regardless of the lifetime announced by the upstream service
+	 * @param maxStale - maximum time (in seconds) that an expired response can be served stale, regardless of the time announced by the 
+	 *        upstream service
+	 */
+	public ResponseCache(final long maxSize, final int maxEntrySize, final long maxTtl, final long maxStale) {
+		this(maxSize, maxEntrySize, maxTtl, maxStale, null);
+	}
+
+	/**
+	 * Creates a new cache that can serve stale responses, backed by a second tier.
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param maxEntrySize - responses larger than this size (in bytes) are not cached
+	 * @param maxTtl - maximum time (in seconds) that a response is fresh, regardless of the lifetime announced by the upstream service
+	 * @param maxStale - maximum time (in seconds) that an expired response can be served stale, regardless of the time announced by the 
+	 *        upstream service
+	 * @param secondTier - (optional) cache where the responses are also stored
+	 */
+	public ResponseCache(final long maxSize, final int maxEntrySize, final long maxTtl, final long maxStale, final @Nullable DiskCache secondTier) {
+		this(maxSize, maxEntrySize, maxTtl, maxStale, 4, secondTier);
+	}
+
+	/**
+	 * Creates a new cache that can serve stale responses, backed by a second tier. The entries are distributed in independently locked 
+	 * stripes, so that the threads that access different stripes don't contend with each other.
+	 * @param maxSize - maximum size of the cache in bytes
+	 * @param maxEntrySize - responses larger than this size (in bytes) are not cached
+	 * @param maxTtl - maximum time (in seconds) that a response is fresh, regardless of the lifetime announced by the upstream service
+	 * @param maxStale - maximum time (in seconds) that an expired response can be served stale, regardless of the time announced by the 
+	 *        upstream service
+	 * @param stripes - number of stripes
+	 * @param secondTier - (optional) cache where the responses are also stored
+	 */
+	public ResponseCache(final long maxSize, final int maxEntrySize, final long maxTtl, final long maxStale, final int stripes, 
+			final @Nullable DiskCache secondTier) {
+		this.cache = CacheBuilder.newBuilder()
+				.concurrencyLevel(stripes)
+				.maximumWeight(maxSize)
+				.weigher((final String key, final CachedResponse value) -> key.length() + value.weight())
+				.expireAfterWrite(maxTtl + maxStale, SECONDS)
+				.recordStats()
+				.build();
+		this.maxEntrySize = maxEntrySize;
+		this.maxTtl = maxTtl;
+		this.maxStale = maxStale;
+		this.secondTier = secondTier;
+	}
+
+	/**
+	 * Gets the cache shared by the verticles deployed in the specified Vert.x instance, creating a new cache the first time that this
+	 * method is called. Sizes are read from the configuration: <tt>max-size</tt> (MiB), <tt>max-entry-size</tt> (KiB), <tt>max-ttl</tt>
+	 * (seconds), <tt>max-stale</tt> (seconds) and <tt>stripes</tt>. The second tier is configured in the property <tt>disk</tt>: <tt>enabled</tt>, <tt>path</tt>,
+	 * <tt>max-size</tt> (MiB), <tt>segment-size</tt> (MiB) and <tt>max-entries</tt>. The cache works without second tier when the disk cache 
+	 * cannot be opened.
+	 * @param vertx - Vert.x instance
+	 * @param config - configuration of the cache
+	 * @return The cache shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static ResponseCache sharedCache(final Vertx vertx, final JsonObject config) {
+		requireNonNull(config, "A valid configuration expected");
+		final LocalMap<String, ResponseCache> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		// the second tier owns the cache directory, so only one cache can be created
+		synchronized (ResponseCache.class) {
+			ResponseCache cache = map.get(SHARED_MAP);
+			if (cache == null) {
+				cache = new ResponseCache(config.getLong("max-size", MAX_SIZE_MIB) * 1024l * 1024l,
+						config.getInteger("max-entry-size", MAX_ENTRY_SIZE_KIB) * 1024, config.getLong("max-ttl", MAX_TTL_SECONDS), 
+						config.getLong("max-stale", MAX_STALE_SECONDS), config.getInteger("stripes", STRIPES), openSecondTier(config.getJsonObject("disk", new JsonObject())));
+				map.put(SHARED_MAP, cache);
+			}
+			return cache;
+		}
+	}
+
+	private static @Nullable DiskCache openSecondTier(final JsonObject config) {
+		final String path = config.getString("path");
+		if (!config.getBoolean("enabled", false) || path == null) return null;
+		try {
+			return new DiskCache(Paths.get(path), config.getLong("max-size", DiskCache.MAX_SIZE_MIB) * 1024l * 1024l, 
+					config.getLong("segment-size", DiskCache.SEGMENT_SIZE_MIB) * 1024l * 1024l, config.getInteger("max-entries", DiskCache.MAX_ENTRIES), 
+					config.getInteger("max-pending-writes", DiskCache.MAX_PENDING_WRITES));
+		} catch (IOException e) {
+			LOGGER.warn("Failed to open disk cache, the responses will be stored in memory only: " + path, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the second tier of this cache.
+	 * @return The second tier of this cache, or <tt>null</tt> when the responses are stored in memory only.
+	 */
+	public @Nullable DiskCache getSecondTier() {
+		return secondTier;
+	}
+
+	/**
+	 * Checks whether a response is stored in memory, without updating the metrics of the cache.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return <tt>true</tt> when a response is stored in memory for the request, otherwise <tt>false</tt>.
+	 */
+	public boolean isPresent(final String appId, final String path) {
+		return cache.getIfPresent(key(appId, path)) != null;
+	}
+
+	/**
+	 * Checks whether a response can be loaded from the second tier with {@link #load(String, String)}. This method doesn't block, so it can
+	 * be called from an event loop to avoid a blocking call when the response is not stored in the second tier.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return <tt>true</tt> when the response might be stored in the second tier, otherwise <tt>false</tt>.
+	 */
+	public boolean isLoadable(final String appId, final String path) {
+		final String key = key(appId, path);
+		return secondTier != null && pendingClears.get() == 0 && !pendingRemovals.containsKey(key) && secondTier.mightContain(key);
+	}
+
+	/**
+	 * Loads a response from the second tier into memory, unless the response is already in memory. This method blocks while the response is
+	 * read from the disk, so it must not be called from an event loop.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return The response loaded in memory, or <tt>null</tt> when no response is found.
+	 */
+	public @Nullable CachedResponse load(final String appId, final String path) {
+		final String key = key(appId, path);
+		CachedResponse entry = cache.getIfPresent(key);
+		if (entry != null || secondTier == null || pendingClears.get() > 0 || pendingRemovals.containsKey(key)) return entry;
+		entry = secondTier.get(key);
+		if (entry == null || (!entry.isUsable(System.currentTimeMillis()) && !entry.isRevalidatable())) return null;
+		final CachedResponse loaded = cache.asMap().putIfAbsent(key, entry);
+		if (loaded != null) return loaded;
+		// the response could be removed while it was read: the removal is checked after the response is inserted, so that a removal that
+		// starts after the check finds the response in memory
+		if (pendingClears.get() > 0 || pendingRemovals.containsKey(key)) {
+			cache.asMap().remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Gets a fresh response from the cache. Expired responses are removed from the cache, unless they can be served stale or revalidated.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return A fresh response, or <tt>null</tt> when no fresh response is found in the cache.
+	 */
+	public @Nullable CachedResponse get(final String appId, final String path) {
+		final String key = key(appId, path);
+		final CachedResponse entry = cache.getIfPresent(key);
+		final long now = System.currentTimeMillis();
+		if (entry != null && entry.isFresh(now)) {
+			hits.increment();
+			entry.recordHit();
+			return entry;
+		}
+		if (entry != null && !entry.isUsable(now) && !entry.isRevalidatable()) cache.asMap().remove(key, entry);
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Gets an expired response that can be served while a fresh response is requested in the background.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return An expired response within its <tt>stale-while-revalidate</tt> window, or <tt>null</tt> when no such response is found.
+	 */
+	public @Nullable CachedResponse getStaleWhileRevalidate(final String appId, final String path) {
+		final CachedResponse entry = cache.getIfPresent(key(appId, path));
+		if (entry != null && entry.isStaleWhileRevalidate(System.currentTimeMillis())) {
+			staleHits.increment();
+			entry.recordHit();
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets an expired response that can be served in place of an error of the upstream service.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return An expired response within its <tt>stale-if-error</tt> window, or <tt>null</tt> when no such response is found.
+	 */
+	public @Nullable CachedResponse getStaleIfError(final String appId, final String path) {
+		final CachedResponse entry = cache.getIfPresent(key(appId, path));
+		if (entry != null && entry.isStaleIfError(System.currentTimeMillis())) {
+			staleHits.increment();
+			entry.recordHit();
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Marks a response as being revalidated, so that concurrent requests don't start other revalidations of the same response.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return <tt>true</tt> when the caller must revalidate the response, <tt>false</tt> when the response is already being revalidated.
+	 */
+	public boolean startRevalidation(final String appId, final String path) {
+		return revalidating.add(key(appId, path));
+	}
+
+	/**
+	 * Marks the end of a revalidation started with {@link #startRevalidation(String, String)}.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	public void endRevalidation(final String appId, final String path) {
+		revalidating.remove(key(appId, path));
+	}
+
+	/**
+	 * Stores a response in the cache when the upstream service allows it.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param cacheControl - directives received from the upstream service
+	 * @param body - content of the response
+	 * @return <tt>true</tt> when the response was stored, otherwise <tt>false</tt>.
+	 */
+	public boolean put(final String appId, final String path, final CacheControl cacheControl, final Buffer body) {
+		return put(appId, path, cacheControl, body, new Validators(Validators.strongETag(body), null));
+	}
+
+	/**
+	 * Stores a response in the cache when the upstream service allows it, along with the validators that the clients can use to revalidate 
+	 * the response with conditional requests. The directives of the upstream service are also stored, so they can be forwarded to the clients.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param cacheControl - directives received from the upstream service
+	 * @param body - content of the response
+	 * @param validators - validators of the response
+	 * @return <tt>true</tt> when the response was stored, otherwise <tt>false</tt>.
+	 */
+	public boolean put(final String appId, final String path, final CacheControl cacheControl, final Buffer body, final Validators validators) {
+		return put(appId, path, cacheControl, body, validators, null);
+	}
+
+	/**
+	 * Stores a response in the cache when the upstream service allows it. Responses with upstream validators are kept after they expire 
+	 * (until they are evicted), so they can be revalidated with a conditional request instead of being retrieved again.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param cacheControl - directives received from the upstream service
+	 * @param body - content of the response
+	 * @param validators - validators of the response
+	 * @param upstreamValidators - (optional) validators received from the upstream service
+	 * @return <tt>true</tt> when the response was stored, otherwise <tt>false</tt>.
+	 */
+	public boolean put(final String appId, final String path, final CacheControl cacheControl, final Buffer body, final Validators validators, 
+			final @Nullable Validators upstreamValidators) {
+		if (requireNonNull(body, "A valid body expected").length() > maxEntrySize) return false;
+		final CachedResponse entry = entry(cacheControl, body, validators, upstreamValidators, System.currentTimeMillis());
+		if (entry == null) return false;
+		store(appId, path, entry);
+		return true;
+	}
+
+	/**
+	 * Stores a response received from another cache, such as the {@link DistributedCache}, keeping the lifetime of the response.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param entry - the response to store
+	 * @return <tt>true</tt> when the response was stored, <tt>false</tt> when the response is too large or it's no longer usable.
+	 */
+	public boolean put(final String appId, final String path, final CachedResponse entry) {
+		requireNonNull(entry, "A valid response expected");
+		if (entry.getBody().length() > maxEntrySize || !isWorthKeeping(entry, System.currentTimeMillis())) return false;
+		store(appId, path, entry);
+		return true;
+	}
+
+	/**
+	 * Gets a response stored in memory, without updating the metrics of the cache or checking whether the response is fresh.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return The response stored in memory for the request, or <tt>null</tt> when no response is found.
+	 */
+	public @Nullable CachedResponse peek(final String appId, final String path) {
+		return cache.getIfPresent(key(appId, path));
+	}
+
+	/**
+	 * Gets an expired response that can be revalidated with the upstream service.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @return An expired response with upstream validators, or <tt>null</tt> when no such response is found.
+	 */
+	public @Nullable CachedResponse getForRevalidation(final String appId, final String path) {
+		final CachedResponse entry = cache.getIfPresent(key(appId, path));
+		return entry != null && entry.isRevalidatable() && !entry.isFresh(System.currentTimeMillis()) ? entry : null;
+	}
+
+	/**
+	 * Renews a response that the upstream service confirmed that is still current (<tt>304 Not Modified</tt>). The new lifetime is taken
+	 * from the directives of the <tt>304</tt> response, or from the directives of the stored response when the <tt>304</tt> has none.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 * @param revalidated - the response that was revalidated
+	 * @param cacheControl - directives received with the <tt>304</tt> response
+	 * @return The renewed response, which is also returned (but not stored) when the new directives don't allow storing the response.
+	 */
+	public CachedResponse refresh(final String appId, final String path, final CachedResponse revalidated, final CacheControl cacheControl) {
+		requireNonNull(revalidated, "A valid response expected");
+		revalidations.increment();
+		final CacheControl directives = requireNonNull(cacheControl, "Valid directives expected").getValue().isEmpty() && revalidated.getCacheControl() != null 
+				? CacheControl.parse(singletonList(revalidated.getCacheControl())) : cacheControl;
+		final long now = System.currentTimeMillis();
+		final CachedResponse entry = entry(directives, revalidated.getBody(), revalidated.getValidators(), revalidated.getUpstreamValidators(), now);
+		if (entry != null) {
+			store(appId, path, entry);
+			return entry;
+		}
+		invalidate(appId, path);
+		return new CachedResponse(revalidated.getBody(), now, now, now, now, revalidated.getValidators(), directives.getValue(), null);
+	}
+
+	private void store(final String appId, final String path, final CachedResponse entry) {
+		final String key = key(appId, path);
+		cache.put(key, entry);
+		localCaches.forEach(c -> c.invalidate(appId, path));
+		// responses that can be revalidated are kept as long as they would be kept in memory
+		if (secondTier != null) secondTier.putAsync(key, entry, entry.isRevalidatable() ? entry.getStoredAt() + (maxTtl + maxStale) * 1000l 
+				: Math.max(entry.getStaleWhileRevalidateUntil(), entry.getStaleIfErrorUntil()));
+	}
+
+	private @Nullable CachedResponse entry(final CacheControl cacheControl, final Buffer body, final Validators validators, 
+			final @Nullable Validators upstreamValidators, final long now) {
+		final long ttl = Math.min(requireNonNull(cacheControl, "Valid directives expected").sharedMaxAge(), maxTtl);
+		if (ttl <= 0l) return null;
+		final long expiresAt = now + ttl * 1000l;
+		return new CachedResponse(body, now, expiresAt, expiresAt + Math.min(cacheControl.getStaleWhileRevalidate(), maxStale) * 1000l, 
+				expiresAt + Math.min(cacheControl.getStaleIfError(), maxStale) * 1000l, validators, cacheControl.getValue(), upstreamValidators);
+	}
+
+	/**
+	 * Removes a response from the cache.
+	 * @param appId - application id
+	 * @param path - path of the request
+	 */
+	public void invalidate(final String appId, final String path) {
+		final String key = key(appId, path);
+		if (secondTier != null) {
+			pendingRemovals.merge(key, 1, Integer::sum);
+			secondTier.invalidateAsync(key, () -> pendingRemovals.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null));
+		}
+		cache.invalidate(key);
+		localCaches.forEach(c -> c.invalidate(appId, path));
+	}
+
+	/**
+	 * Removes all the responses from the cache.
+	 */
+	public void invalidateAll() {
+		if (secondTier != null) {
+			pendingClears.incrementAndGet();
+			secondTier.invalidateAllAsync(pendingClears::decrementAndGet);
+		}
+		cache.invalidateAll();
+		localCaches.forEach(LocalResponseCache::invalidateAll);
+	}
+
+	void register(final LocalResponseCache localCache) {
+		localCaches.add(localCache);
+	}
+
+	void unregister(final LocalResponseCache localCache) {
+		localCaches.remove(localCache);
+	}
+
+	void recordLocalHit() {
+		hits.increment();
+		localHits.increment();
+	}
+
+	/**
+	 * Writes the most used responses to a snapshot file, which can be loaded with {@link #loadSnapshot(Path)} to start another instance of
+	 * the cache with these responses in memory. The responses are written from the least used to the most used, so that the most used 
+	 * responses are the last ones evicted when the snapshot is loaded in a smaller cache.
+	 * @param file - the snapshot file
+	 * @param maxEntries - maximum number of responses written to the file
+	 * @return Metrics of the snapshot: number of responses and bytes written, and elapsed time in milliseconds.
+	 * @throws IOException if an error occurs writing the file.
+	 */
+	public JsonObject writeSnapshot(final Path file, final int maxEntries) throws IOException {
+		final long startTime = System.nanoTime(), now = System.currentTimeMillis();
+		final PriorityQueue<Map.Entry<String, CachedResponse>> hottest = new PriorityQueue<>(Math.max(1, maxEntries), 
+				Comparator.comparingInt(e -> e.getValue().getHits()));
+		for (final Map.Entry<String, CachedResponse> entry : cache.asMap().entrySet()) {
+			if (!isWorthKeeping(entry.getValue(), now)) continue;
+			hottest.add(entry);
+			if (hottest.size() > maxEntries) hottest.poll();
+		}
+		final List<Map.Entry<String, CachedResponse>> entries = new ArrayList<>(hottest.size());
+		while (!hottest.isEmpty()) entries.add(hottest.poll());
+		final long bytes = CacheSnapshot.write(file, entries);
+		return new JsonObject()
+				.put("entries", entries.size())
+				.put("bytes", bytes)
+				.put("millis", (System.nanoTime() - startTime) / 1000000l);
+	}
+
+	/**
+	 * Loads in memory the responses of a snapshot written with {@link #writeSnapshot(Path, int)}, discarding the responses that expired 
+	 * since the snapshot was written. Responses that are already in memory are not replaced. This method blocks while the file is read, so it
+	 * must not be called from an event loop.
+	 * @param file - the snapshot file
+	 * @return Metrics of the load: number of loaded and skipped responses, bytes read and elapsed time in milliseconds.
+	 * @throws IOException if the file cannot be read or it's not a snapshot.
+	 */
+	public JsonObject loadSnapshot(final Path file) throws IOException {
+		final long now = System.currentTimeMillis();
+		return CacheSnapshot.read(file, entry -> isWorthKeeping(entry, now), 
+				(key, entry) -> entry.getBody().length() <= maxEntrySize && cache.asMap().putIfAbsent(key, entry) == null);
+	}
+
+	private boolean isWorthKeeping(final CachedResponse entry, final long now) {
+		return entry.isUsable(now) || (entry.isRevalidatable() && now < entry.getStoredAt() + (maxTtl + maxStale) * 1000l);
+	}
+
+	/**
+	 * Closes the second tier (if any), writing the pending responses to the disk.
+	 */
+	public void close() {
+		if (secondTier != null) {
+			try {
+				secondTier.close();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to close disk cache.", e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of responses stored in the cache.
+	 * @return The approximate number of responses stored in the cache.
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Gets the metrics of the cache: number of hits (including the hits served from the first level caches) and misses, hit ratio, number of
+	 * hits served from the first level caches, number of stale responses served, number of responses renewed
+	 * after a revalidation with the upstream service, number of evicted responses,
+	 * number of responses currently stored in the cache and the metrics of the second tier (if any).
+	 * @return A JSON object with the metrics of the cache.
+	 */
+	public JsonObject stats() {
+		final long hitCount = hits.sum(), missCount = misses.sum();
+		final JsonObject stats = new JsonObject()
+				.put("hits", hitCount)
+				.put("misses", missCount)
+				.put("hit-ratio", hitCount + missCount > 0l ? (double)hitCount / (hitCount + missCount) : 0.0d)
+				.put("stale-hits", staleHits.sum())
+				.put("local-hits", localHits.sum())
+				.put("revalidations", revalidations.sum())
+				.put("evictions", cache.stats().evictionCount())
+				.put("entries", cache.size());
+		if (secondTier != null) stats.put("disk", secondTier.stats());
+		return stats;
+	}
+
+	private static String key(final String appId, final String path) {
+		return requireNonNull(appId, "A valid application id expected") + " " + requireNonNull(path, "A valid path expected");
+	}
+
+}
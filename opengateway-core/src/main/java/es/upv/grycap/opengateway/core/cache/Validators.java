@@ -0,0 +1,140 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.cache;
+
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.trimToEmpty;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Validators of a response (<tt>ETag</tt> and <tt>Last-Modified</tt> headers), which are used to answer conditional requests (RFC 7232) with
+ * <tt>304 (Not Modified)</tt> when the client already has the current representation. Instances of this class are immutable.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class Validators {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final String etag;
+	private final String lastModified;
+
+	/**
+	 * Creates new validators.
+	 * @param etag - (optional) entity tag of the response, including the quotes and the weakness indicator (if any)
+	 * @param lastModified - (optional) value of the <tt>Last-Modified</tt> header of the response
+	 */
+	public Validators(final @Nullable String etag, final @Nullable String lastModified) {
+		this.etag = isBlank(etag) ? null : etag.trim();
+		this.lastModified = isBlank(lastModified) ? null : lastModified.trim();
+	}
+
+	/**
+	 * Computes a strong entity tag from the content of a response, so that the same content always produces the same tag, in any instance
+	 * of the gateway.
+	 * @param body - content of the response
+	 * @return A strong entity tag, including the quotes.
+	 */
+	public static String strongETag(final Buffer body) {
+		final ByteBuf byteBuf = requireNonNull(body, "A valid body expected").getByteBuf();
+		final Hasher hasher = HASH.newHasher();
+		if (byteBuf.hasArray()) hasher.putBytes(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+		else hasher.putBytes(body.getBytes());
+		return "\"" + hasher.hash().toString() + "\"";
+	}
+
+	/**
+	 * Checks whether an entity tag is strong, i.e. it changes whenever the content of the response changes.
+	 * @param etag - (optional) entity tag
+	 * @return <tt>true</tt> when the entity tag is strong, otherwise <tt>false</tt>.
+	 */
+	public static boolean isStrong(final @Nullable String etag) {
+		return etag != null && etag.startsWith("\"");
+	}
+
+	public @Nullable String getETag() {
+		return etag;
+	}
+
+	public @Nullable String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Evaluates the preconditions of a conditional GET request against these validators. <tt>If-Modified-Since</tt> is ignored when the 
+	 * request includes <tt>If-None-Match</tt>, and the entity tags are compared with the weak comparison function (RFC 7232, section 3.2).
+	 * @param ifNoneMatch - (optional) values of the <tt>If-None-Match</tt> header
+	 * @param ifModifiedSince - (optional) value of the <tt>If-Modified-Since</tt> header
+	 * @return <tt>true</tt> when the client already has the current representation and the response must be <tt>304 (Not Modified)</tt>,
+	 *         otherwise <tt>false</tt>.
+	 */
+	public boolean isNotModified(final @Nullable List<String> ifNoneMatch, final @Nullable String ifModifiedSince) {
+		if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+			for (final String value : ifNoneMatch) {
+				if (isBlank(value)) continue;
+				for (final String tag : value.split(",")) {
+					final String tag2 = trimToEmpty(tag);
+					if ("*".equals(tag2) || (etag != null && opaqueTag(tag2).equals(opaqueTag(etag)))) return true;
+				}
+			}
+			return false;
+		}
+		if (ifModifiedSince != null && lastModified != null) {
+			try {
+				return !ZonedDateTime.parse(lastModified, RFC_1123_DATE_TIME).isAfter(ZonedDateTime.parse(ifModifiedSince.trim(), RFC_1123_DATE_TIME));
+			} catch (DateTimeParseException e) {
+				// invalid dates are ignored
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the approximated size of the validators in memory.
+	 * @return The approximated size of the validators in bytes.
+	 */
+	public int weight() {
+		return (etag != null ? etag.length() : 0) + (lastModified != null ? lastModified.length() : 0) + 16;
+	}
+
+	private static String opaqueTag(final String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+}
@@ -23,25 +23,75 @@
 
 package es.upv.grycap.opengateway.core.http;
 
+import static com.google.common.collect.ImmutableList.of;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 import static io.vertx.core.buffer.Buffer.buffer;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+
+import es.upv.grycap.opengateway.core.cache.CacheControl;
+import es.upv.grycap.opengateway.core.cache.CachedResponse;
+import es.upv.grycap.opengateway.core.cache.DistributedCache;
+import es.upv.grycap.opengateway.core.cache.LocalResponseCache;
+import es.upv.grycap.opengateway.core.cache.NegativeCache;
+import es.upv.grycap.opengateway.core.cache.ResponseCache;
+import es.upv.grycap.opengateway.core.cache.Validators;
+import es.upv.grycap.opengateway.core.http.HttpTransport.Backend;
 import es.upv.grycap.opengateway.core.http.RestServiceConfig.ApiConfig;
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.ClientConfig;
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.ScatterGatherConfig;
 import es.upv.grycap.opengateway.core.loadbalancer.BalanceableService;
+import es.upv.grycap.opengateway.core.loadbalancer.ClusterRouter;
 import es.upv.grycap.opengateway.core.loadbalancer.LoadBalancerClient;
+import es.upv.grycap.opengateway.core.resilience.CircuitBreaker;
+import es.upv.grycap.opengateway.core.resilience.CircuitBreakers;
+import es.upv.grycap.opengateway.core.resilience.ConcurrencyLimiter;
+import es.upv.grycap.opengateway.core.resilience.ConcurrencyLimiters;
+import es.upv.grycap.opengateway.core.resilience.HedgingPolicy;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.Pump;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
@@ -60,8 +110,48 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 	protected RestServiceConfig serviceConfig;
 	protected LoadBalancerClient loadBalancerClient;
 	protected Function<JsonObject, JsonObject> converter = null;
+	protected ResponseCache responseCache = null;
+	protected LocalResponseCache localCache = null;
+	protected DistributedCache distributedCache = null;
+	protected ClusterRouter clusterRouter = null;
+	protected NegativeCache negativeCache = null;
+	protected CircuitBreakers circuitBreakers = null;
+	protected ConcurrencyLimiters concurrencyLimiters = null;
+
+	private final Map<String, VertxHttp2Client> clients = newHashMap();
+	private final Map<String, HedgingPolicy> hedgingPolicies = newHashMap();
+	private final Map<String, JsonArrayMerger> mergers = newHashMap();
+	private long requestTimeout = REQUEST_TIMEOUT_MS;
+	private MessageConsumer<JsonObject> forwardedConsumer = null;
+	private RequestCoalescer coalescer = null;
 
 	private final static long MAX_BODY_SIZE_MIB = 8; // 8 MiB
+	private final static String CLIENT_BACKEND = "vertx";
+	private final static int MAX_POOL_SIZE = 32;
+	private final static int IDLE_TIMEOUT_SECONDS = 60;
+	private final static int MAX_WAIT_QUEUE_SIZE = 256;
+	private final static String REQUEST_COALESCING = "instance";
+	private final static long REQUEST_TIMEOUT_MS = 30000l;
+	private final static int SCATTER_MAX_CONCURRENCY = 8;
+	private final static String LIMIT_PARAMETER = "limit";
+	private final static String RECEIVED_AT = "opengateway.received-at";
+
+	/**
+	 * Response header that informs the clients whether the response was served from the cache (<tt>HIT</tt>), served from the cache after
+	 * it expired (<tt>STALE</tt>), served from the cache after the upstream service confirmed that it's still current (<tt>REVALIDATED</tt>)
+	 * or received from the upstream service (<tt>MISS</tt>).
+	 */
+	public final static String CACHE_STATUS_HEADER = "X-Cache";
+
+	/**
+	 * Header that flags the lists that are missing the items of one or more instances of a partitioned service (see 
+	 * {@link ApiConfig#setScatterGather(ScatterGatherConfig)}), with the number of instances that failed and the total number of instances.
+	 */
+	public final static String PARTIAL_RESULTS_HEADER = "X-Partial-Results";
+
+	private final static List<String> STREAMED_REQUEST_HEADERS = of("Accept", "Content-Type", "Content-Length", "If-None-Match", "If-Modified-Since");
+	private final static Set<String> HOP_BY_HOP_HEADERS = ImmutableSet.of("connection", "keep-alive", "proxy-authenticate", "proxy-authorization", 
+			"te", "trailer", "transfer-encoding", "upgrade");
 
 	@Override
 	public LoadBalancerClient getLoadBalancer() {
@@ -73,14 +163,118 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 		this.loadBalancerClient = loadBalancerClient;
 	}	
 
+	/**
+	 * Gets the cache used to store the responses of the upstream services.
+	 * @return The cache used to store the responses of the upstream services, or <tt>null</tt> when the cache is disabled.
+	 */
+	public @Nullable ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Gets the first level of the response cache, which is confined to the event loop of this instance.
+	 * @return The first level of the response cache, or <tt>null</tt> when it's disabled.
+	 */
+	public @Nullable LocalResponseCache getLocalCache() {
+		return localCache;
+	}
+
+	/**
+	 * Gets the response cache shared by all the nodes of the cluster.
+	 * @return The response cache shared by all the nodes of the cluster, or <tt>null</tt> when it's disabled or Vert.x is not clustered.
+	 */
+	public @Nullable DistributedCache getDistributedCache() {
+		return distributedCache;
+	}
+
+	/**
+	 * Gets the router that assigns the items to the nodes of the cluster.
+	 * @return The router that assigns the items to the nodes of the cluster, or <tt>null</tt> when the requests are not forwarded to the 
+	 *         owners of the items.
+	 */
+	public @Nullable ClusterRouter getClusterRouter() {
+		return clusterRouter;
+	}
+
+	/**
+	 * Gets the cache used to remember the items that were not found in the upstream services.
+	 * @return The cache used to remember the items that were not found in the upstream services, or <tt>null</tt> when the cache is disabled.
+	 */
+	public @Nullable NegativeCache getNegativeCache() {
+		return negativeCache;
+	}
+
+	/**
+	 * Gets the circuit breakers that protect the upstream services.
+	 * @return The circuit breakers that protect the upstream services, or <tt>null</tt> when the circuit breakers are disabled.
+	 */
+	public @Nullable CircuitBreakers getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	/**
+	 * Gets the policy that decides when the requests to a service are hedged.
+	 * @param appId - the application identifier
+	 * @return The hedging policy of the service, or <tt>null</tt> when hedging is disabled for the service.
+	 */
+	public @Nullable HedgingPolicy getHedgingPolicy(final String appId) {
+		return hedgingPolicies.get(appId);
+	}
+
+	/**
+	 * Gets the limiters that bound the concurrent requests submitted to the upstream services.
+	 * @return The limiters that bound the concurrent requests submitted to the upstream services, or <tt>null</tt> when the limiters are disabled.
+	 */
+	public @Nullable ConcurrencyLimiters getConcurrencyLimiters() {
+		return concurrencyLimiters;
+	}
+
 	@Override
-	public void start() throws Exception {
+	public void start(final Future<Void> startFuture) throws Exception {
 		requireNonNull(serviceConfig, "A valid service configuration expected");
 		requireNonNull(loadBalancerClient, "A valid load balancer client expected");		
+		// create the clients used to reach the upstream services, which are reused by all the requests handled by this instance
+		final Backend backend = Backend.fromName(context.config().getString("http-server.client-backend", CLIENT_BACKEND));
+		serviceConfig.getServices().values().stream().forEach(s -> clients.put(s.getAppId(), new VertxHttp2Client(backend.create(vertx, clientOptions(s)))));
+		// identical GET requests are coalesced before an instance is selected (see upstreamGet), so only the requests sent upstream are counted
+		coalescer = coalescer(context.config().getString("http-server.request-coalescing", REQUEST_COALESCING));
+		serviceConfig.getServices().values().stream().filter(s -> s.getHedging() != null && !s.isStreaming())
+			.forEach(s -> hedgingPolicies.put(s.getAppId(), new HedgingPolicy(s.getHedging())));
+		serviceConfig.getServices().values().stream().filter(s -> s.getScatterGather() != null && !s.isStreaming())
+			.forEach(s -> mergers.put(s.getAppId(), new JsonArrayMerger(s.getScatterGather().getSortField(), 
+					ofNullable(s.getScatterGather().getDescending()).orElse(false), converter)));
+		// the response cache is shared by all the instances of the service
+		final JsonObject cacheConfig = context.config().getJsonObject("http-server.response-cache", new JsonObject());
+		if (responseCache == null && cacheConfig.getBoolean("enabled", true)) responseCache = ResponseCache.sharedCache(vertx, cacheConfig);
+		// each instance runs on its own event loop, where the most used responses are served without contending with the other instances
+		final JsonObject localConfig = cacheConfig.getJsonObject("local", new JsonObject());
+		if (localCache == null && responseCache != null && localConfig.getBoolean("enabled", true)) localCache = new LocalResponseCache(responseCache, 
+				localConfig.getInteger("max-entries", LocalResponseCache.MAX_ENTRIES));
+		// in a cluster, the responses that are not found in this node are looked up in the other nodes before contacting the upstream services
+		final JsonObject distributedConfig = cacheConfig.getJsonObject("distributed", new JsonObject());
+		if (distributedCache == null && responseCache != null && distributedConfig.getBoolean("enabled", false)) distributedCache = DistributedCache.sharedCache(vertx);
+		final JsonObject negativeConfig = context.config().getJsonObject("http-server.negative-cache", new JsonObject());
+		if (negativeCache == null && negativeConfig.getBoolean("enabled", true)) negativeCache = NegativeCache.sharedCache(vertx, negativeConfig);
+		// the circuit breakers are also shared, so that all the instances stop calling a failing upstream service at the same time
+		final JsonObject breakerConfig = context.config().getJsonObject("http-server.circuit-breaker", new JsonObject());
+		if (circuitBreakers == null && breakerConfig.getBoolean("enabled", true)) circuitBreakers = CircuitBreakers.sharedCircuitBreakers(vertx, breakerConfig);
+		final JsonObject limiterConfig = context.config().getJsonObject("http-server.concurrency-limit", new JsonObject());
+		if (concurrencyLimiters == null && limiterConfig.getBoolean("enabled", false)) concurrencyLimiters = ConcurrencyLimiters.sharedLimiters(vertx, limiterConfig);
+		requestTimeout = context.config().getLong("http-server.request-timeout", REQUEST_TIMEOUT_MS);
+		// in a cluster, the items can be served by the node that owns them, which receives the requests from the other nodes over the event bus
+		if (clusterRouter == null && context.config().getJsonObject("http-server.key-affinity", new JsonObject()).getBoolean("enabled", false)) {
+			clusterRouter = ClusterRouter.sharedRouter(vertx);
+		}
+		if (clusterRouter != null) forwardedConsumer = vertx.eventBus().consumer(clusterRouter.localAddress(), this::handleForwardedGet);
 		// set body limit and create router
 		final long maxBodySize = context.config().getLong("http-server.max-body-size", MAX_BODY_SIZE_MIB) * 1024l * 1024l;
+		final BodyHandler bodyHandler = BodyHandler.create().setBodyLimit(maxBodySize);
 		final Router router = Router.router(vertx);
-		router.route().handler(BodyHandler.create().setBodyLimit(maxBodySize));
+		// record the arrival time of the requests, so that the time spent reading the request is subtracted from the deadline
+		router.route().handler(e -> {
+			e.put(RECEIVED_AT, System.nanoTime());
+			e.next();
+		});
 		// enable CORS
 		router.route().handler(CorsHandler.create("*")
 				.allowedMethod(HttpMethod.GET)
@@ -95,53 +289,588 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 		// serve resources
 		serviceConfig.getServices().values().stream().forEach(s -> {
 			final String path = requireNonNull(s.getPath(), "A valid path required");
-			router.get(String.format("%s/:id", path)).produces("application/json").handler(e -> handleGet(s, e));
-			router.get(path).produces("application/json").handler(e -> handleList(s, e));
-			router.post(path).handler(e -> handleCreate(s, e));
-			router.put(String.format("%s/:id", path)).consumes("application/json").handler(e -> handleModify(s, e));
-			router.delete(String.format("%s/:id", path)).handler(e -> handleDelete(s, e));
+			if (s.isStreaming() && clients.get(s.getAppId()).supportsStreaming()) {
+				// bodies are piped between the client and the upstream service without buffering
+				router.get(String.format("%s/:id", path)).produces("application/json").handler(e -> handleStream(s, e, true));
+				router.get(path).produces("application/json").handler(e -> handleStream(s, e, false));
+				router.post(path).handler(e -> handleStream(s, e, false));
+				router.put(String.format("%s/:id", path)).consumes("application/json").handler(e -> handleStream(s, e, true));
+				router.delete(String.format("%s/:id", path)).handler(e -> handleStream(s, e, true));
+			} else {
+				if (s.isStreaming()) logger.warn("Streaming is not supported by the client backend, bodies will be buffered [appId=" + s.getAppId() + "].");
+				router.route(path).handler(bodyHandler);
+				router.route(String.format("%s/*", path)).handler(bodyHandler);
+				router.get(String.format("%s/:id", path)).produces("application/json").handler(e -> handleGet(s, e));
+				router.get(path).produces("application/json").handler(e -> handleList(s, e));
+				router.post(path).handler(e -> handleCreate(s, e));
+				router.put(String.format("%s/:id", path)).consumes("application/json").handler(e -> handleModify(s, e));
+				router.delete(String.format("%s/:id", path)).handler(e -> handleDelete(s, e));
+			}
 		});
 		// start HTTP server
 		final int port = context.config().getInteger("http.port", 8080);		
-		vertx.createHttpServer().requestHandler(router::accept).listen(port);
-		logger.trace("New instance created: [id=" + context.deploymentID() + "].");
+		vertx.createHttpServer().requestHandler(router::accept).listen(port, res -> {
+			if (res.succeeded()) {
+				logger.trace("New instance created: [id=" + context.deploymentID() + "].");
+				startFuture.complete();
+			} else {
+				startFuture.fail(res.cause());
+			}
+		});
+	}
+
+	@Override
+	public void stop() throws Exception {
+		clients.values().stream().forEach(VertxHttp2Client::close);
+		clients.clear();
+		if (localCache != null) localCache.close();
+		if (forwardedConsumer != null) forwardedConsumer.unregister();
+	}
+
+	/**
+	 * Creates the coalescer used to share the identical GET requests that are in flight: within this instance (<tt>instance</tt>), 
+	 * between all the instances deployed in the same Vert.x instance (<tt>shared</tt>) or none (<tt>none</tt>).
+	 */
+	private @Nullable RequestCoalescer coalescer(final String scope) {
+		switch (requireNonNull(scope, "A valid scope expected").toLowerCase()) {
+		case "none":
+			return null;
+		case "instance":
+			return new RequestCoalescer();
+		case "shared":
+			return RequestCoalescer.sharedCoalescer(vertx);
+		default:
+			throw new IllegalArgumentException("Unsupported request coalescing scope: " + scope);
+		}
+	}
+
+	private HttpClientOptions clientOptions(final ApiConfig api) {
+		final JsonObject defaults = context.config().getJsonObject("http-server.upstream-client", new JsonObject());
+		final ClientConfig clientConfig = ofNullable(api.getClientConfig()).orElse(new ClientConfig());
+		return new HttpClientOptions()
+				.setMaxPoolSize(ofNullable(clientConfig.getMaxPoolSize()).orElse(defaults.getInteger("max-pool-size", MAX_POOL_SIZE)))
+				.setKeepAlive(ofNullable(clientConfig.getKeepAlive()).orElse(defaults.getBoolean("keep-alive", true)))
+				.setIdleTimeout(ofNullable(clientConfig.getIdleTimeout()).orElse(defaults.getInteger("idle-timeout", IDLE_TIMEOUT_SECONDS)))
+				.setMaxWaitQueueSize(ofNullable(clientConfig.getMaxWaitQueueSize()).orElse(defaults.getInteger("max-wait-queue-size", MAX_WAIT_QUEUE_SIZE)));
 	}
 
 	private void handleGet(final ApiConfig api, final RoutingContext routingContext) {
 		final String id = routingContext.request().getParam("id");
-		final HttpServerResponse response = routingContext.response();
 		if (id == null) {
-			sendError(400, response);
-		} else {
-			final String service = loadBalancerClient.getServiceInstance(api.getAppId());
-			if (isBlank(service)) {
-				sendError(503, response);
+			sendError(400, routingContext.response());
+		} else if (clusterRouter != null) {
+			// each item is served by a single node of the cluster, which is the only node that caches the item and contacts the upstream service
+			final String owner = clusterRouter.owner(api.getAppId() + "/" + id);
+			if (clusterRouter.isLocal(owner)) {
+				clusterRouter.recordLocal();
+				handleCachedGet(api, routingContext, id);
 			} else {
-				new VertxHttp2Client(vertx).asyncGet(String.format("%s/%s", service, id), false, resp -> {
-					if (!resp.succeeded()) {
-						sendError(504, response);
-					} else {
-						convertSend(resp.result(), response);
-					}
-				});
+				forwardGet(api, routingContext, id, owner);
 			}
+		} else {
+			handleCachedGet(api, routingContext, id);
 		}
 	}
 
 	private void handleList(final ApiConfig api, final RoutingContext routingContext) {
-		final HttpServerResponse response = routingContext.response();		
-		final String service = loadBalancerClient.getServiceInstance(api.getAppId());
-		if (isBlank(service)) {
-			sendError(503, response);
+		if (mergers.containsKey(api.getAppId())) {
+			final HttpServerRequest request = routingContext.request();
+			final String limitParam = request.getParam(ofNullable(api.getScatterGather().getLimitParameter()).orElse(LIMIT_PARAMETER));
+			if (limitParam != null) {
+				final Integer limit = Ints.tryParse(limitParam.trim());
+				if (limit == null || limit < 0) {
+					sendError(400, routingContext.response());
+					return;
+				}
+				// lists truncated by the client are not cached
+				final boolean nocache = CacheControl.parse(request.headers().getAll("Cache-Control")).isNoCache();
+				scatterGather(api, limit, nocache, deadline(api, routingContext), outcome -> send(outcome, request, routingContext.response()));
+				return;
+			}
+		}
+		handleCachedGet(api, routingContext, null);
+	}
+
+	private void handleCachedGet(final ApiConfig api, final RoutingContext routingContext, final @Nullable String id) {
+		final HttpServerRequest request = routingContext.request();
+		final boolean nocache = CacheControl.parse(request.headers().getAll("Cache-Control")).isNoCache();
+		resolveGet(api, id, request.path(), nocache, () -> deadline(api, routingContext), outcome -> send(outcome, request, routingContext.response()));
+	}
+
+	/**
+	 * Sends a GET request to the node of the cluster that owns the item. Requests are served by this node when the owner cannot be reached
+	 * (for example, when it left the cluster and the membership was not updated yet).
+	 */
+	private void forwardGet(final ApiConfig api, final RoutingContext routingContext, final String id, final String owner) {
+		final HttpServerRequest request = routingContext.request();
+		final HttpServerResponse response = routingContext.response();
+		final Deadline deadline = deadline(api, routingContext);
+		final JsonObject message = new JsonObject()
+				.put("appId", api.getAppId())
+				.put("id", id)
+				.put("path", request.path())
+				.put("nocache", CacheControl.parse(request.headers().getAll("Cache-Control")).isNoCache());
+		final DeliveryOptions options = new DeliveryOptions();
+		if (deadline != null) {
+			message.put("timeout", Math.max(1l, deadline.remainingMillis()));
+			options.setSendTimeout(Math.max(1l, deadline.remainingMillis()));
+		}
+		final long start = System.nanoTime();
+		vertx.eventBus().<JsonObject>send(clusterRouter.address(owner), message, options, reply -> {
+			if (reply.succeeded()) {
+				clusterRouter.recordForwarded(System.nanoTime() - start, reply.result().body().getLong("elapsed", 0l));
+				send(Outcome.fromJson(reply.result().body()), request, response);
+			} else if (reply.cause() instanceof ReplyException && ((ReplyException)reply.cause()).failureType() == ReplyFailure.TIMEOUT) {
+				clusterRouter.recordFailure();
+				sendError(504, response);
+			} else {
+				clusterRouter.recordFallback();
+				handleCachedGet(api, routingContext, id);
+			}
+		});
+	}
+
+	/**
+	 * Serves a GET request forwarded by another node of the cluster, replying with the outcome of the request and the time spent serving it.
+	 */
+	private void handleForwardedGet(final Message<JsonObject> message) {
+		final long start = System.nanoTime();
+		final JsonObject request = message.body();
+		final ApiConfig api = serviceConfig.getServices().values().stream().filter(s -> s.getAppId().equals(request.getString("appId")) && !s.isStreaming())
+				.findFirst().orElse(null);
+		if (api == null) {
+			message.fail(404, "Unknown service: " + request.getString("appId"));
+			return;
+		}
+		clusterRouter.recordReceived();
+		final long timeout = request.getLong("timeout", 0l);
+		resolveGet(api, request.getString("id"), request.getString("path"), request.getBoolean("nocache", false), 
+				() -> timeout > 0l ? Deadline.after(timeout) : null, outcome -> message.reply(outcome.toJson().put("elapsed", System.nanoTime() - start)));
+	}
+
+	/**
+	 * Gets an item or a list of items from the cache or from the upstream service, storing the responses of the upstream service in the cache.
+	 * @param deadline - creates the deadline of the request, which is only needed when the upstream service is contacted
+	 * @param handler - receives the outcome of the request
+	 */
+	private void resolveGet(final ApiConfig api, final @Nullable String id, final String path, final boolean nocache, final Supplier<Deadline> deadline, 
+			final Handler<Outcome> handler) {
+		// responses that are not in memory are loaded from the disk tier of the cache (if any) in a worker thread, when the index of the disk
+		// tier shows that the response is stored in the disk
+		if (responseCache != null && !nocache && responseCache.getSecondTier() != null && (localCache == null || !localCache.isPresent(api.getAppId(), path)) 
+				&& !responseCache.isPresent(api.getAppId(), path) && responseCache.isLoadable(api.getAppId(), path)) {
+			vertx.<CachedResponse>executeBlocking(future -> future.complete(responseCache.load(api.getAppId(), path)), false, 
+					loaded -> lookupGet(api, id, path, nocache, deadline, handler));
 		} else {
-			new VertxHttp2Client(vertx).asyncGet(service, false, resp -> {
-				if (!resp.succeeded()) {
-					sendError(504, response);
+			lookupGet(api, id, path, nocache, deadline, handler);
+		}
+	}
+
+	private void lookupGet(final ApiConfig api, final @Nullable String id, final String path, final boolean nocache, final Supplier<Deadline> deadline, 
+			final Handler<Outcome> handler) {
+		// serve fresh responses from the cache, unless the client requested an end-to-end reload
+		if (responseCache != null && !nocache) {
+			final CachedResponse cached = localCache != null ? localCache.get(api.getAppId(), path) : responseCache.get(api.getAppId(), path);
+			if (cached != null) {
+				handler.handle(Outcome.of(cached, "HIT"));
+				return;
+			}
+			// serve stale responses while a fresh response is requested in the background
+			final CachedResponse stale = responseCache.getStaleWhileRevalidate(api.getAppId(), path);
+			if (stale != null) {
+				handler.handle(Outcome.of(stale, "STALE"));
+				revalidate(api, id, path);
+				return;
+			}
+		}
+		// look up the response in the other nodes of the cluster
+		if (distributedCache != null && responseCache != null && !nocache) {
+			distributedCache.get(api.getAppId(), path, shared -> {
+				if (shared != null && responseCache.put(api.getAppId(), path, shared)) handler.handle(Outcome.of(shared, "HIT"));
+				else fetchGet(api, id, path, nocache, deadline, handler);
+			});
+		} else {
+			fetchGet(api, id, path, nocache, deadline, handler);
+		}
+	}
+
+	private void fetchGet(final ApiConfig api, final @Nullable String id, final String path, final boolean nocache, final Supplier<Deadline> deadline, 
+			final Handler<Outcome> handler) {
+		// answer the requests for items that were recently not found in the upstream service
+		if (negativeCache != null && !nocache && negativeCache.contains(api.getAppId(), path)) {
+			handler.handle(Outcome.error(404, "HIT"));
+			return;
+		}
+		// lists of partitioned services are requested to all the instances
+		if (id == null && mergers.containsKey(api.getAppId())) {
+			scatterGather(api, null, nocache, deadline.get(), outcome -> {
+				if (outcome.status == 200) storeList(api, path, outcome);
+				handler.handle(outcome.status == 200 ? outcome : staleIfError(api, path, nocache, outcome));
+			});
+			return;
+		}
+		// expired responses are revalidated with the upstream service, which doesn't send the body again when the response is still current
+		final CachedResponse expired = responseCache != null && !nocache ? responseCache.getForRevalidation(api.getAppId(), path) : null;
+		upstreamGet(api, id, nocache, expired != null ? expired.getUpstreamValidators() : null, deadline.get(), 
+				v -> handler.handle(staleIfError(api, path, nocache, Outcome.error(503, null))), resp -> {
+			if (resp.succeeded() && resp.result().isNotModified()) {
+				if (expired != null) {
+					final CachedResponse refreshed = responseCache.refresh(api.getAppId(), path, expired, CacheControl.parse(resp.result().header("Cache-Control")));
+					if (distributedCache != null) distributedCache.put(api.getAppId(), path, refreshed);
+					handler.handle(Outcome.of(refreshed, "REVALIDATED"));
+				} else handler.handle(Outcome.error(502, null));
+			} else if (!resp.succeeded()) {
+				if (isNotFound(resp.cause())) {
+					if (negativeCache != null) negativeCache.add(api.getAppId(), path);
+					handler.handle(Outcome.error(404, null));
+				} else handler.handle(isServerError(resp.cause()) ? staleIfError(api, path, nocache, Outcome.error(504, null)) : Outcome.error(504, null));
+			} else {
+				Buffer body = null;
+				try {
+					body = convert(resp.result());
+				} catch (IllegalStateException e) {
+					logger.trace("Failed to parse upstream response.", e);
+					handler.handle(staleIfError(api, path, nocache, Outcome.error(502, null)));
+					return;
+				}
+				if (body == null) {
+					if (negativeCache != null) negativeCache.add(api.getAppId(), path);
+					handler.handle(Outcome.error(404, null));
 				} else {
-					convertSend(resp.result(), response);
+					final CacheControl cacheControl = CacheControl.parse(resp.result().header("Cache-Control"));
+					final Validators validators = validators(resp.result(), body);
+					if (responseCache != null && responseCache.put(api.getAppId(), path, cacheControl, body, validators, upstreamValidators(resp.result())) 
+							&& distributedCache != null) distributedCache.put(api.getAppId(), path, responseCache.peek(api.getAppId(), path));
+					handler.handle(new Outcome(200, "MISS", body, validators, cacheControl.getValue(), -1l));
 				}
+			}
+		});
+	}
+
+	/**
+	 * Requests a fresh copy of a cached response in the background, unless the response is already being revalidated. The revalidated 
+	 * response replaces the cached response, and responses that no longer exist are removed from the cache. The request is conditional 
+	 * when the upstream service sent validators with the cached response, so that unchanged responses are not sent again.
+	 */
+	private void revalidate(final ApiConfig api, final @Nullable String id, final String path) {
+		if (!responseCache.startRevalidation(api.getAppId(), path)) return;
+		final long timeout = ofNullable(api.getTimeout()).orElse(requestTimeout);
+		if (id == null && mergers.containsKey(api.getAppId())) {
+			scatterGather(api, null, false, timeout > 0l ? Deadline.after(timeout) : null, outcome -> {
+				if (outcome.status == 200) storeList(api, path, outcome);
+				responseCache.endRevalidation(api.getAppId(), path);
 			});
+			return;
 		}
+		final CachedResponse expired = responseCache.getForRevalidation(api.getAppId(), path);
+		upstreamGet(api, id, false, expired != null ? expired.getUpstreamValidators() : null, timeout > 0l ? Deadline.after(timeout) : null, 
+				v -> responseCache.endRevalidation(api.getAppId(), path), resp -> {
+			try {
+				if (resp.succeeded() && resp.result().isNotModified()) {
+					if (expired != null) responseCache.refresh(api.getAppId(), path, expired, CacheControl.parse(resp.result().header("Cache-Control")));
+				} else if (resp.succeeded()) {
+					final Buffer body = convert(resp.result());
+					if (body != null) responseCache.put(api.getAppId(), path, CacheControl.parse(resp.result().header("Cache-Control")), body, 
+							validators(resp.result(), body), upstreamValidators(resp.result()));
+					else responseCache.invalidate(api.getAppId(), path);
+				} else if (isNotFound(resp.cause())) {
+					responseCache.invalidate(api.getAppId(), path);
+					if (negativeCache != null) negativeCache.add(api.getAppId(), path);
+				}
+			} catch (IllegalStateException e) {
+				logger.trace("Failed to parse upstream response.", e);
+			} finally {
+				responseCache.endRevalidation(api.getAppId(), path);
+			}
+		});
+	}
+
+	/**
+	 * Gets a list of items from all the instances of a partitioned service, requesting at most the configured number of instances at the
+	 * same time, and merges the lists as they are parsed. The list is complete when every instance answers within its timeout, otherwise
+	 * it's sent without the items of the failed instances and flagged as partial. Instances that don't have the list (not found) are 
+	 * considered empty.
+	 * @param limit - (optional) maximum number of items requested by the client, which is also sent to the instances
+	 */
+	private void scatterGather(final ApiConfig api, final @Nullable Integer limit, final boolean nocache, final @Nullable Deadline deadline, 
+			final Handler<Outcome> handler) {
+		final ScatterGatherConfig config = api.getScatterGather();
+		loadBalancerClient.queryAsync(api.getAppId(), query -> {
+			final List<String> instances = query.succeeded() && query.result() != null 
+					? query.result().stream().filter(instance -> !isBlank(instance)).distinct().collect(Collectors.toList()) : emptyList();
+			if (instances.isEmpty()) {
+				handler.handle(Outcome.error(503, null));
+				return;
+			}
+			final Gather gather = new Gather(instances, limit != null 
+					? "?" + ofNullable(config.getLimitParameter()).orElse(LIMIT_PARAMETER) + "=" + limit : "");
+			final Handler<Gather> doneHandler = g -> handler.handle(merge(api, g, limit));
+			final int maxConcurrency = Math.max(1, ofNullable(config.getMaxConcurrency()).orElse(SCATTER_MAX_CONCURRENCY));
+			for (int i = 0; i < Math.min(maxConcurrency, instances.size()); i++) gatherNext(api, gather, nocache, deadline, doneHandler);
+		});
+	}
+
+	/**
+	 * Requests the list to the next instance (if any), acquiring the same permits as any other upstream request. The instances are not 
+	 * requested when the request is cancelled.
+	 */
+	private void gatherNext(final ApiConfig api, final Gather gather, final boolean nocache, final @Nullable Deadline deadline, 
+			final Handler<Gather> doneHandler) {
+		if (gather.next >= gather.instances.size() || (deadline != null && deadline.isCancelled())) {
+			gather.failed += gather.instances.size() - gather.next;
+			gather.next = gather.instances.size();
+			if (gather.inFlight == 0 && !gather.done) {
+				gather.done = true;
+				doneHandler.handle(gather);
+			}
+			return;
+		}
+		final int shard = gather.next++;
+		final String instance = gather.instances.get(shard);
+		gather.inFlight++;
+		final Handler<AsyncResult<HttpResponse>> shardHandler = resp -> {
+			gather.inFlight--;
+			if (resp.succeeded()) gather.responses[shard] = resp.result();
+			else if (!isNotFound(resp.cause())) gather.failed++;
+			gatherNext(api, gather, nocache, deadline, doneHandler);
+		};
+		final ConcurrencyLimiter limiter = concurrencyLimiters != null ? concurrencyLimiters.limiter(api.getAppId()) : null;
+		if (limiter != null && !limiter.tryAcquire()) {
+			shardHandler.handle(Future.failedFuture("Request rejected by the concurrency limiter"));
+			return;
+		}
+		if (circuitBreakers != null && !circuitBreakers.tryAcquire(api.getAppId(), instance)) {
+			if (limiter != null) limiter.release();
+			shardHandler.handle(Future.failedFuture("Request rejected by the circuit breaker"));
+			return;
+		}
+		// the timeout of each instance starts when the instance is requested, and it's shortened to the remaining time of the request
+		final Long shardTimeout = api.getScatterGather().getShardTimeout();
+		final Deadline shardDeadline = shardTimeout != null && shardTimeout > 0l 
+				? Deadline.after(deadline != null ? Math.min(shardTimeout, deadline.remainingMillis()) : shardTimeout) : deadline;
+		if (deadline != null && shardDeadline != deadline) deadline.onCancel(shardDeadline::cancel);
+		fetch(clients.get(api.getAppId()), instance + gather.query, nocache, null, shardDeadline, track(api, instance, shardHandler));
+	}
+
+	/**
+	 * Merges the lists received from the instances of a partitioned service. The merged list can be stored in shared caches for the shortest
+	 * time allowed by the instances, unless it's partial.
+	 */
+	private Outcome merge(final ApiConfig api, final Gather gather, final @Nullable Integer limit) {
+		final List<Buffer> lists = newArrayList();
+		CacheControl cacheControl = null;
+		for (final HttpResponse response : gather.responses) {
+			if (response == null) continue;
+			lists.add(response.readBuffer());
+			final CacheControl current = CacheControl.parse(response.header("Cache-Control"));
+			if (cacheControl == null || current.sharedMaxAge() < cacheControl.sharedMaxAge()) cacheControl = current;
+		}
+		final JsonArrayMerger.Result merged = mergers.get(api.getAppId()).merge(lists, limit != null ? limit : -1);
+		final int failed = gather.failed + merged.getFailed();
+		if (failed >= gather.instances.size()) return Outcome.error(504, null);
+		if (failed > 0) logger.trace("Partial list [appId=" + api.getAppId() + ", failed=" + failed + ", instances=" + gather.instances.size() + "].");
+		return new Outcome(200, "MISS", merged.getBody(), new Validators(Validators.strongETag(merged.getBody()), null), 
+				failed > 0 ? "no-store" : (cacheControl != null ? cacheControl.getValue() : null), -1l, failed > 0 ? failed + "/" + gather.instances.size() : null);
+	}
+
+	/**
+	 * Stores a complete list of a partitioned service in the cache.
+	 */
+	private void storeList(final ApiConfig api, final String path, final Outcome outcome) {
+		if (responseCache == null || outcome.partial != null) return;
+		if (responseCache.put(api.getAppId(), path, CacheControl.parse(singletonList(outcome.cacheControl)), outcome.body, outcome.validators, null) 
+				&& distributedCache != null) distributedCache.put(api.getAppId(), path, responseCache.peek(api.getAppId(), path));
+	}
+
+	/**
+	 * Gets a stale response from the cache that can be sent in place of an error, when the upstream service allows it.
+	 * @return The stale response, or the specified error when no stale response can be sent.
+	 */
+	private Outcome staleIfError(final ApiConfig api, final String path, final boolean nocache, final Outcome error) {
+		final CachedResponse stale = responseCache != null && !nocache ? responseCache.getStaleIfError(api.getAppId(), path) : null;
+		return stale != null ? Outcome.of(stale, "STALE") : error;
+	}
+
+	private void send(final Outcome outcome, final HttpServerRequest request, final HttpServerResponse response) {
+		if (outcome.body != null) {
+			if (outcome.partial != null && !response.closed()) response.putHeader(PARTIAL_RESULTS_HEADER, outcome.partial);
+			sendRepresentation(outcome.body, outcome.validators, outcome.cacheControl, outcome.cacheStatus, outcome.age, request, response);
+			return;
+		}
+		if (outcome.cacheStatus != null && !response.closed()) response.putHeader(CACHE_STATUS_HEADER, outcome.cacheStatus);
+		if (outcome.status == 503) sendUnavailable(response);
+		else sendError(outcome.status, response);
+	}
+
+	/**
+	 * Sends a representation with its validators and the directives of the upstream service, answering with 304 (Not Modified) when the 
+	 * request is conditional and the client already has the representation.
+	 * @param age - time (in seconds) since the representation was received from the upstream service, or <tt>-1</tt> when it was just received
+	 */
+	private void sendRepresentation(final Buffer body, final Validators validators, final @Nullable String cacheControl, final String cacheStatus, 
+			final long age, final HttpServerRequest request, final HttpServerResponse response) {
+		if (response.closed()) return;
+		response.putHeader(CACHE_STATUS_HEADER, cacheStatus);
+		if (validators.getETag() != null) response.putHeader("ETag", validators.getETag());
+		if (validators.getLastModified() != null) response.putHeader("Last-Modified", validators.getLastModified());
+		if (cacheControl != null && !cacheControl.isEmpty()) response.putHeader("Cache-Control", cacheControl);
+		if (age >= 0l) response.putHeader("Age", Long.toString(age));
+		if (validators.isNotModified(request.headers().getAll("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+			response.setStatusCode(304).end();
+		} else {
+			response.putHeader("content-type", "application/json").end(body);
+		}
+	}
+
+	/**
+	 * Gets the validators of a representation: the entity tag of the upstream service is forwarded when it's strong and the body is sent 
+	 * unchanged, otherwise a strong entity tag is computed from the body sent to the clients. 
+	 */
+	private Validators validators(final HttpResponse upstream, final Buffer body) {
+		final Validators upstreamValidators = upstreamValidators(upstream);
+		return new Validators(converter == null && Validators.isStrong(upstreamValidators.getETag()) ? upstreamValidators.getETag() : Validators.strongETag(body), 
+				upstreamValidators.getLastModified());
+	}
+
+	/**
+	 * Gets the validators sent by the upstream service, which are used to revalidate the response with the upstream service.
+	 */
+	private static Validators upstreamValidators(final HttpResponse upstream) {
+		return new Validators(upstream.header("ETag").stream().findFirst().orElse(null), upstream.header("Last-Modified").stream().findFirst().orElse(null));
+	}
+
+	private static boolean isNotFound(final Throwable cause) {
+		return cause instanceof UnexpectedStatusException && ((UnexpectedStatusException)cause).statusCode() == 404;
+	}
+
+	/**
+	 * Checks whether a failed request can be attributed to the upstream service or to the network (e.g. server errors and timeouts), 
+	 * rather than to the request (e.g. not found) or to the client (e.g. disconnected).
+	 */
+	private static boolean isServerError(final Throwable cause) {
+		return cause instanceof UnexpectedStatusException ? ((UnexpectedStatusException)cause).isServerError() : !(cause instanceof CancellationException);
+	}
+
+	/**
+	 * Gets an item or a list of items from an instance of the service, sharing the identical requests that are in flight (see 
+	 * {@link RequestCoalescer}). Only the request that is sent upstream selects an instance, acquires the permits of the concurrency limiter
+	 * and of the circuit breaker, and is recorded in the load balancer, so that a burst of identical requests counts as a single request. The
+	 * requests that wait for a rejected request are also rejected.
+	 */
+	private void upstreamGet(final ApiConfig api, final @Nullable String id, final boolean nocache, final @Nullable Validators conditions, 
+			final @Nullable Deadline deadline, final Handler<Void> rejectHandler, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		// requests that don't accept cached responses are never coalesced, since the in-flight request could be older than the caller
+		if (coalescer == null || nocache) {
+			submitGet(api, id, nocache, conditions, deadline, rejectHandler, resultHandler);
+			return;
+		}
+		final String key = String.format("GET %s %s %s %s", api.getAppId(), id != null ? id : "", 
+				conditions != null && conditions.getETag() != null ? conditions.getETag() : "", 
+				conditions != null && conditions.getLastModified() != null ? conditions.getLastModified() : "");
+		coalescer.execute(key, deadline, (shared, handler) -> submitGet(api, id, false, conditions, shared, 
+				v -> handler.handle(Future.failedFuture(RejectedRequestException.INSTANCE)), handler), result -> {
+			if (result.failed() && result.cause() == RejectedRequestException.INSTANCE) rejectHandler.handle(null);
+			else resultHandler.handle(result);
+		});
+	}
+
+	/**
+	 * Sends a GET request to an instance of the service. When hedging is enabled for the service and the instance doesn't answer
+	 * within the delay of the hedging policy, the request is also sent to a different instance and the first successful response is used.
+	 * Each attempt runs with its own deadline, which is cancelled when the other attempt wins, closing the connection of the loser.
+	 */
+	private void submitGet(final ApiConfig api, final @Nullable String id, final boolean nocache, final @Nullable Validators conditions, 
+			final @Nullable Deadline deadline, final Handler<Void> rejectHandler, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		final VertxHttp2Client client = clients.get(api.getAppId());
+		final HedgingPolicy policy = hedgingPolicies.get(api.getAppId());
+		withService(api, id, rejectHandler, service -> {
+			if (policy == null) {
+				fetch(client, id != null ? String.format("%s/%s", service, id) : service, nocache, conditions, deadline, track(api, service, resultHandler));
+				return;
+			}
+			policy.onRequest();
+			final Hedge hedge = new Hedge(resultHandler);
+			final long start = System.nanoTime();
+			final Deadline first = hedge.attempt(deadline);
+			fetch(client, id != null ? String.format("%s/%s", service, id) : service, nocache, conditions, first, track(api, service, resp -> {
+				if (resp.succeeded()) policy.recordLatency(System.nanoTime() - start);
+				if (hedge.complete(resp, first)) vertx.cancelTimer(hedge.timerId);
+			}));
+			if (hedge.done) return;
+			hedge.timerId = vertx.setTimer(Math.max(1l, policy.delay()), timerId -> {
+				if (!hedge.done) withHedgeService(api, service, policy, hedgeService -> {
+					if (hedge.done) {
+						release(api, hedgeService);
+						return;
+					}
+					hedge.pending++;
+					final Deadline second = hedge.attempt(deadline);
+					fetch(client, id != null ? String.format("%s/%s", hedgeService, id) : hedgeService, nocache, conditions, second, track(api, hedgeService, resp -> {
+						if (hedge.complete(resp, second) && resp.succeeded()) policy.onHedgeWin();
+					}));
+				});
+			});
+		});
+	}
+
+	/**
+	 * Gets an item or a list of items, sending a conditional request when the validators of a cached response are available.
+	 */
+	private static void fetch(final VertxHttp2Client client, final String url, final boolean nocache, final @Nullable Validators conditions, 
+			final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		if (conditions != null) client.asyncConditionalGet(url, null, conditions.getETag(), conditions.getLastModified(), deadline, resultHandler);
+		else client.asyncGet(url, nocache, deadline, resultHandler);
+	}
+
+	/**
+	 * Selects an instance of the service other than the instance that received the first attempt, acquiring the permits needed to send the 
+	 * hedged request: a concurrency permit, a token of the retry budget and a permit of the circuit breaker of the instance. The handler is
+	 * not called when the hedged request is not permitted.
+	 */
+	private void withHedgeService(final ApiConfig api, final String service, final HedgingPolicy policy, final Handler<String> handler) {
+		loadBalancerClient.queryAsync(api.getAppId(), query -> {
+			final List<String> candidates = query.succeeded() && query.result() != null ? query.result().stream()
+					.filter(instance -> !isBlank(instance) && !instance.equals(service))
+					.filter(instance -> circuitBreakers == null || circuitBreakers.breaker(api.getAppId(), instance).state() != CircuitBreaker.State.OPEN)
+					.distinct().collect(Collectors.toList()) : emptyList();
+			if (!candidates.isEmpty()) acquireHedge(api, selectHedgeService(api, candidates), policy, handler);
+		});
+	}
+
+	/**
+	 * Selects one of the candidates without consulting the load balancer, whose state (e.g. the position of the round-robin) must only be 
+	 * advanced by the regular requests. Two candidates are picked at random and the one with the lowest failure and slow call rates (as 
+	 * recorded by the circuit breakers) is selected.
+	 */
+	private String selectHedgeService(final ApiConfig api, final List<String> candidates) {
+		final int size = candidates.size();
+		if (size == 1) return candidates.get(0);
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int i = random.nextInt(size);
+		int j = random.nextInt(size - 1);
+		if (j >= i) j++;
+		final String first = candidates.get(i), second = candidates.get(j);
+		if (circuitBreakers == null) return first;
+		final CircuitBreaker firstBreaker = circuitBreakers.breaker(api.getAppId(), first), secondBreaker = circuitBreakers.breaker(api.getAppId(), second);
+		return firstBreaker.failureRate() + firstBreaker.slowCallRate() <= secondBreaker.failureRate() + secondBreaker.slowCallRate() ? first : second;
+	}
+
+	private void acquireHedge(final ApiConfig api, final String hedgeService, final HedgingPolicy policy, final Handler<String> handler) {
+		final ConcurrencyLimiter limiter = concurrencyLimiters != null ? concurrencyLimiters.limiter(api.getAppId()) : null;
+		if (limiter != null && !limiter.tryAcquire()) return;
+		if (!policy.tryHedge() || (circuitBreakers != null && !circuitBreakers.tryAcquire(api.getAppId(), hedgeService))) {
+			if (limiter != null) limiter.release();
+			return;
+		}
+		handler.handle(hedgeService);
+	}
+
+	/**
+	 * Releases the permits acquired for a request that was not sent to the upstream service.
+	 */
+	private void release(final ApiConfig api, final String service) {
+		if (concurrencyLimiters != null) concurrencyLimiters.limiter(api.getAppId()).release();
+		if (circuitBreakers != null) circuitBreakers.breaker(api.getAppId(), service).release();
 	}
 
 	private void handleCreate(final ApiConfig api, final RoutingContext routingContext) {
@@ -150,20 +879,19 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 		if (buffer == null) {
 			sendError(400, response);
 		} else {
-			final String service = loadBalancerClient.getServiceInstance(api.getAppId());
-			if (isBlank(service)) {
-				sendError(503, response);
-			} else {
-				new VertxHttp2Client(vertx).asyncPostBytes(service, "application/json", () -> buffer.getBytes(), resp -> {
+			final Deadline deadline = deadline(api, routingContext);
+			withService(api, null, response, service -> {
+				clients.get(api.getAppId()).asyncPostBytes(service, "application/json", () -> buffer.getBytes(), deadline, track(api, service, resp -> {
 					if (!resp.succeeded()) {
 						sendError(504, response);
 					} else {
+						invalidate(api, createdItemPath(api, resp.result().header("Location")));
 						ofNullable(resp.result().header("Location")).orElse(emptyList()).stream().filter(Objects::nonNull)
 						.forEach(location -> response.putHeader("Location", location));
 						response.setStatusCode(201).end();
 					}					
-				});			
-			}
+				}));			
+			});
 		}		
 	}
 
@@ -174,18 +902,17 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 		if (id == null || buffer == null) {
 			sendError(400, response);
 		} else {			
-			final String service = loadBalancerClient.getServiceInstance(api.getAppId());
-			if (isBlank(service)) {
-				sendError(503, response);
-			} else {
-				new VertxHttp2Client(vertx).asyncPutBytes(String.format("%s/%s", service, id), "application/json", () -> buffer.getBytes(), resp -> {
+			final Deadline deadline = deadline(api, routingContext);
+			withService(api, id, response, service -> {
+				clients.get(api.getAppId()).asyncPutBytes(String.format("%s/%s", service, id), "application/json", () -> buffer.getBytes(), deadline, track(api, service, resp -> {
 					if (!resp.succeeded()) {
 						sendError(504, response);
 					} else {
+						invalidate(api, routingContext.request().path());
 						response.setStatusCode(204).end();
 					}
-				});				
-			}
+				}));				
+			});
 		}
 	}
 
@@ -195,41 +922,331 @@ public abstract class BaseRestService extends AbstractVerticle implements Balanc
 		if (id == null) {
 			sendError(400, response);
 		} else {
-			final String service = loadBalancerClient.getServiceInstance(api.getAppId());
-			if (isBlank(service)) {
-				sendError(503, response);
-			} else {
-				new VertxHttp2Client(vertx).asyncDelete(String.format("%s/%s", service, id), resp -> {
+			final Deadline deadline = deadline(api, routingContext);
+			withService(api, id, response, service -> {
+				clients.get(api.getAppId()).asyncDelete(String.format("%s/%s", service, id), deadline, track(api, service, resp -> {
 					if (!resp.succeeded()) {
 						sendError(504, response);
 					} else {
+						invalidate(api, routingContext.request().path());
 						response.setStatusCode(204).end();
 					}
-				});				
-			}
+				}));				
+			});
 		}
 	}
 
+	private void handleStream(final ApiConfig api, final RoutingContext routingContext, final boolean requiresId) {
+		final HttpServerRequest request = routingContext.request();
+		final String id = request.getParam("id");
+		final HttpServerResponse response = routingContext.response();
+		if (requiresId && id == null) {
+			sendError(400, response);
+		} else {
+			// the body is not read until the upstream request is created
+			request.pause();
+			final Deadline deadline = deadline(api, routingContext);
+			withService(api, id, response, service -> {
+				final HttpClientRequest upstream = clients.get(api.getAppId()).streamRequest(request.method(), id != null ? String.format("%s/%s", service, id) : service, 
+						deadline, track(api, service, resp -> {
+					if (!resp.succeeded()) {
+						if (!response.headWritten()) sendError(504, response);
+						else response.close();
+					} else {
+						pipeResponse(resp.result(), response);
+					}
+				}));
+				STREAMED_REQUEST_HEADERS.stream().filter(request.headers()::contains).forEach(name -> upstream.putHeader(name, request.headers().getAll(name)));
+				if (!request.headers().contains("Content-Length") && (request.method() == HttpMethod.POST || request.method() == HttpMethod.PUT)) upstream.setChunked(true);
+				Pump.pump(request, upstream).start();
+				request.endHandler(v -> upstream.end());
+				request.resume();
+			});
+		}
+	}
+
+	private void pipeResponse(final HttpClientResponse upstream, final HttpServerResponse response) {
+		response.setStatusCode(upstream.statusCode());
+		upstream.headers().names().stream().filter(name -> !HOP_BY_HOP_HEADERS.contains(name.toLowerCase())).forEach(name -> response.putHeader(name, upstream.headers().getAll(name)));
+		if (!upstream.headers().contains("Content-Length")) response.setChunked(true);
+		upstream.exceptionHandler(e -> response.close());
+		upstream.endHandler(v -> response.end());
+		Pump.pump(upstream, response).start();
+	}
+
 	private void sendError(final int statusCode, final HttpServerResponse response) {
-		response.setStatusCode(statusCode).end();
+		// the client could have disconnected
+		if (!response.closed()) response.setStatusCode(statusCode).end();
 	}
 
-	private void convertSend(final HttpResponse aux, final HttpServerResponse response) {
-		if (converter != null) {
-			final JsonObject jsonObj = aux.fromString(r -> new JsonObject(r));
-			if (jsonObj == null) {
-				sendError(404, response);
+	/**
+	 * Replies with 503 (Service Unavailable), telling the client when to retry.
+	 */
+	private void sendUnavailable(final HttpServerResponse response) {
+		if (!response.closed()) response.putHeader("Retry-After", Long.toString(concurrencyLimiters != null ? concurrencyLimiters.getRetryAfter() 
+				: ConcurrencyLimiters.RETRY_AFTER_SECONDS));
+		sendError(503, response);
+	}
+
+	/**
+	 * Creates the deadline of a request from the timeout of the service and the timeout requested by the client (the shortest applies),
+	 * counting from the time the request was received. The deadline is cancelled when the client disconnects before the response is sent.
+	 * @return The deadline of the request, or <tt>null</tt> when neither the service nor the client set a timeout.
+	 */
+	private @Nullable Deadline deadline(final ApiConfig api, final RoutingContext routingContext) {
+		final long serviceTimeout = ofNullable(api.getTimeout()).orElse(requestTimeout);
+		final Long clientTimeout = Deadline.parseTimeout(routingContext.request().getHeader(Deadline.TIMEOUT_HEADER));
+		final long timeout = clientTimeout != null ? (serviceTimeout > 0l ? Math.min(serviceTimeout, clientTimeout) : clientTimeout) : serviceTimeout;
+		if (timeout <= 0l) return null;
+		final Deadline deadline = Deadline.of(ofNullable(routingContext.<Long>get(RECEIVED_AT)).orElse(System.nanoTime()), timeout);
+		final HttpServerResponse response = routingContext.response();
+		response.closeHandler(v -> {
+			if (!response.ended()) deadline.cancel();
+		});
+		return deadline;
+	}
+
+	/**
+	 * Looks up an instance of the service without blocking the event loop, replying with 503 (Service Unavailable) when the concurrency limit
+	 * of the service is reached, when no instance is available or when the circuit breaker of the selected instance is open. The handler must
+	 * submit the request wrapped with {@link #track(ApiConfig, String, Handler)}, which releases the permit of the concurrency limiter.
+	 */
+	private void withService(final ApiConfig api, final @Nullable String routingKey, final HttpServerResponse response, final Handler<String> handler) {
+		withService(api, routingKey, v -> sendUnavailable(response), handler);
+	}
+
+	/**
+	 * Looks up an instance of the service without blocking the event loop, calling the reject handler when the concurrency limit of the
+	 * service is reached, when no instance is available or when the circuit breaker of the selected instance is open.
+	 */
+	private void withService(final ApiConfig api, final @Nullable String routingKey, final Handler<Void> rejectHandler, final Handler<String> handler) {
+		// shed the excess of load before any work is done, so that the admitted requests keep a bounded latency
+		final ConcurrencyLimiter limiter = concurrencyLimiters != null ? concurrencyLimiters.limiter(api.getAppId()) : null;
+		if (limiter != null && !limiter.tryAcquire()) {
+			logger.trace("Request rejected by the concurrency limiter [appId=" + api.getAppId() + ", limit=" + limiter.limit() + "].");
+			rejectHandler.handle(null);
+			return;
+		}
+		loadBalancerClient.getServiceInstanceAsync(api.getAppId(), routingKey, lookup -> {
+			final String service = lookup.succeeded() ? lookup.result() : null;
+			if (isBlank(service)) {
+				if (limiter != null) limiter.release();
+				rejectHandler.handle(null);
+			} else if (circuitBreakers != null && !circuitBreakers.tryAcquire(api.getAppId(), service)) {
+				logger.trace("Request rejected by the circuit breaker [appId=" + api.getAppId() + ", instance=" + service + "].");
+				if (limiter != null) limiter.release();
+				rejectHandler.handle(null);
 			} else {
-				response.putHeader("content-type", "application/json").end(ofNullable(converter.apply(jsonObj)).orElse(new JsonObject()).encode());
+				handler.handle(service);
 			}
-		} else {
-			final Buffer buffer = buffer(aux.readByteArray());
-			if (buffer.length() == 0) {
-				sendError(404, response);
+		});
+	}
+
+	/**
+	 * Notifies the load balancer when a request is submitted to a service instance and when the request completes, so that the load 
+	 * balancer can track the load and the latency of the instances. The outcome is also recorded in the circuit breaker of the instance and
+	 * the latency in the concurrency limiter of the service.
+	 */
+	private <T> Handler<AsyncResult<T>> track(final ApiConfig api, final String service, final Handler<AsyncResult<T>> resultHandler) {
+		final long start = System.nanoTime();
+		loadBalancerClient.onRequestStart(api.getAppId(), service);
+		return resp -> {
+			// client errors (4xx) and requests cancelled by the client don't count as failures of the instance
+			final boolean succeeded = resp.succeeded() ? !(resp.result() instanceof HttpClientResponse && ((HttpClientResponse)resp.result()).statusCode() >= 500)
+					: (resp.cause() instanceof UnexpectedStatusException && !((UnexpectedStatusException)resp.cause()).isServerError()) 
+					|| resp.cause() instanceof CancellationException;
+			final long latency = System.nanoTime() - start;
+			loadBalancerClient.onRequestComplete(api.getAppId(), service, latency, succeeded);
+			if (circuitBreakers != null) circuitBreakers.onResult(api.getAppId(), service, latency, !succeeded);
+			if (concurrencyLimiters != null) concurrencyLimiters.limiter(api.getAppId()).onComplete(latency);
+			resultHandler.handle(resp);
+		};
+	}
+
+	/**
+	 * Removes the responses affected by a modification from the cache: the modified item (if any) and the list of items. Items that were
+	 * not found are forgotten when they are modified or created. When the path of a new item is unknown, all the items that were not found
+	 * are forgotten, since the id of the new item is assigned by the upstream service.
+	 */
+	private void invalidate(final ApiConfig api, final @Nullable String itemPath) {
+		if (responseCache != null) {
+			if (itemPath != null) responseCache.invalidate(api.getAppId(), itemPath);
+			responseCache.invalidate(api.getAppId(), api.getPath());
+		}
+		if (distributedCache != null) {
+			if (itemPath != null) distributedCache.invalidate(api.getAppId(), itemPath);
+			distributedCache.invalidate(api.getAppId(), api.getPath());
+		}
+		if (negativeCache != null) {
+			if (itemPath != null) negativeCache.invalidate(api.getAppId(), itemPath);
+			else negativeCache.invalidateAll(api.getAppId());
+			negativeCache.invalidate(api.getAppId(), api.getPath());
+		}
+	}
+
+	/**
+	 * Gets the path of the item created by the upstream service from the <tt>Location</tt> header of the response: the last segment of the
+	 * location is the id of the item, which is appended to the path of the API.
+	 * @return The path of the created item, or <tt>null</tt> when the response has no valid location.
+	 */
+	private static @Nullable String createdItemPath(final ApiConfig api, final @Nullable List<String> locations) {
+		if (locations == null || locations.size() != 1 || isBlank(locations.get(0))) return null;
+		try {
+			final String path = new URI(locations.get(0).trim()).getRawPath();
+			if (path == null) return null;
+			final String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+			final String id = trimmed.substring(trimmed.lastIndexOf('/') + 1);
+			return !id.isEmpty() ? String.format("%s/%s", api.getPath(), id) : null;
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the content that will be sent to the client, applying the converter (if any) to the body received from the upstream service.
+	 * @return The content that will be sent to the client, or <tt>null</tt> when the upstream response has no body.
+	 * @throws IllegalStateException when the body cannot be parsed
+	 */
+	private @Nullable Buffer convert(final HttpResponse aux) {
+		if (converter != null) {
+			final Object json = aux.readJson();
+			if (json == null) {
+				return null;
+			} else if (json instanceof JsonArray) {
+				final JsonArray converted = new JsonArray();
+				((JsonArray)json).forEach(item -> converted.add(item instanceof JsonObject ? ofNullable(converter.apply((JsonObject)item)).orElse(new JsonObject()) : item));
+				return encode(converted);
 			} else {
-				response.putHeader("content-type", "application/json").end(buffer);
+				return encode(ofNullable(converter.apply((JsonObject)json)).orElse(new JsonObject()));
 			}
+		} else {
+			final Buffer buffer = aux.readBuffer();
+			return buffer.length() > 0 ? buffer : null;
+		}
+	}
+
+	private static Buffer encode(final Object json) {
+		try {
+			return buffer(Unpooled.wrappedBuffer(Json.mapper.writeValueAsBytes(json)));
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to encode object", e);
+		}
+	}
+
+	/**
+	 * Signals to the coalesced requests that the request sent on their behalf was rejected before reaching the upstream service.
+	 */
+	private static class RejectedRequestException extends RuntimeException {
+		private static final long serialVersionUID = 1l;
+		private static final RejectedRequestException INSTANCE = new RejectedRequestException();
+		private RejectedRequestException() {
+			super("Request rejected", null, false, false);
+		}
+	}
+
+	/**
+	 * Tracks the attempts of a hedged request, which are completed in the same Vert.x context.
+	 */
+	private static class Hedge {
+		private final Handler<AsyncResult<HttpResponse>> resultHandler;
+		private final List<Deadline> attempts = newArrayList();
+		private int pending = 1;
+		private boolean done = false;
+		private long timerId = -1l;
+		public Hedge(final Handler<AsyncResult<HttpResponse>> resultHandler) {
+			this.resultHandler = resultHandler;
+		}
+		/**
+		 * Creates the deadline of a new attempt, which is cancelled with the deadline of the request. Requests without deadline get an 
+		 * unbounded deadline, so that the attempt can still be cancelled when the other attempt wins.
+		 * @return The deadline of the attempt.
+		 */
+		public Deadline attempt(final @Nullable Deadline deadline) {
+			final Deadline attempt = deadline != null ? deadline.newChild() : Deadline.unbounded();
+			attempts.add(attempt);
+			return attempt;
+		}
+		/**
+		 * Completes an attempt. The result is passed to the handler when the attempt succeeded or when no other attempt is pending, and the
+		 * other attempts are cancelled.
+		 * @return <tt>true</tt> when the result was passed to the handler.
+		 */
+		public boolean complete(final AsyncResult<HttpResponse> result, final Deadline attempt) {
+			pending--;
+			if (done || (result.failed() && pending > 0)) return false;
+			done = true;
+			attempts.stream().filter(d -> d != attempt).forEach(Deadline::cancel);
+			resultHandler.handle(result);
+			return true;
+		}
+	}
+
+	/**
+	 * Tracks the requests sent to the instances of a partitioned service, which are completed in the same Vert.x context.
+	 */
+	private static class Gather {
+		private final List<String> instances;
+		private final String query;
+		private final HttpResponse[] responses;
+		private int next = 0;
+		private int inFlight = 0;
+		private int failed = 0;
+		private boolean done = false;
+		public Gather(final List<String> instances, final String query) {
+			this.instances = instances;
+			this.query = query;
+			this.responses = new HttpResponse[instances.size()];
+		}
+	}
+
+	/**
+	 * Outcome of a GET request, which is sent to the client or to the node of the cluster that forwarded the request: a representation 
+	 * (status <tt>200</tt>) or an error without body.
+	 */
+	private static class Outcome {
+		private final int status;
+		private final @Nullable String cacheStatus;
+		private final @Nullable Buffer body;
+		private final @Nullable Validators validators;
+		private final @Nullable String cacheControl;
+		private final long age;
+		private final @Nullable String partial;
+		public Outcome(final int status, final @Nullable String cacheStatus, final @Nullable Buffer body, final @Nullable Validators validators, 
+				final @Nullable String cacheControl, final long age) {
+			this(status, cacheStatus, body, validators, cacheControl, age, null);
+		}
+		public Outcome(final int status, final @Nullable String cacheStatus, final @Nullable Buffer body, final @Nullable Validators validators, 
+				final @Nullable String cacheControl, final long age, final @Nullable String partial) {
+			this.status = status;
+			this.cacheStatus = cacheStatus;
+			this.body = body;
+			this.validators = validators;
+			this.cacheControl = cacheControl;
+			this.age = age;
+			this.partial = partial;
+		}
+		public static Outcome of(final CachedResponse cached, final String cacheStatus) {
+			return new Outcome(200, cacheStatus, cached.getBody(), cached.getValidators(), cached.getCacheControl(), cached.age(System.currentTimeMillis()));
+		}
+		public static Outcome error(final int status, final @Nullable String cacheStatus) {
+			return new Outcome(status, cacheStatus, null, null, null, -1l);
+		}
+		public JsonObject toJson() {
+			final JsonObject json = new JsonObject().put("status", status).put("age", age);
+			if (cacheStatus != null) json.put("cache", cacheStatus);
+			if (body != null) json.put("body", body.getBytes());
+			if (validators != null && validators.getETag() != null) json.put("etag", validators.getETag());
+			if (validators != null && validators.getLastModified() != null) json.put("last-modified", validators.getLastModified());
+			if (cacheControl != null) json.put("cache-control", cacheControl);
+			if (partial != null) json.put("partial", partial);
+			return json;
+		}
+		public static Outcome fromJson(final JsonObject json) {
+			final byte[] body = json.getBinary("body");
+			return new Outcome(json.getInteger("status", 502), json.getString("cache"), body != null ? Buffer.buffer(body) : null, 
+					new Validators(json.getString("etag"), json.getString("last-modified")), json.getString("cache-control"), json.getLong("age", -1l), 
+					json.getString("partial"));
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static io.vertx.core.Future.failedFuture;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Time limit of a request, which is propagated to the upstream services as the remaining time (see {@link #TIMEOUT_HEADER}), and which 
+ * can be cancelled (e.g. when the client disconnects) to stop the upstream requests that are still in flight. Deadlines are created for
+ * a single request and they are not thread-safe: they must be used from the Vert.x context that handles the request. The only exception
+ * is {@link #extendTo(Deadline)}, which can be called from any thread. Requests without time limit use an unbounded deadline (see 
+ * {@link #unbounded()}), which never expires but which can still be cancelled.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class Deadline {
+
+	/**
+	 * Header that contains the time (in milliseconds) that the client is willing to wait for the response. The gateway accepts this header
+	 * from the clients and sends the remaining time to the upstream services.
+	 */
+	public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+	private volatile long expiresAt;
+	private volatile boolean bounded;
+	private final List<Runnable> cancelHandlers = new ArrayList<>(2);
+	private boolean cancelled = false;
+
+	private Deadline(final long expiresAt, final boolean bounded) {
+		this.expiresAt = expiresAt;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * Creates a new deadline.
+	 * @param startNanos - the time when the request was received (as returned by {@link System#nanoTime()})
+	 * @param timeoutMillis - time (in milliseconds) allowed to complete the request since it was received
+	 * @return A new deadline.
+	 */
+	public static Deadline of(final long startNanos, final long timeoutMillis) {
+		return new Deadline(startNanos + MILLISECONDS.toNanos(timeoutMillis), true);
+	}
+
+	/**
+	 * Creates a new deadline that expires after the specified time.
+	 * @param timeoutMillis - time (in milliseconds) allowed to complete the request
+	 * @return A new deadline.
+	 */
+	public static Deadline after(final long timeoutMillis) {
+		return of(System.nanoTime(), timeoutMillis);
+	}
+
+	/**
+	 * Creates a new deadline that never expires, which is used to stop requests that have no time limit.
+	 * @return A new deadline that never expires.
+	 */
+	public static Deadline unbounded() {
+		return new Deadline(0l, false);
+	}
+
+	/**
+	 * Parses the value of the {@link #TIMEOUT_HEADER}.
+	 * @param value - the value of the header
+	 * @return The timeout (in milliseconds), or <tt>null</tt> when the value is missing or it's not a positive number.
+	 */
+	public static @Nullable Long parseTimeout(final @Nullable String value) {
+		final String trimmed = trimToNull(value);
+		if (trimmed == null) return null;
+		try {
+			final long timeout = Long.parseLong(trimmed);
+			return timeout > 0l ? timeout : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the time remaining until the deadline expires.
+	 * @return The time (in milliseconds) remaining until the deadline expires, zero when the deadline has expired, or {@link Long#MAX_VALUE}
+	 *         when the deadline is unbounded.
+	 */
+	public long remainingMillis() {
+		return bounded ? Math.max(0l, NANOSECONDS.toMillis(expiresAt - System.nanoTime())) : Long.MAX_VALUE;
+	}
+
+	public boolean isExpired() {
+		return bounded && expiresAt - System.nanoTime() <= 0l;
+	}
+
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Cancels the request, calling the handlers registered with {@link #onCancel(Runnable)}. This method has no effect when the request
+	 * was already cancelled.
+	 */
+	public void cancel() {
+		if (!cancelled) {
+			cancelled = true;
+			cancelHandlers.stream().forEach(Runnable::run);
+			cancelHandlers.clear();
+		}
+	}
+
+	/**
+	 * Registers a handler that is called when the request is cancelled. The handler is called immediately when the request was already 
+	 * cancelled.
+	 * @param handler - the handler to be called when the request is cancelled
+	 * @return A reference to this deadline.
+	 */
+	public Deadline onCancel(final Runnable handler) {
+		requireNonNull(handler, "A valid handler expected");
+		if (cancelled) handler.run();
+		else cancelHandlers.add(handler);
+		return this;
+	}
+
+	/**
+	 * Creates a new deadline that expires at the same time as this deadline, but which is not cancelled with this deadline. This is used 
+	 * when the upstream request is shared with other requests.
+	 * @return A new deadline that expires at the same time as this deadline.
+	 */
+	public synchronized Deadline withoutCancellation() {
+		return new Deadline(expiresAt, bounded);
+	}
+
+	/**
+	 * Creates a new deadline that expires at the same time as this deadline and which is cancelled with this deadline, but which can also
+	 * be cancelled alone. This is used when the request is sent to several upstream servers, to stop the requests that are no longer needed.
+	 * @return A new deadline that expires at the same time as this deadline.
+	 */
+	public Deadline newChild() {
+		final Deadline child;
+		synchronized (this) {
+			child = new Deadline(expiresAt, bounded);
+		}
+		onCancel(child::cancel);
+		return child;
+	}
+
+	/**
+	 * Postpones this deadline to the time when the specified deadline expires, unless this deadline expires later, or removes the time limit
+	 * of this deadline when the specified deadline is unbounded. This is used when the
+	 * upstream request is shared with other requests, which must wait for the response until their own deadline expires. The handlers
+	 * created with {@link #guard(Vertx, Handler, Runnable)} before this method is called are also postponed, but the upstream server only 
+	 * receives the remaining time that was sent with the request.
+	 * @param other - the deadline that sets the new time limit
+	 * @return A reference to this deadline.
+	 */
+	public synchronized Deadline extendTo(final Deadline other) {
+		requireNonNull(other, "A valid deadline expected");
+		if (!other.bounded) bounded = false;
+		else if (other.expiresAt - expiresAt > 0l) expiresAt = other.expiresAt;
+		return this;
+	}
+
+	/**
+	 * Wraps a result handler to enforce this deadline: the handler fails with a {@link TimeoutException} when the deadline expires and 
+	 * with a {@link CancellationException} when the request is cancelled, unless the result was received first. The abort handler is 
+	 * called in both cases so that the upstream request can be stopped, and it's also called when the request is cancelled after the
+	 * result was received (e.g. to stop streaming the response body). Unbounded deadlines never time out.
+	 * @param vertx - Vert.x instance where the timer runs
+	 * @param resultHandler - the handler to be wrapped
+	 * @param abortHandler - stops the upstream request
+	 * @return A handler that receives the result of the upstream request.
+	 */
+	public <T> Handler<AsyncResult<T>> guard(final Vertx vertx, final Handler<AsyncResult<T>> resultHandler, final Runnable abortHandler) {
+		requireNonNull(resultHandler, "A valid result handler expected");
+		requireNonNull(abortHandler, "A valid abort handler expected");
+		final boolean[] done = { false };
+		final long[] timerId = { -1l };
+		if (bounded) timerId[0] = vertx.setTimer(Math.max(1l, remainingMillis()), new Handler<Long>() {
+			@Override
+			public void handle(final Long id) {
+				if (done[0]) return;
+				// the deadline was extended after the timer was set
+				if (!isExpired()) {
+					if (bounded) timerId[0] = vertx.setTimer(Math.max(1l, remainingMillis()), this);
+					return;
+				}
+				done[0] = true;
+				abortHandler.run();
+				resultHandler.handle(failedFuture(new TimeoutException("Deadline exceeded")));
+			}
+		});
+		onCancel(() -> {
+			abortHandler.run();
+			if (!done[0]) {
+				done[0] = true;
+				vertx.cancelTimer(timerId[0]);
+				resultHandler.handle(failedFuture(new CancellationException("Request cancelled")));
+			}
+		});
+		return result -> {
+			if (!done[0]) {
+				done[0] = true;
+				vertx.cancelTimer(timerId[0]);
+				resultHandler.handle(result);
+			}
+		};
+	}
+
+}
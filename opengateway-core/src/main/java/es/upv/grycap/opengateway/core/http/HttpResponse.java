@@ -23,19 +23,37 @@
 
 package es.upv.grycap.opengateway.core.http;
 
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
+import javax.annotation.Nullable;
+
 import com.squareup.okhttp.Headers;
 import com.squareup.okhttp.Response;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
 /**
  * An HTTP response. Instances of this class are not immutable: the response body is a one-shot value that may be consumed only once. 
- * All other properties are immutable.
+ * All other properties are immutable. Responses can be received from any of the available {@link HttpTransport transports}: OkHttp 
+ * responses are read from the network when the body is consumed, while Vert.x responses are fully received before the instance is created.
+ * The methods {@link #readBuffer()}, {@link #readByteBuf()} and {@link #readByteBuffer()} expose the body without intermediate copies, 
+ * and they can be called several times.
  * @author Erik Torres <etserrano@gmail.com>
  * @since 0.0.1
  */
@@ -43,8 +61,39 @@ public class HttpResponse {
 
 	private final Response response;
 
+	private final int statusCode;
+	private final MultiMap headers;
+	private Buffer body;
+
 	public HttpResponse(final Response response) {
-		this.response = response;		
+		this.response = response;
+		this.statusCode = response.code();
+		this.headers = null;
+		this.body = null;
+	}
+
+	public HttpResponse(final int statusCode, final MultiMap headers, final @Nullable Buffer body) {
+		this.response = null;
+		this.statusCode = statusCode;
+		this.headers = requireNonNull(headers, "Valid headers expected");
+		this.body = body;
+	}
+
+	/**
+	 * Gets the HTTP status code of the response.
+	 * @return The HTTP status code of the response.
+	 */
+	public int statusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Checks whether the server answered a conditional request with <tt>304 (Not Modified)</tt>, confirming that the representation held by 
+	 * the caller is still current. These responses have no body.
+	 * @return <tt>true</tt> when the representation held by the caller is still current, otherwise <tt>false</tt>.
+	 */
+	public boolean isNotModified() {
+		return statusCode == 304;
 	}
 
 	/**
@@ -52,6 +101,7 @@ public class HttpResponse {
 	 * @return The response entity (if any) as a UTF-8 encoded string.
 	 */
 	public String readUtf8() {
+		if (isBuffered()) return body != null ? body.toString("UTF-8") : "";
 		try {
 			return response.body().source().readUtf8();
 		} catch (Exception e) {
@@ -64,6 +114,7 @@ public class HttpResponse {
 	 * @return The response entity (if any) as an array of bytes.
 	 */
 	public byte[] readByteArray() {
+		if (isBuffered()) return body != null ? body.getBytes() : new byte[0];
 		try {
 			return response.body().source().readByteArray();
 		} catch (IOException e) {
@@ -71,6 +122,73 @@ public class HttpResponse {
 		}
 	}
 
+	/**
+	 * Gets the body of the response entity (if any) as a buffer. Vert.x responses are returned without copying the body, while OkHttp
+	 * responses are read once from the network into a buffer that is reused in the subsequent calls.
+	 * @return The response entity (if any) as a buffer, which is empty when the response has no body.
+	 */
+	public Buffer readBuffer() {
+		if (!isBuffered()) {
+			try {
+				body = response.body() != null ? Buffer.buffer(Unpooled.wrappedBuffer(response.body().source().readByteArray())) : null;
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read body", e);
+			}
+		}
+		return body != null ? body : Buffer.buffer(0);
+	}
+
+	/**
+	 * Gets the body of the response entity (if any) as a Netty buffer that shares the content with the response. The indexes of the 
+	 * returned buffer are independent of the response.
+	 * @return The response entity (if any) as a Netty buffer.
+	 */
+	public ByteBuf readByteBuf() {
+		return readBuffer().getByteBuf();
+	}
+
+	/**
+	 * Gets the body of the response entity (if any) as a read-only NIO buffer that shares the content with the response.
+	 * @return The response entity (if any) as a read-only NIO buffer.
+	 */
+	public ByteBuffer readByteBuffer() {
+		return readByteBuf().nioBuffer().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Parses the body of the response entity (if any) as a JSON value, reading the bytes directly from the buffer without decoding
+	 * them to an intermediate string.
+	 * @return A {@link JsonObject} or a {@link JsonArray}, depending on the content of the body, or <tt>null</tt> when the response 
+	 *         has no body or when the body is the JSON <tt>null</tt> literal.
+	 * @throws IllegalStateException - if the body cannot be parsed, or when it contains any other JSON scalar (e.g. a string or a number)
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable Object readJson() {
+		final ByteBuf byteBuf = readByteBuf();
+		if (!byteBuf.isReadable()) return null;
+		final Object value;
+		try (final InputStream is = new ByteBufInputStream(byteBuf)) {
+			value = Json.mapper.readValue(is, Object.class);
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to parse body", e);
+		}
+		if (value == null) return null;
+		else if (value instanceof Map) return new JsonObject((Map<String, Object>)value);
+		else if (value instanceof List) return new JsonArray((List<Object>)value);
+		else throw new IllegalStateException("JSON object or array expected");
+	}
+
+	/**
+	 * Parses the body of the response entity (if any) as a JSON object.
+	 * @return The body of the response entity (if any) as a JSON object, or <tt>null</tt> when the response has no body.
+	 * @see #readJson()
+	 */
+	public @Nullable JsonObject readJsonObject() {
+		final Object value = readJson();
+		if (value != null && !(value instanceof JsonObject)) throw new IllegalStateException("JSON object expected");
+		return (JsonObject)value;
+	}
+
 	/**
 	 * Gets the body of the response entity (if any), transformed to the appropriate type.
 	 * @return The body of the response entity (if any), transformed to the appropriate type.
@@ -79,18 +197,24 @@ public class HttpResponse {
 	public <T> T fromString(final Function<String, T> converter) {
 		requireNonNull(converter, "A valid converted expected");
 		try {
+			if (isBuffered()) return body != null ? converter.apply(body.toString("UTF-8")) : null;
 			return response.body() != null ? converter.apply(response.body().source().readUtf8()) : null;
 		} catch (Exception e) {
 			throw new IllegalStateException("Failed to convert body", e);
 		}
 	}
 
+	private boolean isBuffered() {
+		return response == null || body != null;
+	}
+
 	/**
 	 * Returns an immutable list of the header values for name.
 	 * @param name - header name
 	 * @return An immutable list of the header values for name.
 	 */
 	public List<String> header(final String name) {
+		if (response == null) return unmodifiableList(headers.getAll(name));
 		return ofNullable(response.headers()).orElse(Headers.of()).values(name);
 	}
 
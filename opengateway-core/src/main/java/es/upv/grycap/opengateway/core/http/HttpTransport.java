@@ -0,0 +1,251 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+
+/**
+ * Transport used by {@link VertxHttp2Client} to submit requests to the upstream servers. Implementations must call back the result handlers
+ * on the Vert.x context of the caller.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public interface HttpTransport {
+
+	/**
+	 * Retrieve information from a server via a HTTP GET request.
+	 * @param url - URL target of this request
+	 * @param acceptableMediaTypes - Content-Types that are acceptable for this request
+	 * @param nocache - don't accept an invalidated cached response, and don't store the server's response in any cache
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	default void asyncGet(final String url, final @Nullable List<String> acceptableMediaTypes, final boolean nocache, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncGet(url, acceptableMediaTypes, nocache, null, resultHandler);
+	}
+
+	/**
+	 * Retrieve information from a server via a HTTP GET request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param acceptableMediaTypes - Content-Types that are acceptable for this request
+	 * @param nocache - don't accept an invalidated cached response, and don't store the server's response in any cache
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncGet(String url, @Nullable List<String> acceptableMediaTypes, boolean nocache, @Nullable Deadline deadline, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Retrieve information from a server via a conditional HTTP GET request, which the server answers with <tt>304 (Not Modified)</tt> 
+	 * when the representation identified by the validators is still current. The <tt>304</tt> response is delivered as a successful 
+	 * response without body (see {@link HttpResponse#isNotModified()}). Transports that cannot send conditional requests retrieve the
+	 * full representation.
+	 * @param url - URL target of this request
+	 * @param acceptableMediaTypes - Content-Types that are acceptable for this request
+	 * @param ifNoneMatch - (optional) entity tag of the representation held by the caller
+	 * @param ifModifiedSince - (optional) last modification date of the representation held by the caller
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	default void asyncConditionalGet(final String url, final @Nullable List<String> acceptableMediaTypes, final @Nullable String ifNoneMatch, 
+			final @Nullable String ifModifiedSince, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncGet(url, acceptableMediaTypes, false, deadline, resultHandler);
+	}
+
+	/**
+	 * Posts data to a server via a HTTP POST request.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncPost(String url, String mediaType, Supplier<String> supplier, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Posts the content of a buffer of bytes to a server via a HTTP POST request.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	default void asyncPostBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncPostBytes(url, mediaType, supplier, null, resultHandler);
+	}
+
+	/**
+	 * Posts the content of a buffer of bytes to a server via a HTTP POST request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncPostBytes(String url, String mediaType, Supplier<byte[]> supplier, @Nullable Deadline deadline, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Puts data to a server via a HTTP PUT request.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncPut(String url, String mediaType, Supplier<String> supplier, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Puts the content of a buffer of bytes to a server via a HTTP PUT request.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	default void asyncPutBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncPutBytes(url, mediaType, supplier, null, resultHandler);
+	}
+
+	/**
+	 * Puts the content of a buffer of bytes to a server via a HTTP PUT request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncPutBytes(String url, String mediaType, Supplier<byte[]> supplier, @Nullable Deadline deadline, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Delete HTTP method.
+	 * @param url - URL target of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	default void asyncDelete(final String url, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncDelete(url, null, resultHandler);
+	}
+
+	/**
+	 * Delete HTTP method, which must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	void asyncDelete(String url, @Nullable Deadline deadline, Handler<AsyncResult<HttpResponse>> resultHandler);
+
+	/**
+	 * Releases the resources (e.g. connections) held by this transport.
+	 */
+	void close();
+
+	/**
+	 * Checks whether this transport can stream the request and response bodies.
+	 * @return <tt>true</tt> when {@link #streamRequest(HttpMethod, String, Handler)} is supported by this transport.
+	 */
+	default boolean supportsStreaming() {
+		return false;
+	}
+
+	/**
+	 * Creates a request whose body is written by the caller (the request must be ended by the caller). The result handler is called back
+	 * as soon as the response headers are received, so that the response body can be streamed.
+	 * @param method - HTTP method
+	 * @param url - URL target of this request
+	 * @param resultHandler - is called back when the response headers are received
+	 * @return A request that can be written by the caller.
+	 * @throws UnsupportedOperationException if the transport doesn't support streaming
+	 */
+	default HttpClientRequest streamRequest(final HttpMethod method, final String url, final Handler<AsyncResult<HttpClientResponse>> resultHandler) {
+		return streamRequest(method, url, null, resultHandler);
+	}
+
+	/**
+	 * Creates a request whose body is written by the caller, and whose response headers must be received before the specified deadline.
+	 * Cancelling the deadline stops the request, even when the response body is being streamed.
+	 * @param method - HTTP method
+	 * @param url - URL target of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response headers are received
+	 * @return A request that can be written by the caller.
+	 * @throws UnsupportedOperationException if the transport doesn't support streaming
+	 */
+	default HttpClientRequest streamRequest(final HttpMethod method, final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpClientResponse>> resultHandler) {
+		throw new UnsupportedOperationException("Streaming is not supported by this transport");
+	}
+
+	/**
+	 * Available transports.
+	 * @author Erik Torres <etserrano@gmail.com>
+	 * @since 0.0.1
+	 */
+	public static enum Backend {
+
+		/**
+		 * OkHttp client shared by the application (provided by the coreutils-fiber library).
+		 */
+		OKHTTP,
+		/**
+		 * Vert.x non-blocking HTTP client, running on the event loop of the caller.
+		 */
+		VERTX;
+
+		/**
+		 * Gets the backend that matches the specified name (case-insensitive).
+		 * @param name - the name of the backend (e.g. <tt>okhttp</tt>, <tt>vertx</tt>)
+		 * @return The backend that matches the specified name.
+		 */
+		public static Backend fromName(final String name) {
+			return Backend.valueOf(requireNonNull(trimToNull(name), "A non-empty name expected").toUpperCase());
+		}
+
+		/**
+		 * Creates a new transport of this type, using the default options.
+		 * @param vertx - Vert.x instance where the transport runs
+		 * @return A new transport.
+		 */
+		public HttpTransport create(final Vertx vertx) {
+			return create(vertx, new HttpClientOptions());
+		}
+
+		/**
+		 * Creates a new transport of this type. The OkHttp backend relies on the client shared by the application and ignores the options.
+		 * @param vertx - Vert.x instance where the transport runs
+		 * @param options - client options, including the configuration of the connection pool
+		 * @return A new transport.
+		 */
+		public HttpTransport create(final Vertx vertx, final HttpClientOptions options) {
+			return this == VERTX ? new VertxHttpTransport(vertx, options) : new OkHttpTransport(vertx);
+		}
+
+	}
+
+}
\ No newline at end of file
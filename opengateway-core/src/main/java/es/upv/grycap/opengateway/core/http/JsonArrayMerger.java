@@ -0,0 +1,245 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Merges the JSON arrays received from the instances of a partitioned service in a single array. Each array must be sorted by the same
+ * field, and the arrays are merged with a k-way merge, which reads the items from the arrays as they are needed: only the current item of
+ * each array is parsed at a time, and the merge stops when the maximum number of items is written, without parsing the rest of the arrays.
+ * Items without the sort field (or which are not objects) are placed after the items with the field. Arrays that cannot be parsed are left
+ * out of the result from the point where the error is found, and they are counted as failed. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class JsonArrayMerger {
+
+	private final @Nullable String sortField;
+	private final boolean descending;
+	private final @Nullable Function<JsonObject, JsonObject> converter;
+	private final Comparator<Cursor> comparator;
+
+	/**
+	 * Creates a new merger.
+	 * @param sortField - (optional) field of the items that is used to merge the arrays, <tt>null</tt> to concatenate the arrays
+	 * @param descending - set to <tt>true</tt> when the arrays are sorted in descending order of the sort field
+	 * @param converter - (optional) converter applied to the items that are objects before they are written to the result
+	 */
+	public JsonArrayMerger(final @Nullable String sortField, final boolean descending, final @Nullable Function<JsonObject, JsonObject> converter) {
+		this.sortField = sortField;
+		this.descending = descending;
+		this.converter = converter;
+		// ties are resolved in the order of the arrays, so that arrays without sort field are concatenated
+		this.comparator = ((Comparator<Cursor>)(a, b) -> compare(a.sortValue, b.sortValue)).thenComparingInt(c -> c.index);
+	}
+
+	/**
+	 * Merges the specified arrays.
+	 * @param arrays - the arrays to merge. Empty buffers are considered empty arrays
+	 * @param limit - maximum number of items in the result, or a negative number to merge all the items
+	 * @return The merged array and the number of arrays that could not be parsed.
+	 */
+	public Result merge(final List<Buffer> arrays, final int limit) {
+		requireNonNull(arrays, "Valid arrays expected");
+		final PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, arrays.size()), comparator);
+		int failed = 0, items = 0;
+		for (int i = 0; i < arrays.size(); i++) {
+			final Cursor cursor = new Cursor(i, arrays.get(i));
+			if (cursor.advance()) queue.add(cursor);
+			else if (cursor.failed) failed++;
+		}
+		final ByteBufOutputStream out = new ByteBufOutputStream(Unpooled.buffer());
+		try (final JsonGenerator generator = Json.mapper.getFactory().createGenerator((OutputStream)out)) {
+			generator.writeStartArray();
+			while ((limit < 0 || items < limit) && !queue.isEmpty()) {
+				final Cursor cursor = queue.poll();
+				generator.writeObject(convert(cursor.item));
+				items++;
+				if (cursor.advance()) queue.add(cursor);
+				else if (cursor.failed) failed++;
+			}
+			generator.writeEndArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to encode merged array", e);
+		} finally {
+			queue.stream().forEach(Cursor::close);
+		}
+		return new Result(Buffer.buffer(out.buffer()), items, failed);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object convert(final Object item) {
+		if (converter == null || !(item instanceof Map)) return item;
+		return ofNullable(converter.apply(new JsonObject((Map<String, Object>)item))).orElse(new JsonObject()).getMap();
+	}
+
+	/**
+	 * Compares the values of the sort field: numbers are compared by value, strings lexicographically and missing values are placed last,
+	 * whatever the order of the arrays.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private int compare(final @Nullable Object a, final @Nullable Object b) {
+		if (a == null || b == null) return a == null ? (b == null ? 0 : 1) : -1;
+		final int result;
+		if (a instanceof Number && b instanceof Number) {
+			result = isIntegral(a) && isIntegral(b) ? Long.compare(((Number)a).longValue(), ((Number)b).longValue())
+					: Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+		} else if (a.getClass().equals(b.getClass()) && a instanceof Comparable) {
+			result = ((Comparable)a).compareTo(b);
+		} else {
+			result = Integer.compare(rank(a), rank(b));
+		}
+		return descending ? -result : result;
+	}
+
+	private static boolean isIntegral(final Object value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+
+	private static int rank(final Object value) {
+		return value instanceof Number ? 0 : value instanceof String ? 1 : value instanceof Boolean ? 2 : 3;
+	}
+
+	/**
+	 * Result of a merge.
+	 * @author Erik Torres <etserrano@gmail.com>
+	 * @since 0.0.1
+	 */
+	public static class Result {
+
+		private final Buffer body;
+		private final int items;
+		private final int failed;
+
+		public Result(final Buffer body, final int items, final int failed) {
+			this.body = body;
+			this.items = items;
+			this.failed = failed;
+		}
+
+		/**
+		 * Gets the merged array.
+		 * @return The merged array.
+		 */
+		public Buffer getBody() {
+			return body;
+		}
+
+		/**
+		 * Gets the number of items in the merged array.
+		 * @return The number of items in the merged array.
+		 */
+		public int getItems() {
+			return items;
+		}
+
+		/**
+		 * Gets the number of arrays that could not be parsed, which are fully or partially missing from the merged array.
+		 * @return The number of arrays that could not be parsed.
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+	}
+
+	/**
+	 * Reads the items of an array one at a time.
+	 */
+	private class Cursor {
+		private final int index;
+		private JsonParser parser;
+		private boolean started = false;
+		private boolean failed = false;
+		private Object item = null;
+		private Object sortValue = null;
+		public Cursor(final int index, final Buffer array) {
+			this.index = index;
+			try {
+				this.parser = array.length() > 0 ? Json.mapper.getFactory().createParser(new ByteBufInputStream(array.getByteBuf())) : null;
+			} catch (IOException e) {
+				this.failed = true;
+			}
+		}
+		/**
+		 * Moves to the next item of the array.
+		 * @return <tt>true</tt> when an item was read, <tt>false</tt> at the end of the array or when the array cannot be parsed.
+		 */
+		public boolean advance() {
+			if (parser == null) return false;
+			try {
+				if (!started) {
+					started = true;
+					if (parser.nextToken() != JsonToken.START_ARRAY) throw new IOException("JSON array expected");
+				}
+				final JsonToken token = parser.nextToken();
+				if (token == JsonToken.END_ARRAY) {
+					close();
+					return false;
+				}
+				if (token == null) throw new IOException("Unexpected end of array");
+				item = parser.readValueAs(Object.class);
+				sortValue = sortField != null && item instanceof Map ? ((Map<?, ?>)item).get(sortField) : null;
+				return true;
+			} catch (IOException e) {
+				failed = true;
+				close();
+				return false;
+			}
+		}
+		public void close() {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (IOException ignore) { }
+				parser = null;
+			}
+			item = sortValue = null;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static es.upv.grycap.coreutils.fiber.http.Http2Clients.http2Client;
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Transport that submits the requests with the {@link es.upv.grycap.coreutils.fiber.http.Http2Client Http2Client} shared by the application.
+ * Responses are received in the OkHttp dispatcher threads and then moved back to the Vert.x context of the caller. The shared client doesn't 
+ * accept per-request headers or cancellation, so deadlines are enforced in the gateway only: the request fails when the deadline expires
+ * or when it's cancelled, but the upstream call runs to completion and its response is discarded.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class OkHttpTransport implements HttpTransport {
+
+	private final Vertx vertx;
+
+	public OkHttpTransport(final Vertx vertx) {
+		this.vertx = requireNonNull(vertx, "A valid Vert.x instance expected");
+	}
+
+	@Override
+	public void asyncGet(final String url, final @Nullable List<String> acceptableMediaTypes, final boolean nocache, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncGet(url, acceptableMediaTypes, nocache, wrapCallback(deadline, false, resultHandler));
+	}
+
+	@Override
+	public void asyncConditionalGet(final String url, final @Nullable List<String> acceptableMediaTypes, final @Nullable String ifNoneMatch, 
+			final @Nullable String ifModifiedSince, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		// the shared client doesn't accept per-request headers, so the validators are not sent and the full representation is retrieved,
+		// unless the client revalidates the response with its own cache
+		http2Client().asyncGet(url, acceptableMediaTypes, false, wrapCallback(deadline, true, resultHandler));
+	}
+
+	@Override
+	public void asyncPost(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncPost(url, mediaType, supplier, wrapCallback(null, false, resultHandler));
+	}
+
+	@Override
+	public void asyncPostBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncPostBytes(url, mediaType, supplier, wrapCallback(deadline, false, resultHandler));
+	}
+
+	@Override
+	public void asyncPut(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncPut(url, mediaType, supplier, wrapCallback(null, false, resultHandler));
+	}
+
+	@Override
+	public void asyncPutBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncPutBytes(url, mediaType, supplier, wrapCallback(deadline, false, resultHandler));
+	}
+
+	@Override
+	public void asyncDelete(final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		http2Client().asyncDelete(url, wrapCallback(deadline, false, resultHandler));
+	}
+
+	@Override
+	public void close() {
+		// the client is shared by the application and it cannot be closed here
+	}
+
+	/**
+	 * Wraps the handler in a callback that completes on the Vert.x context of the caller. Responses with a status code other than 2xx fail, 
+	 * except 304 (Not Modified) when the request is conditional.
+	 */
+	private Callback wrapCallback(final @Nullable Deadline deadline, final boolean conditional, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		final Context context = vertx.getOrCreateContext();
+		final boolean[] aborted = { false };
+		final Handler<AsyncResult<HttpResponse>> handler = deadline != null ? deadline.guard(vertx, resultHandler, () -> aborted[0] = true) : resultHandler;
+		return new Callback() {
+			@Override
+			public void onResponse(final Response response) throws IOException {
+				context.runOnContext(v -> {
+					if (aborted[0]) {
+						// nobody will read the response
+						closeQuietly(response);
+					} else if (!VertxHttpTransport.isSuccessful(response.code(), conditional)) {
+						// the body of the error is not read, the connection is released before failing
+						closeQuietly(response);
+						handler.handle(failedFuture(new UnexpectedStatusException(response.code(), String.format("Unexpected code: %s", response))));
+					} else handler.handle(succeededFuture(new HttpResponse(response)));
+				});
+			}
+			@Override
+			public void onFailure(final Request request, final IOException throwable) {
+				context.runOnContext(v -> {
+					handler.handle(failedFuture(new IllegalStateException(String.format("Failed request: %s", request), throwable)));
+				});
+			}
+		};
+	}
+
+	private static void closeQuietly(final Response response) {
+		try {
+			response.body().close();
+		} catch (IOException ignore) { }
+	}
+
+}
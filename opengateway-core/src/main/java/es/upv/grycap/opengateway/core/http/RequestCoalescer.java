@@ -0,0 +1,221 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static io.vertx.core.Future.failedFuture;
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Deduplicates identical concurrent requests (single-flight): the first caller submits the request to the upstream server and the callers
+ * that arrive while the request is in flight wait for the same response. Results are delivered to every waiter on its own Vert.x context,
+ * so a single instance can be used by one verticle or shared by all the verticles deployed in the same Vert.x instance (see
+ * {@link #sharedCoalescer(Vertx)}). Each waiter keeps its own deadline: a waiter fails when its deadline expires or when it's cancelled,
+ * without affecting the other waiters, and the shared request runs until the longest deadline of the waiters expires, or until all the
+ * waiters are gone. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class RequestCoalescer implements Shareable {
+
+	private static final String SHARED_MAP = "opengateway.request-coalescer";
+
+	private final ConcurrentMap<String, Flight> inflight = new ConcurrentHashMap<>();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Gets the coalescer shared by the verticles deployed in the specified Vert.x instance, creating a new coalescer the first time that
+	 * this method is called.
+	 * @param vertx - Vert.x instance
+	 * @return The coalescer shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static RequestCoalescer sharedCoalescer(final Vertx vertx) {
+		final LocalMap<String, RequestCoalescer> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		final RequestCoalescer newCoalescer = new RequestCoalescer();
+		final RequestCoalescer coalescer = map.putIfAbsent(SHARED_MAP, newCoalescer);
+		return coalescer != null ? coalescer : newCoalescer;
+	}
+
+	/**
+	 * Submits a request, unless an identical request is already in flight. In that case, the result handler will be called back with the
+	 * response of the in-flight request. The result handler is wrapped with the deadline of the caller (see 
+	 * {@link Deadline#guard(Vertx, Handler, Runnable)}) when this method is called from a Vert.x context. The shared request receives a 
+	 * deadline that is extended to the deadline of every caller that joins the request, and which is cancelled when no caller is waiting 
+	 * for the response. Callers without deadline don't extend the deadline of the shared request.
+	 * @param key - identifies the request (e.g. the method, the URL and the headers that can change the response)
+	 * @param deadline - (optional) time limit of the caller
+	 * @param request - submits the request to the upstream server with the shared deadline passed as argument (which is <tt>null</tt> when
+	 *        the first caller has no deadline), calling back the handler passed as argument when the response is readable
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void execute(final String key, final @Nullable Deadline deadline, final BiConsumer<Deadline, Handler<AsyncResult<HttpResponse>>> request, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		requireNonNull(key, "A valid key expected");
+		requireNonNull(request, "A valid request expected");
+		requireNonNull(resultHandler, "A valid result handler expected");
+		if (deadline != null && deadline.isCancelled()) {
+			resultHandler.handle(failedFuture(new CancellationException("Request cancelled")));
+			return;
+		}
+		final Context context = Vertx.currentContext();
+		final Waiter waiter = new Waiter(context, deadline);
+		waiter.handler = deadline != null && context != null ? deadline.guard(context.owner(), resultHandler, () -> leave(key, waiter)) : resultHandler;
+		for (;;) {
+			final Flight flight = inflight.get(key);
+			if (flight == null) {
+				final Flight newFlight = new Flight(waiter);
+				if (inflight.putIfAbsent(key, newFlight) == null) {
+					requests.increment();
+					try {
+						request.accept(newFlight.deadline, result -> complete(key, newFlight, result));
+					} catch (RuntimeException e) {
+						// the request was not submitted (e.g. invalid URL), the flight must land or the identical requests would wait forever
+						complete(key, newFlight, failedFuture(e));
+					}
+					return;
+				}
+			} else if (flight.join(waiter)) {
+				coalesced.increment();
+				return;
+			} else {
+				// the flight has completed and it's about to be removed
+				inflight.remove(key, flight);
+			}
+		}
+	}
+
+	/**
+	 * Removes a waiter whose deadline expired or was cancelled from its flight, stopping the shared request when no waiter is left.
+	 */
+	private void leave(final String key, final Waiter waiter) {
+		final Flight flight = waiter.flight;
+		if (flight != null && flight.leave(waiter)) {
+			inflight.remove(key, flight);
+			// the shared deadline is not thread-safe, it's cancelled in the context where the request was submitted
+			if (flight.deadline != null) {
+				if (flight.context == null || flight.context == Vertx.currentContext()) flight.deadline.cancel();
+				else flight.context.runOnContext(v -> flight.deadline.cancel());
+			}
+		}
+	}
+
+	private void complete(final String key, final Flight flight, final AsyncResult<HttpResponse> response) {
+		inflight.remove(key, flight);
+		// the body is read before the response is shared, so that every waiter can read it
+		AsyncResult<HttpResponse> result = response;
+		if (response.succeeded() && response.result() != null) {
+			try {
+				response.result().readBuffer();
+			} catch (IllegalStateException e) {
+				result = failedFuture(e);
+			}
+		}
+		final AsyncResult<HttpResponse> result2 = result;
+		flight.land().stream().forEach(waiter -> {
+			if (waiter.context == null || waiter.context == Vertx.currentContext()) waiter.handler.handle(result2);
+			else waiter.context.runOnContext(v -> waiter.handler.handle(result2));
+		});
+	}
+
+	/**
+	 * Gets the metrics of this coalescer: number of requests submitted to the upstream servers and number of requests that waited for
+	 * an in-flight request.
+	 * @return A JSON object with the metrics of this coalescer.
+	 */
+	public JsonObject stats() {
+		return new JsonObject()
+				.put("requests", requests.sum())
+				.put("coalesced", coalesced.sum())
+				.put("inflight", inflight.size());
+	}
+
+	private static class Waiter {
+		private final Context context;
+		private final Deadline deadline;
+		private Handler<AsyncResult<HttpResponse>> handler = null;
+		private volatile Flight flight = null;
+		public Waiter(final @Nullable Context context, final @Nullable Deadline deadline) {
+			this.context = context;
+			this.deadline = deadline;
+		}
+	}
+
+	private static class Flight {
+		private final Context context;
+		private final Deadline deadline;
+		private final List<Waiter> waiters;
+		private boolean landed = false;
+		public Flight(final Waiter waiter) {
+			this.context = waiter.context;
+			this.deadline = waiter.deadline != null ? waiter.deadline.withoutCancellation() : null;
+			this.waiters = newArrayList(waiter);
+			waiter.flight = this;
+		}
+		public synchronized boolean join(final Waiter waiter) {
+			if (landed) return false;
+			if (deadline != null && waiter.deadline != null) deadline.extendTo(waiter.deadline);
+			waiters.add(waiter);
+			waiter.flight = this;
+			return true;
+		}
+		/**
+		 * Removes a waiter from the flight, closing the flight when no waiter is left.
+		 * @return <tt>true</tt> when the flight was closed by this call.
+		 */
+		public synchronized boolean leave(final Waiter waiter) {
+			if (landed || !waiters.remove(waiter) || !waiters.isEmpty()) return false;
+			landed = true;
+			return true;
+		}
+		/**
+		 * Closes the flight to new waiters, returning the waiters only the first time that it's called, so that the result is delivered once.
+		 */
+		public synchronized List<Waiter> land() {
+			if (landed) return emptyList();
+			landed = true;
+			return waiters;
+		}
+	}
+
+}
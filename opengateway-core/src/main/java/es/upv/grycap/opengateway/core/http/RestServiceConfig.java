@@ -81,6 +81,11 @@ public class RestServiceConfig {
 
 		private String appId; 
 		private String path;
+		private ClientConfig clientConfig;
+		private boolean streaming = false;
+		private HedgingConfig hedging;
+		private ScatterGatherConfig scatterGather;
+		private Long timeout;
 
 		public ApiConfig() { }
 
@@ -121,6 +126,407 @@ public class RestServiceConfig {
 			this.path = path;
 		}
 
+		/**
+		 * Gets the configuration of the client used to reach the instances of this service.
+		 * @return The configuration of the client used to reach the instances of this service, or <tt>null</tt> when the defaults are used.
+		 */
+		public @Nullable ClientConfig getClientConfig() {
+			return clientConfig;
+		}
+
+		/**
+		 * Sets the configuration of the client used to reach the instances of this service.
+		 * @param clientConfig - client configuration. Properties that are not set are read from the <tt>http-server.upstream-client</tt>
+		 *        section of the application configuration
+		 */
+		public void setClientConfig(final @Nullable ClientConfig clientConfig) {
+			this.clientConfig = clientConfig;
+		}
+
+		/**
+		 * Gets whether the request and response bodies are streamed between the client and the upstream service.
+		 * @return <tt>true</tt> when the bodies are streamed, <tt>false</tt> when they are fully buffered in the gateway.
+		 */
+		public boolean isStreaming() {
+			return streaming;
+		}
+
+		/**
+		 * Sets whether the request and response bodies are streamed between the client and the upstream service. Streamed bodies are
+		 * piped with back-pressure, using a constant amount of memory per connection, but they are not transformed by the converter of
+		 * the service and the status codes of the upstream service are returned to the client unmodified. Streaming requires the 
+		 * <tt>vertx</tt> client backend.
+		 * @param streaming - set to <tt>true</tt> to stream the bodies
+		 */
+		public void setStreaming(final boolean streaming) {
+			this.streaming = streaming;
+		}
+
+		/**
+		 * Gets the maximum time (in milliseconds) that the gateway spends on a request to this service.
+		 * @return The maximum time (in milliseconds) that the gateway spends on a request, or <tt>null</tt> when the default timeout is used.
+		 */
+		public @Nullable Long getTimeout() {
+			return timeout;
+		}
+
+		/**
+		 * Sets the maximum time (in milliseconds) that the gateway spends on a request to this service. Clients can request a shorter time
+		 * with the {@link Deadline#TIMEOUT_HEADER}, and the remaining time is sent to the upstream service in the same header.
+		 * @param timeout - timeout in milliseconds, <tt>null</tt> to use the <tt>http-server.request-timeout</tt> property of the application
+		 *        configuration, zero to disable the timeout
+		 */
+		public void setTimeout(final @Nullable Long timeout) {
+			this.timeout = timeout;
+		}
+
+		/**
+		 * Gets the configuration of the hedged requests submitted to the instances of this service.
+		 * @return The configuration of the hedged requests, or <tt>null</tt> when hedging is disabled.
+		 */
+		public @Nullable HedgingConfig getHedging() {
+			return hedging;
+		}
+
+		/**
+		 * Sets the configuration of the hedged requests submitted to the instances of this service. When hedging is enabled, an item or a 
+		 * list is requested to a second instance of the service when the first instance doesn't answer within the configured delay, and
+		 * the first response is sent to the client. Hedging is not applied to streamed services.
+		 * @param hedging - hedging configuration, <tt>null</tt> to disable hedging
+		 */
+		public void setHedging(final @Nullable HedgingConfig hedging) {
+			this.hedging = hedging;
+		}
+
+		/**
+		 * Gets the configuration of the list requests that are sent to all the instances of this service.
+		 * @return The configuration of the list requests that are sent to all the instances, or <tt>null</tt> when a list is requested to a
+		 *         single instance.
+		 */
+		public @Nullable ScatterGatherConfig getScatterGather() {
+			return scatterGather;
+		}
+
+		/**
+		 * Sets the configuration of the list requests that are sent to all the instances of this service. This is used with services that are
+		 * partitioned among their instances (e.g. by key range), where each instance only lists its own items: the list is requested to all 
+		 * the instances in parallel and the lists are merged in a single response. Scatter-gather is not applied to streamed services.
+		 * @param scatterGather - scatter-gather configuration, <tt>null</tt> to request the list to a single instance
+		 */
+		public void setScatterGather(final @Nullable ScatterGatherConfig scatterGather) {
+			this.scatterGather = scatterGather;
+		}
+
+	}
+
+	/**
+	 * Configuration of the connection pool of the client used to reach the instances of a service. Each verticle instance owns one
+	 * client per service, so the limits apply per event loop.
+	 * @author Erik Torres <etserrano@gmail.com>
+	 * @since 0.0.1
+	 */
+	public static class ClientConfig {
+
+		private Integer maxPoolSize;
+		private Boolean keepAlive;
+		private Integer idleTimeout;
+		private Integer maxWaitQueueSize;
+
+		public ClientConfig() { }
+
+		public ClientConfig(final Integer maxPoolSize, final Boolean keepAlive, final Integer idleTimeout, final Integer maxWaitQueueSize) {
+			this.maxPoolSize = maxPoolSize;
+			this.keepAlive = keepAlive;
+			this.idleTimeout = idleTimeout;
+			this.maxWaitQueueSize = maxWaitQueueSize;
+		}
+
+		/**
+		 * Gets the maximum number of connections that the client can open to a server.
+		 * @return The maximum number of connections that the client can open to a server.
+		 */
+		public @Nullable Integer getMaxPoolSize() {
+			return maxPoolSize;
+		}
+
+		/**
+		 * Sets the maximum number of connections that the client can open to a server.
+		 * @param maxPoolSize - maximum number of connections
+		 */
+		public void setMaxPoolSize(final @Nullable Integer maxPoolSize) {
+			this.maxPoolSize = maxPoolSize;
+		}
+
+		/**
+		 * Gets whether the connections are reused (HTTP keep-alive) after a request completes.
+		 * @return <tt>true</tt> when the connections are reused.
+		 */
+		public @Nullable Boolean getKeepAlive() {
+			return keepAlive;
+		}
+
+		/**
+		 * Sets whether the connections are reused (HTTP keep-alive) after a request completes.
+		 * @param keepAlive - set to <tt>true</tt> to reuse the connections
+		 */
+		public void setKeepAlive(final @Nullable Boolean keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+
+		/**
+		 * Gets the time (in seconds) after which an idle connection is closed and evicted from the pool.
+		 * @return The time (in seconds) after which an idle connection is closed.
+		 */
+		public @Nullable Integer getIdleTimeout() {
+			return idleTimeout;
+		}
+
+		/**
+		 * Sets the time (in seconds) after which an idle connection is closed and evicted from the pool.
+		 * @param idleTimeout - idle time in seconds, zero to keep the connections open
+		 */
+		public void setIdleTimeout(final @Nullable Integer idleTimeout) {
+			this.idleTimeout = idleTimeout;
+		}
+
+		/**
+		 * Gets the maximum number of requests that can wait for a connection when the pool is exhausted.
+		 * @return The maximum number of requests that can wait for a connection.
+		 */
+		public @Nullable Integer getMaxWaitQueueSize() {
+			return maxWaitQueueSize;
+		}
+
+		/**
+		 * Sets the maximum number of requests that can wait for a connection when the pool is exhausted. Requests exceeding this limit
+		 * fail immediately.
+		 * @param maxWaitQueueSize - maximum number of waiting requests, -1 for an unbounded queue
+		 */
+		public void setMaxWaitQueueSize(final @Nullable Integer maxWaitQueueSize) {
+			this.maxWaitQueueSize = maxWaitQueueSize;
+		}
+
+	}
+
+	/**
+	 * Configuration of the hedged requests submitted to the instances of a service. The second attempt is sent when the first attempt has not 
+	 * answered within a percentile of the latency observed by the gateway, and the number of second attempts is capped by a retry budget, 
+	 * which is filled with a fraction of a token with every request and drained by each second attempt.
+	 * @author Erik Torres <etserrano@gmail.com>
+	 * @since 0.0.1
+	 */
+	public static class HedgingConfig {
+
+		private Double percentile;
+		private Long minDelay;
+		private Long maxDelay;
+		private Double budgetRatio;
+		private Integer budgetMaxTokens;
+
+		public HedgingConfig() { }
+
+		public HedgingConfig(final Double percentile, final Long minDelay, final Long maxDelay, final Double budgetRatio, final Integer budgetMaxTokens) {
+			this.percentile = percentile;
+			this.minDelay = minDelay;
+			this.maxDelay = maxDelay;
+			this.budgetRatio = budgetRatio;
+			this.budgetMaxTokens = budgetMaxTokens;
+		}
+
+		/**
+		 * Gets the percentile of the latency after which the second attempt is sent.
+		 * @return The percentile of the latency (between 0 and 100) after which the second attempt is sent.
+		 */
+		public @Nullable Double getPercentile() {
+			return percentile;
+		}
+
+		/**
+		 * Sets the percentile of the latency after which the second attempt is sent.
+		 * @param percentile - percentile of the latency (between 0 and 100)
+		 */
+		public void setPercentile(final @Nullable Double percentile) {
+			this.percentile = percentile;
+		}
+
+		/**
+		 * Gets the minimum time (in milliseconds) that the gateway waits for the first attempt.
+		 * @return The minimum time (in milliseconds) that the gateway waits for the first attempt.
+		 */
+		public @Nullable Long getMinDelay() {
+			return minDelay;
+		}
+
+		/**
+		 * Sets the minimum time (in milliseconds) that the gateway waits for the first attempt.
+		 * @param minDelay - minimum delay in milliseconds
+		 */
+		public void setMinDelay(final @Nullable Long minDelay) {
+			this.minDelay = minDelay;
+		}
+
+		/**
+		 * Gets the maximum time (in milliseconds) that the gateway waits for the first attempt, which is also used until enough latency 
+		 * samples are collected.
+		 * @return The maximum time (in milliseconds) that the gateway waits for the first attempt.
+		 */
+		public @Nullable Long getMaxDelay() {
+			return maxDelay;
+		}
+
+		/**
+		 * Sets the maximum time (in milliseconds) that the gateway waits for the first attempt.
+		 * @param maxDelay - maximum delay in milliseconds
+		 */
+		public void setMaxDelay(final @Nullable Long maxDelay) {
+			this.maxDelay = maxDelay;
+		}
+
+		/**
+		 * Gets the fraction of the requests that can be hedged.
+		 * @return The fraction of the requests that can be hedged (e.g. 0.1 allows one second attempt every ten requests).
+		 */
+		public @Nullable Double getBudgetRatio() {
+			return budgetRatio;
+		}
+
+		/**
+		 * Sets the fraction of the requests that can be hedged.
+		 * @param budgetRatio - fraction of the requests that can be hedged
+		 */
+		public void setBudgetRatio(final @Nullable Double budgetRatio) {
+			this.budgetRatio = budgetRatio;
+		}
+
+		/**
+		 * Gets the maximum number of tokens that the retry budget can accumulate, which bounds the bursts of second attempts.
+		 * @return The maximum number of tokens of the retry budget.
+		 */
+		public @Nullable Integer getBudgetMaxTokens() {
+			return budgetMaxTokens;
+		}
+
+		/**
+		 * Sets the maximum number of tokens that the retry budget can accumulate.
+		 * @param budgetMaxTokens - maximum number of tokens
+		 */
+		public void setBudgetMaxTokens(final @Nullable Integer budgetMaxTokens) {
+			this.budgetMaxTokens = budgetMaxTokens;
+		}
+
+	}
+
+	/**
+	 * Configuration of the list requests that are sent to all the instances of a partitioned service. Each instance must return its items 
+	 * sorted by the sort field (in the same order), so that the lists can be merged without sorting all the items again. The number of items
+	 * requested by the client is sent to every instance, since no instance needs to return more items than the client requested.
+	 * @author Erik Torres <etserrano@gmail.com>
+	 * @since 0.0.1
+	 */
+	public static class ScatterGatherConfig {
+
+		private String sortField;
+		private Boolean descending;
+		private Integer maxConcurrency;
+		private Long shardTimeout;
+		private String limitParameter;
+
+		public ScatterGatherConfig() { }
+
+		public ScatterGatherConfig(final String sortField, final Boolean descending, final Integer maxConcurrency, final Long shardTimeout, 
+				final String limitParameter) {
+			this.sortField = sortField;
+			this.descending = descending;
+			this.maxConcurrency = maxConcurrency;
+			this.shardTimeout = shardTimeout;
+			this.limitParameter = limitParameter;
+		}
+
+		/**
+		 * Gets the field of the items that is used to merge the lists.
+		 * @return The field of the items that is used to merge the lists, or <tt>null</tt> when the lists are concatenated.
+		 */
+		public @Nullable String getSortField() {
+			return sortField;
+		}
+
+		/**
+		 * Sets the field of the items that is used to merge the lists.
+		 * @param sortField - name of a top-level field of the items, <tt>null</tt> to concatenate the lists in the order of the instances
+		 */
+		public void setSortField(final @Nullable String sortField) {
+			this.sortField = sortField;
+		}
+
+		/**
+		 * Gets whether the items are sorted in descending order of the sort field.
+		 * @return <tt>true</tt> when the items are sorted in descending order.
+		 */
+		public @Nullable Boolean getDescending() {
+			return descending;
+		}
+
+		/**
+		 * Sets whether the items are sorted in descending order of the sort field.
+		 * @param descending - set to <tt>true</tt> when the items are sorted in descending order
+		 */
+		public void setDescending(final @Nullable Boolean descending) {
+			this.descending = descending;
+		}
+
+		/**
+		 * Gets the maximum number of instances that are requested at the same time.
+		 * @return The maximum number of instances that are requested at the same time.
+		 */
+		public @Nullable Integer getMaxConcurrency() {
+			return maxConcurrency;
+		}
+
+		/**
+		 * Sets the maximum number of instances that are requested at the same time. The remaining instances are requested as the previous
+		 * requests complete.
+		 * @param maxConcurrency - maximum number of concurrent requests
+		 */
+		public void setMaxConcurrency(final @Nullable Integer maxConcurrency) {
+			this.maxConcurrency = maxConcurrency;
+		}
+
+		/**
+		 * Gets the maximum time (in milliseconds) that the gateway waits for an instance.
+		 * @return The maximum time (in milliseconds) that the gateway waits for an instance, or <tt>null</tt> when the instances can use 
+		 *         the whole time of the request.
+		 */
+		public @Nullable Long getShardTimeout() {
+			return shardTimeout;
+		}
+
+		/**
+		 * Sets the maximum time (in milliseconds) that the gateway waits for an instance, counting from the time the instance is requested.
+		 * The instances that don't answer in time are left out of the response, which is flagged as partial. The timeout of the request
+		 * still applies.
+		 * @param shardTimeout - timeout in milliseconds, <tt>null</tt> to use the timeout of the request
+		 */
+		public void setShardTimeout(final @Nullable Long shardTimeout) {
+			this.shardTimeout = shardTimeout;
+		}
+
+		/**
+		 * Gets the query parameter that contains the maximum number of items requested by the client.
+		 * @return The query parameter that contains the maximum number of items requested by the client.
+		 */
+		public @Nullable String getLimitParameter() {
+			return limitParameter;
+		}
+
+		/**
+		 * Sets the query parameter that contains the maximum number of items requested by the client. The parameter is sent to the instances
+		 * unchanged.
+		 * @param limitParameter - name of the query parameter, <tt>null</tt> to use <tt>limit</tt>
+		 */
+		public void setLimitParameter(final @Nullable String limitParameter) {
+			this.limitParameter = limitParameter;
+		}
+
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import java.io.IOException;
+
+/**
+ * Signals that the upstream server replied with a status code that is not in the range of successful codes (2xx).
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class UnexpectedStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	public UnexpectedStatusException(final int statusCode, final String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Gets the HTTP status code of the response.
+	 * @return The HTTP status code of the response.
+	 */
+	public int statusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Checks whether the error was caused by the server (5xx).
+	 * @return <tt>true</tt> when the status code is in the range of server errors, otherwise <tt>false</tt>.
+	 */
+	public boolean isServerError() {
+		return statusCode >= 500;
+	}
+
+}
@@ -24,36 +24,44 @@
 package es.upv.grycap.opengateway.core.http;
 
 import static com.google.common.collect.Lists.newArrayList;
-import static es.upv.grycap.coreutils.fiber.http.Http2Clients.http2Client;
-import static io.vertx.core.Future.failedFuture;
-import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.requireNonNull;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
-import com.squareup.okhttp.Callback;
-import com.squareup.okhttp.Request;
-import com.squareup.okhttp.Response;
-
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
 
 /**
- * A Vert.x client used to interact with {@link es.upv.grycap.coreutils.fiber.Http2Client Http2Client}.
+ * A Vert.x client used to interact with upstream HTTP servers. Requests are submitted through a pluggable {@link HttpTransport}: by default, 
+ * the {@link es.upv.grycap.coreutils.fiber.http.Http2Client Http2Client} shared by the application is used.
  * @author Erik Torres <etserrano@gmail.com>
  * @since 0.0.1
  */
 public class VertxHttp2Client {
 
-	private final Vertx vertx;
+	private final HttpTransport transport;
 
 	public VertxHttp2Client(final Vertx vertx) {
-		this.vertx = vertx;
+		this(new OkHttpTransport(vertx));
+	}
+
+	public VertxHttp2Client(final HttpTransport transport) {
+		this.transport = requireNonNull(transport, "A valid transport expected");
+	}
+
+	/**
+	 * Gets the transport used by this client to submit requests.
+	 * @return The transport used by this client to submit requests.
+	 */
+	public HttpTransport getTransport() {
+		return transport;
 	}
 
 	/**
@@ -84,7 +92,48 @@ public class VertxHttp2Client {
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncGet(final String url, final @Nullable List<String> acceptableMediaTypes, final boolean nocache, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncGet(url, acceptableMediaTypes, nocache, wrapCallback(resultHandler));
+		asyncGet(url, acceptableMediaTypes, nocache, null, resultHandler);
+	}
+
+	/**
+	 * Retrieve information from a server via a HTTP GET request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param nocache - don't accept an invalidated cached response, and don't store the server's response in any cache
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void asyncGet(final String url, final boolean nocache, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		asyncGet(url, null, nocache, deadline, resultHandler);
+	}
+
+	/**
+	 * Retrieve information from a server via a HTTP GET request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param acceptableMediaTypes - Content-Types that are acceptable for this request
+	 * @param nocache - don't accept an invalidated cached response, and don't store the server's response in any cache
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void asyncGet(final String url, final @Nullable List<String> acceptableMediaTypes, final boolean nocache, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		transport.asyncGet(url, acceptableMediaTypes, nocache, deadline, resultHandler);
+	}
+
+	/**
+	 * Retrieve information from a server via a conditional HTTP GET request that must complete before the specified deadline. The server 
+	 * answers with <tt>304 (Not Modified)</tt> when the representation identified by the validators is still current, which is delivered 
+	 * as a successful response without body (see {@link HttpResponse#isNotModified()}).
+	 * @param url - URL target of this request
+	 * @param acceptableMediaTypes - Content-Types that are acceptable for this request
+	 * @param ifNoneMatch - (optional) entity tag of the representation held by the caller
+	 * @param ifModifiedSince - (optional) last modification date of the representation held by the caller
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 * @see HttpTransport#asyncConditionalGet(String, List, String, String, Deadline, Handler)
+	 */
+	public void asyncConditionalGet(final String url, final @Nullable List<String> acceptableMediaTypes, final @Nullable String ifNoneMatch, 
+			final @Nullable String ifModifiedSince, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		transport.asyncConditionalGet(url, acceptableMediaTypes, ifNoneMatch, ifModifiedSince, deadline, resultHandler);
 	}
 
 	/**
@@ -95,7 +144,7 @@ public class VertxHttp2Client {
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncPost(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncPost(url, mediaType, supplier, wrapCallback(resultHandler));
+		transport.asyncPost(url, mediaType, supplier, resultHandler);
 	}
 
 	/**
@@ -106,7 +155,20 @@ public class VertxHttp2Client {
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncPostBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncPostBytes(url, mediaType, supplier, wrapCallback(resultHandler));
+		asyncPostBytes(url, mediaType, supplier, null, resultHandler);
+	}
+
+	/**
+	 * Posts the content of a buffer of bytes to a server via a HTTP POST request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
+	 * @param supplier - supplies the content of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void asyncPostBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		transport.asyncPostBytes(url, mediaType, supplier, deadline, resultHandler);
 	}
 
 	/**
@@ -117,7 +179,7 @@ public class VertxHttp2Client {
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncPut(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncPut(url, mediaType, supplier, wrapCallback(resultHandler));
+		transport.asyncPut(url, mediaType, supplier, resultHandler);
 	}
 
 	/**
@@ -128,35 +190,79 @@ public class VertxHttp2Client {
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncPutBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncPutBytes(url, mediaType, supplier, wrapCallback(resultHandler));
+		asyncPutBytes(url, mediaType, supplier, null, resultHandler);
 	}
 
 	/**
-	 * Delete HTTP method.
+	 * Puts the content of a buffer of bytes to a server via a HTTP PUT request that must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param mediaType - Content-Type header for this request
 	 * @param supplier - supplies the content of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void asyncPutBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		transport.asyncPutBytes(url, mediaType, supplier, deadline, resultHandler);
+	}
+
+	/**
+	 * Delete HTTP method.
+	 * @param url - URL target of this request
 	 * @param resultHandler - is called back when the response is readable
 	 */
 	public void asyncDelete(final String url, final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		http2Client().asyncDelete(url, wrapCallback(resultHandler));
-	}
-
-	private Callback wrapCallback(final Handler<AsyncResult<HttpResponse>> resultHandler) {
-		final Context context = vertx.getOrCreateContext();		
-		return new Callback() {
-			@Override
-			public void onResponse(final Response response) throws IOException {
-				context.runOnContext(v -> {
-					if (!response.isSuccessful()) resultHandler.handle(failedFuture(new IOException(String.format("Unexpected code: %s", response))));
-					else resultHandler.handle(succeededFuture(new HttpResponse(response)));
-				});
-			}
-			@Override
-			public void onFailure(final Request request, final IOException throwable) {
-				context.runOnContext(v -> {
-					resultHandler.handle(failedFuture(new IllegalStateException(String.format("Failed request: %s", request), throwable)));
-				});
-			}			
-		};
+		asyncDelete(url, null, resultHandler);
+	}
+
+	/**
+	 * Delete HTTP method, which must complete before the specified deadline.
+	 * @param url - URL target of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response is readable
+	 */
+	public void asyncDelete(final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		transport.asyncDelete(url, deadline, resultHandler);
+	}
+
+	/**
+	 * Checks whether this client can stream the request and response bodies.
+	 * @return <tt>true</tt> when the transport of this client supports streaming.
+	 */
+	public boolean supportsStreaming() {
+		return transport.supportsStreaming();
+	}
+
+	/**
+	 * Creates a request whose body is written by the caller, receiving the response as soon as the headers are read from the server.
+	 * @param method - HTTP method
+	 * @param url - URL target of this request
+	 * @param resultHandler - is called back when the response headers are received
+	 * @return A request that must be written and ended by the caller.
+	 * @see HttpTransport#streamRequest(HttpMethod, String, Handler)
+	 */
+	public HttpClientRequest streamRequest(final HttpMethod method, final String url, final Handler<AsyncResult<HttpClientResponse>> resultHandler) {
+		return streamRequest(method, url, null, resultHandler);
+	}
+
+	/**
+	 * Creates a request whose body is written by the caller, whose response headers must be received before the specified deadline.
+	 * @param method - HTTP method
+	 * @param url - URL target of this request
+	 * @param deadline - (optional) time limit of this request
+	 * @param resultHandler - is called back when the response headers are received
+	 * @return A request that must be written and ended by the caller.
+	 * @see HttpTransport#streamRequest(HttpMethod, String, Deadline, Handler)
+	 */
+	public HttpClientRequest streamRequest(final HttpMethod method, final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpClientResponse>> resultHandler) {
+		return transport.streamRequest(method, url, deadline, resultHandler);
+	}
+
+	/**
+	 * Releases the resources held by the transport of this client.
+	 */
+	public void close() {
+		transport.close();
 	}
 
 }
\ No newline at end of file
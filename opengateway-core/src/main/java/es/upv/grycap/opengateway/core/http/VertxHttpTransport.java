@@ -0,0 +1,210 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.http;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static io.vertx.core.buffer.Buffer.buffer;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+
+/**
+ * Transport that submits the requests with the non-blocking HTTP client of Vert.x. Responses are handled in the event loop of the caller,
+ * avoiding the hand-off between thread pools of the {@link OkHttpTransport}. Create one instance per verticle and reuse it for all the
+ * requests, since the connection pool is owned by the instance. The remaining time of the request deadline is sent to the upstream server in
+ * the {@link Deadline#TIMEOUT_HEADER}, and the connection is closed when the deadline expires or when it's cancelled after the response 
+ * headers are received (the client of Vert.x cannot abort a request before the response headers are received, but the request is 
+ * completed with an error immediately, and the connection is closed as soon as the response headers are received).
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class VertxHttpTransport implements HttpTransport {
+
+	private final Vertx vertx;
+	private final HttpClient client;
+
+	public VertxHttpTransport(final Vertx vertx) {
+		this(vertx, new HttpClientOptions());
+	}
+
+	public VertxHttpTransport(final Vertx vertx, final HttpClientOptions options) {
+		this.vertx = requireNonNull(vertx, "A valid Vert.x instance expected");
+		this.client = vertx.createHttpClient(requireNonNull(options, "Valid options expected"));
+	}
+
+	@Override
+	public void asyncGet(final String url, final @Nullable List<String> acceptableMediaTypes, final boolean nocache, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		final HttpClientRequest request = client.requestAbs(HttpMethod.GET, url);
+		if (acceptableMediaTypes != null && !acceptableMediaTypes.isEmpty()) request.putHeader("Accept", String.join(", ", acceptableMediaTypes));
+		if (nocache) request.putHeader("Cache-Control", "no-cache");
+		send(request, null, deadline, resultHandler);
+	}
+
+	@Override
+	public void asyncConditionalGet(final String url, final @Nullable List<String> acceptableMediaTypes, final @Nullable String ifNoneMatch, 
+			final @Nullable String ifModifiedSince, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		final HttpClientRequest request = client.requestAbs(HttpMethod.GET, url);
+		if (acceptableMediaTypes != null && !acceptableMediaTypes.isEmpty()) request.putHeader("Accept", String.join(", ", acceptableMediaTypes));
+		if (ifNoneMatch != null) request.putHeader("If-None-Match", ifNoneMatch);
+		if (ifModifiedSince != null) request.putHeader("If-Modified-Since", ifModifiedSince);
+		send(request, null, deadline, resultHandler);
+	}
+
+	@Override
+	public void asyncPost(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		send(client.requestAbs(HttpMethod.POST, url).putHeader("Content-Type", mediaType), buffer(supplier.get()), null, resultHandler);
+	}
+
+	@Override
+	public void asyncPostBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		send(client.requestAbs(HttpMethod.POST, url).putHeader("Content-Type", mediaType), buffer(supplier.get()), deadline, resultHandler);
+	}
+
+	@Override
+	public void asyncPut(final String url, final String mediaType, final Supplier<String> supplier, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		send(client.requestAbs(HttpMethod.PUT, url).putHeader("Content-Type", mediaType), buffer(supplier.get()), null, resultHandler);
+	}
+
+	@Override
+	public void asyncPutBytes(final String url, final String mediaType, final Supplier<byte[]> supplier, final @Nullable Deadline deadline, 
+			final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		send(client.requestAbs(HttpMethod.PUT, url).putHeader("Content-Type", mediaType), buffer(supplier.get()), deadline, resultHandler);
+	}
+
+	@Override
+	public void asyncDelete(final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		send(client.requestAbs(HttpMethod.DELETE, url), null, deadline, resultHandler);
+	}
+
+	@Override
+	public void close() {
+		client.close();
+	}
+
+	@Override
+	public boolean supportsStreaming() {
+		return true;
+	}
+
+	@Override
+	public HttpClientRequest streamRequest(final HttpMethod method, final String url, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpClientResponse>> resultHandler) {
+		final HttpClientRequest request = client.requestAbs(method, url);
+		final HttpClientResponse[] current = { null };
+		final boolean[] aborted = { false };
+		final Handler<AsyncResult<HttpClientResponse>> handler = withDeadline(request, deadline, current, aborted, resultHandler);
+		return request.handler(response -> {
+			if (aborted[0]) {
+				response.netSocket().close();
+				return;
+			}
+			current[0] = response;
+			handler.handle(succeededFuture(response));
+		}).exceptionHandler(e -> handler.handle(failedFuture(new IllegalStateException(String.format("Failed request: %s %s", method, url), e))));
+	}
+
+	private void send(final HttpClientRequest request, final @Nullable Buffer body, final @Nullable Deadline deadline, final Handler<AsyncResult<HttpResponse>> resultHandler) {
+		if (deadline != null && deadline.isExpired()) {
+			resultHandler.handle(failedFuture(new TimeoutException("Deadline exceeded")));
+			return;
+		}
+		final HttpClientResponse[] current = { null };
+		final boolean[] aborted = { false };
+		final Handler<AsyncResult<HttpResponse>> handler = withDeadline(request, deadline, current, aborted, resultHandler);
+		final boolean conditional = request.headers().contains("If-None-Match") || request.headers().contains("If-Modified-Since");
+		request.handler(response -> {
+			// the request was aborted before the response was received, the body is not read
+			if (aborted[0]) {
+				response.netSocket().close();
+				return;
+			}
+			current[0] = response;
+			response.exceptionHandler(e -> handler.handle(failedFuture(new IllegalStateException(String.format("Failed request: %s %s", request.method(), request.uri()), e))));
+			response.bodyHandler(payload -> {
+				current[0] = null;
+				if (!isSuccessful(response.statusCode(), conditional)) handler.handle(failedFuture(new UnexpectedStatusException(response.statusCode(), 
+						String.format("Unexpected code: %d %s", response.statusCode(), response.statusMessage()))));
+				else handler.handle(succeededFuture(new HttpResponse(response.statusCode(), response.headers(), payload)));
+			});
+		}).exceptionHandler(e -> handler.handle(failedFuture(new IllegalStateException(String.format("Failed request: %s %s", request.method(), request.uri()), e))));
+		if (body != null) request.end(body);
+		else request.end();
+	}
+
+	/**
+	 * Sends the remaining time of the deadline to the upstream server and wraps the handler to enforce the deadline, closing the connection 
+	 * of the response that is being received (if any) when the deadline expires or when it's cancelled. Otherwise, the request is flagged as
+	 * aborted, so that the connection is closed when the response is received.
+	 */
+	private <T> Handler<AsyncResult<T>> withDeadline(final HttpClientRequest request, final @Nullable Deadline deadline, final HttpClientResponse[] current, 
+			final boolean[] aborted, final Handler<AsyncResult<T>> resultHandler) {
+		final Handler<AsyncResult<T>> handler = once(resultHandler);
+		if (deadline == null) return handler;
+		if (deadline.isBounded()) request.putHeader(Deadline.TIMEOUT_HEADER, Long.toString(Math.max(1l, deadline.remainingMillis())));
+		return deadline.guard(vertx, handler, () -> {
+			aborted[0] = true;
+			if (current[0] != null) {
+				current[0].netSocket().close();
+				current[0] = null;
+			}
+		});
+	}
+
+	/**
+	 * Checks whether a status code completes a request successfully: any 2xx, or 304 (Not Modified) when the request is conditional.
+	 */
+	static boolean isSuccessful(final int statusCode, final boolean conditional) {
+		return (statusCode >= 200 && statusCode < 300) || (conditional && statusCode == 304);
+	}
+
+	/**
+	 * Wraps the handler to ensure that it's called only once, since Vert.x can report an error after the response was handled.
+	 */
+	private static <T> Handler<T> once(final Handler<T> handler) {
+		final boolean[] called = { false };
+		return result -> {
+			if (!called[0]) {
+				called[0] = true;
+				handler.handle(result);
+			}
+		};
+	}
+
+}
\ No newline at end of file
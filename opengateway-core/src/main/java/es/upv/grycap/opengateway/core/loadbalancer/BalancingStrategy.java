@@ -0,0 +1,59 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+/**
+ * Strategies used by the {@link SingleNodeLoadBalancer} to select an instance of a service.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public enum BalancingStrategy {
+
+	/**
+	 * Instances are selected in turn, ignoring their weights.
+	 */
+	ROUND_ROBIN,
+	/**
+	 * Instances are selected in proportion to their weights, interleaving the selections (smooth weighted round-robin) so that the 
+	 * instances with higher weights don't receive bursts of consecutive requests.
+	 */
+	WEIGHTED_ROUND_ROBIN,
+	/**
+	 * Instances are selected randomly, with a probability proportional to their weights.
+	 */
+	RANDOM;
+
+	/**
+	 * Gets the strategy that matches the specified name (case-insensitive, using hyphens or underscores as separator).
+	 * @param name - the name of the strategy (e.g. <tt>round-robin</tt>, <tt>weighted-round-robin</tt>, <tt>random</tt>)
+	 * @return The strategy that matches the specified name.
+	 */
+	public static BalancingStrategy fromName(final String name) {
+		return BalancingStrategy.valueOf(requireNonNull(trimToNull(name), "A non-empty name expected").replace('-', '_').toUpperCase());
+	}
+
+}
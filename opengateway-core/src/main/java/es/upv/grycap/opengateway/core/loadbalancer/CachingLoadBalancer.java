@@ -0,0 +1,272 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Keeps a local snapshot of the instances registered in another load balancer, so that the instances can be discovered without blocking 
+ * the event loop even when the registry is remote (e.g. an HTTP or DNS service catalog). The snapshot is refreshed in the background at 
+ * a fixed interval with a random jitter, which prevents the gateways from querying the registry at the same time. When a refresh fails, 
+ * the last known instances are served until the registry is available again. Instances are selected from the snapshot in round-robin.
+ * Applications that are not found in the snapshot are looked up in the background the first time that they are requested. The background
+ * refresh runs between {@link #start(Vertx)} and {@link #close()} (or {@link #stop()}); until the load balancer is started, the snapshot is 
+ * only filled on demand.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CachingLoadBalancer implements LoadBalancerClient, AutoCloseable {
+
+	public static final long REFRESH_INTERVAL_MS = 30000l;
+	public static final double REFRESH_JITTER = 0.2d;
+
+	private final static Logger LOGGER = getLogger(CachingLoadBalancer.class);
+
+	private final LoadBalancerClient discovery;
+	private final long refreshInterval;
+	private final double jitter;
+	private ScheduledExecutorService executor = null;
+
+	private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder refreshFailures = new LongAdder();
+
+	public CachingLoadBalancer(final LoadBalancerClient discovery) {
+		this(discovery, REFRESH_INTERVAL_MS, REFRESH_JITTER);
+	}
+
+	/**
+	 * Creates a new load balancer.
+	 * @param discovery - load balancer used to query the registry, which can block the caller
+	 * @param refreshInterval - time between two consecutive refreshes of the snapshot (in milliseconds)
+	 * @param jitter - fraction of the refresh interval that is randomly added or subtracted to every interval (e.g. 0.2 for &plusmn;20%)
+	 */
+	public CachingLoadBalancer(final LoadBalancerClient discovery, final long refreshInterval, final double jitter) {
+		this.discovery = requireNonNull(discovery, "A valid discovery client expected");
+		if (refreshInterval <= 0l) throw new IllegalArgumentException("A positive refresh interval expected");
+		if (jitter < 0.0d || jitter >= 1.0d) throw new IllegalArgumentException("A jitter in the range [0, 1) expected");
+		this.refreshInterval = refreshInterval;
+		this.jitter = jitter;
+	}
+
+	@Override @Nullable
+	public List<String> query(final String serviceRegistry, final String appId) {
+		return discovery.query(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String appId) {
+		final Snapshot snapshot = snapshots.get(key(appId));
+		return snapshot != null ? snapshot.instances : fetch(appId).instances;
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String serviceRegistry, final String appId) {
+		return discovery.getServiceInstance(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String appId) {
+		final Snapshot snapshot = snapshots.get(key(appId));
+		return (snapshot != null ? snapshot : fetch(appId)).next();
+	}
+
+	@Override
+	public void queryAsync(final String appId, final Handler<AsyncResult<List<String>>> resultHandler) {
+		lookup(appId, snapshot -> {
+			if (snapshot.succeeded()) resultHandler.handle(succeededFuture(snapshot.result().instances));
+			else resultHandler.handle(failedFuture(snapshot.cause()));
+		});
+	}
+
+	@Override
+	public void getServiceInstanceAsync(final String appId, final @Nullable String routingKey, final Handler<AsyncResult<String>> resultHandler) {
+		lookup(appId, snapshot -> {
+			if (snapshot.succeeded()) resultHandler.handle(succeededFuture(snapshot.result().next()));
+			else resultHandler.handle(failedFuture(snapshot.cause()));
+		});
+	}
+
+	@Override
+	public void onRequestStart(final String appId, final String instance) {
+		discovery.onRequestStart(appId, instance);
+	}
+
+	@Override
+	public void onRequestComplete(final String appId, final String instance, final long latencyNanos, final boolean succeeded) {
+		discovery.onRequestComplete(appId, instance, latencyNanos, succeeded);
+	}
+
+	@Override
+	public void start(final Vertx vertx) {
+		synchronized (this) {
+			if (executor == null) {
+				executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("og-registry-refresh-%d").setDaemon(true).build());
+				scheduleRefresh(executor);
+			}
+		}
+		discovery.start(vertx);
+	}
+
+	@Override
+	public void stop() {
+		close();
+		discovery.stop();
+	}
+
+	/**
+	 * Gets the metrics of the snapshot: number of applications, and number of refreshes and failed refreshes.
+	 * @return A JSON object with the metrics of the snapshot.
+	 */
+	public JsonObject stats() {
+		return new JsonObject()
+				.put("applications", snapshots.size())
+				.put("refreshes", refreshes.sum())
+				.put("refresh-failures", refreshFailures.sum());
+	}
+
+	@Override
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Gets the snapshot of the application, querying the registry in the background when the application is not found in the snapshot. 
+	 * The result handler is called back on the Vert.x context of the caller.
+	 */
+	private void lookup(final String appId, final Handler<AsyncResult<Snapshot>> resultHandler) {
+		final Snapshot snapshot = snapshots.get(key(appId));
+		if (snapshot != null) {
+			resultHandler.handle(succeededFuture(snapshot));
+		} else {
+			final Context context = Vertx.currentContext();
+			final Runnable task = () -> {
+				AsyncResult<Snapshot> result = null;
+				try {
+					result = succeededFuture(fetch(appId));
+				} catch (RuntimeException e) {
+					result = failedFuture(e);
+				}
+				final AsyncResult<Snapshot> result2 = result;
+				if (context != null) context.runOnContext(v -> resultHandler.handle(result2));
+				else resultHandler.handle(result2);
+			};
+			final ScheduledExecutorService current = executor();
+			if (current != null) current.execute(task);
+			// not started yet: the registry is queried in a worker thread of the caller, or in the calling thread outside Vert.x
+			else if (context != null) context.owner().executeBlocking(future -> {
+				task.run();
+				future.complete();
+			}, false, null);
+			else task.run();
+		}
+	}
+
+	private Snapshot fetch(final String appId) {
+		final List<String> instances = discovery.query(appId);
+		final Snapshot snapshot = new Snapshot(instances != null ? ImmutableList.copyOf(instances) : null);
+		final Snapshot previous = snapshots.putIfAbsent(key(appId), snapshot);
+		return previous != null ? previous : snapshot;
+	}
+
+	private synchronized @Nullable ScheduledExecutorService executor() {
+		return executor;
+	}
+
+	private void scheduleRefresh(final ScheduledExecutorService executor) {
+		final long delay = (long)(refreshInterval * (1.0d + jitter * (2.0d * ThreadLocalRandom.current().nextDouble() - 1.0d)));
+		executor.schedule(() -> {
+			refresh();
+			if (!executor.isShutdown()) scheduleRefresh(executor);
+		}, delay, MILLISECONDS);
+	}
+
+	private void refresh() {
+		snapshots.keySet().stream().forEach(appId -> {
+			try {
+				final List<String> instances = discovery.query(appId);
+				snapshots.put(appId, new Snapshot(instances != null ? ImmutableList.copyOf(instances) : null));
+				refreshes.increment();
+			} catch (RuntimeException e) {
+				// the stale instances are served until the registry is available again
+				refreshFailures.increment();
+				LOGGER.warn("Failed to refresh the instances of the application [appId=" + appId + "], serving stale instances.", e);
+			}
+		});
+	}
+
+	private static String key(final String appId) {
+		return requireNonNull(trimToNull(appId), "A non-empty identifier expected");
+	}
+
+	/**
+	 * Instances of an application at the time of the last refresh.
+	 */
+	private static class Snapshot {
+
+		private final ImmutableList<String> instances;
+		private final AtomicLong counter = new AtomicLong();
+
+		public Snapshot(final @Nullable ImmutableList<String> instances) {
+			this.instances = instances;
+		}
+
+		public @Nullable String next() {
+			return instances != null && !instances.isEmpty() ? instances.get((int)Math.floorMod(counter.getAndIncrement(), (long)instances.size())) : null;
+		}
+
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static es.upv.grycap.opengateway.core.loadbalancer.ConsistentHashLoadBalancer.mix;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Assigns the keys (for example, the path of an item) to the nodes of the gateway cluster, so that the requests with the same key are served
+ * by the same node (the owner of the key), which is the only node that caches the responses and contacts the upstream service for that key.
+ * The other nodes forward the requests to the owner over the clustered event bus, sending them to the address returned by
+ * {@link #address(String)}. The nodes are the members of the Hazelcast cluster that Vert.x uses for clustering, and the keys are assigned
+ * with rendezvous hashing (see {@link ConsistentHashLoadBalancer}), so when a node joins or leaves the cluster only the keys of that node
+ * are moved. This class also collects the metrics of the forwarded requests. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class ClusterRouter implements Shareable {
+
+	public static final String ADDRESS_PREFIX = "opengateway.key-affinity.";
+
+	private static final Logger LOGGER = getLogger(ClusterRouter.class);
+
+	private static final String SHARED_MAP = "opengateway.cluster-router";
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final Cluster cluster;
+	private final String localMember;
+	private final String registrationId;
+	private volatile Members members;
+
+	private final LongAdder local = new LongAdder();
+	private final LongAdder forwarded = new LongAdder();
+	private final LongAdder received = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder roundTripNanos = new LongAdder();
+	private final LongAdder overheadNanos = new LongAdder();
+
+	/**
+	 * Creates a new router that follows the membership of the specified Hazelcast instance.
+	 * @param hazelcast - Hazelcast instance
+	 */
+	public ClusterRouter(final HazelcastInstance hazelcast) {
+		this.cluster = requireNonNull(hazelcast, "A valid Hazelcast instance expected").getCluster();
+		this.localMember = cluster.getLocalMember().getUuid();
+		this.registrationId = cluster.addMembershipListener(new MembershipListener() {
+			@Override
+			public void memberAdded(final MembershipEvent event) {
+				update();
+			}
+			@Override
+			public void memberRemoved(final MembershipEvent event) {
+				update();
+			}
+			@Override
+			public void memberAttributeChanged(final MemberAttributeEvent event) { }
+		});
+		update();
+	}
+
+	/**
+	 * Gets the router shared by the verticles deployed in the specified Vert.x instance, creating a new router that follows the membership
+	 * of the specified Hazelcast instance the first time that this method is called. The router must be closed when Vert.x is closed.
+	 * @param vertx - Vert.x instance
+	 * @param hazelcast - Hazelcast instance that Vert.x uses for clustering
+	 * @return The router shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static ClusterRouter sharedRouter(final Vertx vertx, final HazelcastInstance hazelcast) {
+		requireNonNull(hazelcast, "A valid Hazelcast instance expected");
+		final LocalMap<String, ClusterRouter> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		synchronized (ClusterRouter.class) {
+			ClusterRouter router = map.get(SHARED_MAP);
+			if (router == null) {
+				router = new ClusterRouter(hazelcast);
+				map.put(SHARED_MAP, router);
+			}
+			return router;
+		}
+	}
+
+	/**
+	 * Gets the router shared by the verticles deployed in the specified Vert.x instance, which is created with 
+	 * {@link #sharedRouter(Vertx, HazelcastInstance)} when Vert.x is clustered.
+	 * @param vertx - Vert.x instance
+	 * @return The router shared by the verticles deployed in the specified Vert.x instance, or <tt>null</tt> when no router was created.
+	 */
+	public static @Nullable ClusterRouter sharedRouter(final Vertx vertx) {
+		final LocalMap<String, ClusterRouter> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		return map.get(SHARED_MAP);
+	}
+
+	private void update() {
+		final String[] ids = cluster.getMembers().stream().map(m -> m.getUuid()).sorted().toArray(String[]::new);
+		final long[] hashes = new long[ids.length];
+		for (int i = 0; i < ids.length; i++) hashes[i] = HASH_FUNCTION.hashString(ids[i], UTF_8).asLong();
+		members = new Members(ids, hashes);
+		LOGGER.info("Gateway cluster membership changed [members=" + ids.length + "].");
+	}
+
+	/**
+	 * Gets the node that owns the specified key.
+	 * @param key - the key
+	 * @return The id of the node that owns the key.
+	 */
+	public String owner(final String key) {
+		final Members current = members;
+		if (current.ids.length == 0) return localMember;
+		final long keyHash = HASH_FUNCTION.hashString(requireNonNull(key, "A valid key expected"), UTF_8).asLong();
+		int selected = 0;
+		long maxScore = Long.MIN_VALUE;
+		// members are sorted, so ties are broken in the same way by all the nodes
+		for (int i = 0; i < current.ids.length; i++) {
+			final long score = mix(keyHash ^ current.hashes[i]);
+			if (i == 0 || score > maxScore) {
+				selected = i;
+				maxScore = score;
+			}
+		}
+		return current.ids[selected];
+	}
+
+	/**
+	 * Checks whether the specified node is this node.
+	 * @param member - id of a node
+	 * @return <tt>true</tt> when the specified node is this node, otherwise <tt>false</tt>.
+	 */
+	public boolean isLocal(final String member) {
+		return localMember.equals(member);
+	}
+
+	/**
+	 * Gets the event bus address where the specified node receives the forwarded requests.
+	 * @param member - id of a node
+	 * @return The event bus address of the specified node.
+	 */
+	public String address(final String member) {
+		return ADDRESS_PREFIX + requireNonNull(member, "A valid member expected");
+	}
+
+	/**
+	 * Gets the event bus address where this node receives the forwarded requests.
+	 * @return The event bus address of this node.
+	 */
+	public String localAddress() {
+		return address(localMember);
+	}
+
+	/**
+	 * Counts a request that was served by this node because this node owns the key of the request.
+	 */
+	public void recordLocal() {
+		local.increment();
+	}
+
+	/**
+	 * Counts a request that was forwarded to its owner.
+	 * @param roundTripNanos - time elapsed from the forwarding of the request until the response was received
+	 * @param ownerNanos - time spent by the owner serving the request
+	 */
+	public void recordForwarded(final long roundTripNanos, final long ownerNanos) {
+		forwarded.increment();
+		this.roundTripNanos.add(roundTripNanos);
+		overheadNanos.add(Math.max(0l, roundTripNanos - ownerNanos));
+	}
+
+	/**
+	 * Counts a request that was received from another node.
+	 */
+	public void recordReceived() {
+		received.increment();
+	}
+
+	/**
+	 * Counts a request that was served by this node because the owner could not be reached.
+	 */
+	public void recordFallback() {
+		fallbacks.increment();
+	}
+
+	/**
+	 * Counts a forwarded request that was not answered in time.
+	 */
+	public void recordFailure() {
+		failures.increment();
+	}
+
+	/**
+	 * Stops following the membership of the cluster.
+	 */
+	public void close() {
+		cluster.removeMembershipListener(registrationId);
+	}
+
+	/**
+	 * Gets the metrics of the router: number of nodes, number of requests served by this node as the owner, forwarded to other nodes,
+	 * received from other nodes, served by this node because the owner could not be reached, and forwarded requests that were not answered
+	 * in time, as well as the mean round-trip time of the forwarded requests and the mean overhead added by the forwarding (round-trip time
+	 * minus the time spent by the owner) in milliseconds. The hit ratio of the responses cached by this node is reported by the response
+	 * cache.
+	 * @return A JSON object with the metrics of the router.
+	 */
+	public JsonObject stats() {
+		final long forwardedCount = forwarded.sum();
+		return new JsonObject()
+				.put("members", members.ids.length)
+				.put("local", local.sum())
+				.put("forwarded", forwardedCount)
+				.put("received", received.sum())
+				.put("fallbacks", fallbacks.sum())
+				.put("failures", failures.sum())
+				.put("mean-round-trip-ms", forwardedCount > 0l ? roundTripNanos.sum() / 1.0e6d / forwardedCount : 0.0d)
+				.put("mean-overhead-ms", forwardedCount > 0l ? overheadNanos.sum() / 1.0e6d / forwardedCount : 0.0d);
+	}
+
+	/**
+	 * Snapshot of the members of the cluster, which is replaced when the membership changes.
+	 */
+	private static class Members {
+		private final String[] ids;
+		private final long[] hashes;
+		public Members(final String[] ids, final long[] hashes) {
+			this.ids = ids;
+			this.hashes = hashes;
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Load balancer that routes the requests with the same key (for example, the identifier of the resource) to the same instance, improving
+ * the hit ratio of the caches maintained by the instances. Instances are selected with rendezvous (highest random weight) hashing: each 
+ * instance is scored with a hash of the key and the instance, and the instance with the highest score is selected. When an instance is 
+ * added or removed, only the keys that are assigned to that instance (about 1/N of the keys) are moved to other instances. The instances 
+ * are discovered with another load balancer, which is also used to route the requests without a key.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancerClient {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final LoadBalancerClient discovery;
+
+	private final ConcurrentMap<String, Long> instanceHashes = new ConcurrentHashMap<>();
+
+	public ConsistentHashLoadBalancer(final LoadBalancerClient discovery) {
+		this.discovery = requireNonNull(discovery, "A valid discovery client expected");
+	}
+
+	@Override @Nullable
+	public List<String> query(final String serviceRegistry, final String appId) {
+		return discovery.query(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String appId) {
+		return discovery.query(appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String serviceRegistry, final String appId) {
+		return discovery.getServiceInstance(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String appId) {
+		return discovery.getServiceInstance(appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstanceByKey(final String appId, final @Nullable String routingKey) {
+		if (routingKey == null) return discovery.getServiceInstanceByKey(appId, null);
+		return select(routingKey, discovery.query(appId));
+	}
+
+	@Override
+	public void queryAsync(final String appId, final Handler<AsyncResult<List<String>>> resultHandler) {
+		discovery.queryAsync(appId, resultHandler);
+	}
+
+	@Override
+	public void getServiceInstanceAsync(final String appId, final @Nullable String routingKey, final Handler<AsyncResult<String>> resultHandler) {
+		if (routingKey == null) {
+			discovery.getServiceInstanceAsync(appId, null, resultHandler);
+		} else {
+			discovery.queryAsync(appId, query -> {
+				if (query.succeeded()) resultHandler.handle(succeededFuture(select(routingKey, query.result())));
+				else resultHandler.handle(failedFuture(query.cause()));
+			});
+		}
+	}
+
+	@Override
+	public void onRequestStart(final String appId, final String instance) {
+		discovery.onRequestStart(appId, instance);
+	}
+
+	@Override
+	public void onRequestComplete(final String appId, final String instance, final long latencyNanos, final boolean succeeded) {
+		discovery.onRequestComplete(appId, instance, latencyNanos, succeeded);
+	}
+
+	@Override
+	public void start(final Vertx vertx) {
+		discovery.start(vertx);
+	}
+
+	@Override
+	public void stop() {
+		discovery.stop();
+	}
+
+	/**
+	 * Selects the instance with the highest score for the specified key. The key is hashed once per request and combined with the 
+	 * (cached) hash of each instance.
+	 * @param routingKey - the key used to route the request
+	 * @param instances - the available instances
+	 * @return The instance assigned to the specified key, or <tt>null</tt> when no instances are available.
+	 */
+	public @Nullable String select(final String routingKey, final @Nullable List<String> instances) {
+		if (instances == null || instances.isEmpty()) return null;
+		final long keyHash = HASH_FUNCTION.hashString(routingKey, UTF_8).asLong();
+		String selected = null;
+		long maxScore = Long.MIN_VALUE;
+		for (final String instance : instances) {
+			final long score = mix(keyHash ^ instanceHashes.computeIfAbsent(instance, k -> HASH_FUNCTION.hashString(k, UTF_8).asLong()));
+			if (selected == null || score > maxScore || (score == maxScore && instance.compareTo(selected) < 0)) {
+				selected = instance;
+				maxScore = score;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Finalization step of the SplitMix64 generator, which spreads the bits of the combined hash so that the scores of the different 
+	 * instances are independent. Also used by the {@link ClusterRouter} to score the nodes of the cluster.
+	 */
+	static long mix(final long value) {
+		long z = value;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9l;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebl;
+		return z ^ (z >>> 31);
+	}
+
+}
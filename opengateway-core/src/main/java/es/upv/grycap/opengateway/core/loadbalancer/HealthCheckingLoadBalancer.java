@@ -0,0 +1,309 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.trimToEmpty;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Removes the unhealthy instances from the instances discovered with another load balancer. Instances are ejected when they fail a number 
+ * of consecutive requests, as reported by the services (passive checks, see {@link #onRequestComplete(String, String, long, boolean)}) 
+ * or by the periodic probes sent by this load balancer (active checks, started with {@link #start(Vertx)}). Ejected instances are 
+ * re-admitted after an ejection time that doubles every time that the instance is ejected again, until the instance passes an active 
+ * check. To prevent a cascading failure, all the instances of the application are used when all of them are ejected.
+ * The checks are configured with the following properties:
+ * <ul>
+ * <li><tt>interval</tt> - time between two consecutive probes (in milliseconds), <tt>0</tt> disables the active checks;</li>
+ * <li><tt>timeout</tt> - time to wait for the response to a probe (in milliseconds);</li>
+ * <li><tt>path</tt> - path appended to the URL of the instance to build the URL of the probe;</li>
+ * <li><tt>failure-threshold</tt> - number of consecutive failures that ejects an instance;</li>
+ * <li><tt>base-ejection-time</tt> - time that an instance is ejected the first time (in milliseconds);</li>
+ * <li><tt>max-ejection-time</tt> - maximum time that an instance can be ejected (in milliseconds).</li>
+ * </ul>
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class HealthCheckingLoadBalancer implements LoadBalancerClient {
+
+	public static final long INTERVAL_MS = 10000l;
+	public static final long TIMEOUT_MS = 2000l;
+	public static final int FAILURE_THRESHOLD = 5;
+	public static final long BASE_EJECTION_TIME_MS = 10000l;
+	public static final long MAX_EJECTION_TIME_MS = 300000l;
+
+	private final static Logger LOGGER = getLogger(HealthCheckingLoadBalancer.class);
+
+	private final LoadBalancerClient discovery;
+	private final long interval;
+	private final long timeout;
+	private final String path;
+	private final int failureThreshold;
+	private final long baseEjectionTime;
+	private final long maxEjectionTime;
+
+	private final Set<String> applications = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<String, InstanceHealth> health = new ConcurrentHashMap<>();
+
+	private Vertx vertx = null;
+	private HttpClient client = null;
+	private long timerId = -1l;
+
+	public HealthCheckingLoadBalancer(final LoadBalancerClient discovery) {
+		this(discovery, new JsonObject());
+	}
+
+	/**
+	 * Creates a new load balancer.
+	 * @param discovery - load balancer used to discover the instances of the services
+	 * @param config - configuration of the health checks
+	 */
+	public HealthCheckingLoadBalancer(final LoadBalancerClient discovery, final JsonObject config) {
+		this.discovery = requireNonNull(discovery, "A valid discovery client expected");
+		requireNonNull(config, "A valid configuration expected");
+		this.interval = config.getLong("interval", INTERVAL_MS);
+		this.timeout = config.getLong("timeout", TIMEOUT_MS);
+		this.path = trimToEmpty(config.getString("path"));
+		this.failureThreshold = config.getInteger("failure-threshold", FAILURE_THRESHOLD);
+		this.baseEjectionTime = config.getLong("base-ejection-time", BASE_EJECTION_TIME_MS);
+		this.maxEjectionTime = config.getLong("max-ejection-time", MAX_EJECTION_TIME_MS);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String serviceRegistry, final String appId) {
+		return discovery.query(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String appId) {
+		return healthy(appId, discovery.query(appId));
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String serviceRegistry, final String appId) {
+		return discovery.getServiceInstance(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String appId) {
+		final String instance = discovery.getServiceInstance(appId);
+		return isAvailable(appId, instance) ? instance : any(query(appId));
+	}
+
+	@Override
+	public void queryAsync(final String appId, final Handler<AsyncResult<List<String>>> resultHandler) {
+		discovery.queryAsync(appId, query -> {
+			if (query.succeeded()) resultHandler.handle(succeededFuture(healthy(appId, query.result())));
+			else resultHandler.handle(failedFuture(query.cause()));
+		});
+	}
+
+	@Override
+	public void getServiceInstanceAsync(final String appId, final @Nullable String routingKey, final Handler<AsyncResult<String>> resultHandler) {
+		discovery.getServiceInstanceAsync(appId, routingKey, instance -> {
+			if (instance.failed() || isAvailable(appId, instance.result())) {
+				resultHandler.handle(instance);
+			} else {
+				queryAsync(appId, query -> {
+					if (query.succeeded()) resultHandler.handle(succeededFuture(any(query.result())));
+					else resultHandler.handle(failedFuture(query.cause()));
+				});
+			}
+		});
+	}
+
+	@Override
+	public void onRequestStart(final String appId, final String instance) {
+		discovery.onRequestStart(appId, instance);
+	}
+
+	@Override
+	public void onRequestComplete(final String appId, final String instance, final long latencyNanos, final boolean succeeded) {
+		record(appId, instance, succeeded, false);
+		discovery.onRequestComplete(appId, instance, latencyNanos, succeeded);
+	}
+
+	@Override
+	public synchronized void start(final Vertx vertx) {
+		discovery.start(vertx);
+		if (this.vertx == null && interval > 0l) {
+			this.vertx = requireNonNull(vertx, "A valid Vert.x instance expected");
+			this.client = vertx.createHttpClient();
+			this.timerId = vertx.setPeriodic(interval, id -> probeAll());
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (vertx != null) {
+			vertx.cancelTimer(timerId);
+			client.close();
+			vertx = null;
+			client = null;
+		}
+		discovery.stop();
+	}
+
+	/**
+	 * Checks whether an instance of the application can receive requests.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance
+	 * @return <tt>true</tt> if the instance is not ejected, otherwise <tt>false</tt>.
+	 */
+	public boolean isAvailable(final String appId, final @Nullable String instance) {
+		if (instance == null) return true;
+		applications.add(key(appId));
+		final InstanceHealth instanceHealth = health.get(key(appId, instance));
+		return instanceHealth == null || !instanceHealth.isEjected(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the health of the instances of the specified application.
+	 * @param appId - the application identifier
+	 * @return A JSON object with the number of consecutive failures, the number of ejections and whether each instance is ejected.
+	 */
+	public JsonObject stats(final String appId) {
+		final String prefix = key(appId, "");
+		final long now = System.currentTimeMillis();
+		final JsonObject stats = new JsonObject();
+		health.entrySet().stream().filter(e -> e.getKey().startsWith(prefix)).forEach(e -> stats.put(e.getKey().substring(prefix.length()), new JsonObject()
+				.put("failures", e.getValue().failures.get())
+				.put("ejections", e.getValue().ejections)
+				.put("ejected", e.getValue().isEjected(now))));
+		return stats;
+	}
+
+	private @Nullable List<String> healthy(final String appId, final @Nullable List<String> instances) {
+		if (instances == null) return null;
+		final List<String> healthy = instances.stream().filter(instance -> isAvailable(appId, instance)).collect(toList());
+		// all the instances are used when no instance is healthy
+		return healthy.isEmpty() ? instances : healthy;
+	}
+
+	private static @Nullable String any(final @Nullable List<String> instances) {
+		return instances != null && !instances.isEmpty() ? instances.get(ThreadLocalRandom.current().nextInt(instances.size())) : null;
+	}
+
+	private void record(final String appId, final String instance, final boolean succeeded, final boolean active) {
+		final InstanceHealth instanceHealth = health.computeIfAbsent(key(appId, instance), k -> new InstanceHealth());
+		if (succeeded) {
+			instanceHealth.success(active);
+		} else if (instanceHealth.failure(System.currentTimeMillis(), failureThreshold, baseEjectionTime, maxEjectionTime)) {
+			LOGGER.warn("Instance ejected [appId=" + appId + ", instance=" + instance + ", ejections=" + instanceHealth.ejections + "].");
+		}
+	}
+
+	private void probeAll() {
+		applications.stream().forEach(appId -> discovery.queryAsync(appId, query -> {
+			if (query.succeeded() && query.result() != null) query.result().stream().forEach(instance -> probe(appId, instance));
+		}));
+	}
+
+	private void probe(final String appId, final String instance) {
+		final HttpClient client = this.client;
+		if (client == null) return;
+		final boolean[] completed = { false };
+		final Handler<Boolean> handler = succeeded -> {
+			if (!completed[0]) {
+				completed[0] = true;
+				record(appId, instance, succeeded, true);
+			}
+		};
+		try {
+			final HttpClientRequest request = client.requestAbs(HttpMethod.GET, instance + path, response -> {
+				// any response that is not a server error means that the instance is alive
+				handler.handle(response.statusCode() < 500);
+				response.handler(buffer -> { });
+			});
+			request.exceptionHandler(e -> handler.handle(false)).setTimeout(timeout).end();
+		} catch (RuntimeException e) {
+			handler.handle(false);
+		}
+	}
+
+	private static String key(final String appId) {
+		return requireNonNull(trimToNull(appId), "A non-empty identifier expected");
+	}
+
+	private static String key(final String appId, final String instance) {
+		return key(appId) + " " + requireNonNull(instance, "A valid instance expected");
+	}
+
+	/**
+	 * Health of an instance.
+	 */
+	private static class InstanceHealth {
+
+		private final AtomicInteger failures = new AtomicInteger();
+		private volatile int ejections = 0;
+		private volatile long ejectedUntil = 0l;
+
+		public boolean isEjected(final long now) {
+			return now < ejectedUntil;
+		}
+
+		public void success(final boolean active) {
+			failures.set(0);
+			// the ejection time is reset when the instance passes an active check after being re-admitted
+			if (active && !isEjected(System.currentTimeMillis())) ejections = 0;
+		}
+
+		/**
+		 * Records a failure, ejecting the instance when the number of consecutive failures reaches the threshold.
+		 * @return <tt>true</tt> when the instance was ejected, otherwise <tt>false</tt>.
+		 */
+		public synchronized boolean failure(final long now, final int threshold, final long baseEjectionTime, final long maxEjectionTime) {
+			if (failures.incrementAndGet() < threshold || isEjected(now)) return false;
+			failures.set(0);
+			ejectedUntil = now + Math.min(baseEjectionTime << Math.min(ejections, 30), maxEjectionTime);
+			ejections++;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.loadbalancer;
+
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Load balancer that selects the instances with the power-of-two-choices algorithm: two instances are chosen at random and the request is
+ * sent to the instance with the lower load. The load of an instance is estimated from the exponentially weighted moving average (EWMA) of 
+ * its response latency multiplied by the number of requests in flight, so that slow or congested instances receive less traffic. The 
+ * instances are discovered with another load balancer (for example, a {@link SingleNodeLoadBalancer}) and the load is measured with the
+ * notifications received from the services (see {@link #onRequestStart(String, String)} and 
+ * {@link #onRequestComplete(String, String, long, boolean)}).
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class LatencyAwareLoadBalancer implements LoadBalancerClient {
+
+	public static final long DECAY_TIME_MS = 10000l;
+	public static final long FAILURE_PENALTY_MS = 1000l;
+
+	private final LoadBalancerClient discovery;
+	private final double decayTimeNanos;
+	private final long failurePenaltyNanos;
+
+	private final ConcurrentMap<String, InstanceLoad> loads = new ConcurrentHashMap<>();
+
+	public LatencyAwareLoadBalancer(final LoadBalancerClient discovery) {
+		this(discovery, DECAY_TIME_MS, FAILURE_PENALTY_MS);
+	}
+
+	/**
+	 * Creates a new load balancer.
+	 * @param discovery - load balancer used to discover the instances of the services
+	 * @param decayTime - time (in milliseconds) that takes the weight of a latency sample to decrease to 1/e
+	 * @param failurePenalty - minimum latency (in milliseconds) recorded when a request fails
+	 */
+	public LatencyAwareLoadBalancer(final LoadBalancerClient discovery, final long decayTime, final long failurePenalty) {
+		this.discovery = requireNonNull(discovery, "A valid discovery client expected");
+		this.decayTimeNanos = MILLISECONDS.toNanos(decayTime);
+		this.failurePenaltyNanos = MILLISECONDS.toNanos(failurePenalty);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String serviceRegistry, final String appId) {
+		return discovery.query(serviceRegistry, appId);
+	}
+
+	@Override @Nullable
+	public List<String> query(final String appId) {
+		return discovery.query(appId);
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String serviceRegistry, final String appId) {
+		return select(appId, discovery.query(serviceRegistry, appId));
+	}
+
+	@Override @Nullable
+	public String getServiceInstance(final String appId) {
+		return select(appId, discovery.query(appId));
+	}
+
+	@Override
+	public void queryAsync(final String appId, final Handler<AsyncResult<List<String>>> resultHandler) {
+		discovery.queryAsync(appId, resultHandler);
+	}
+
+	@Override
+	public void getServiceInstanceAsync(final String appId, final @Nullable String routingKey, final Handler<AsyncResult<String>> resultHandler) {
+		discovery.queryAsync(appId, query -> {
+			if (query.succeeded()) resultHandler.handle(succeededFuture(select(appId, query.result())));
+			else resultHandler.handle(failedFuture(query.cause()));
+		});
+	}
+
+	@Override
+	public void onRequestStart(final String appId, final String instance) {
+		load(appId, instance).inflight.incrementAndGet();
+		discovery.onRequestStart(appId, instance);
+	}
+
+	@Override
+	public void onRequestComplete(final String appId, final String instance, final long latencyNanos, final boolean succeeded) {
+		final InstanceLoad load = load(appId, instance);
+		load.inflight.decrementAndGet();
+		load.observe(succeeded ? latencyNanos : Math.max(latencyNanos, failurePenaltyNanos), System.nanoTime(), decayTimeNanos);
+		discovery.onRequestComplete(appId, instance, latencyNanos, succeeded);
+	}
+
+	@Override
+	public void start(final Vertx vertx) {
+		discovery.start(vertx);
+	}
+
+	@Override
+	public void stop() {
+		discovery.stop();
+	}
+
+	/**
+	 * Gets the load of the instances of the specified application.
+	 * @param appId - the application identifier
+	 * @return A JSON object with the average latency (in milliseconds) and the number of requests in flight of each instance.
+	 */
+	public JsonObject stats(final String appId) {
+		final String prefix = key(appId, "");
+		final JsonObject stats = new JsonObject();
+		loads.entrySet().stream().filter(e -> e.getKey().startsWith(prefix)).forEach(e -> stats.put(e.getKey().substring(prefix.length()), new JsonObject()
+				.put("latency", e.getValue().sample.get().ewma / 1000000.0d)
+				.put("inflight", e.getValue().inflight.get())));
+		return stats;
+	}
+
+	private @Nullable String select(final String appId, final @Nullable List<String> instances) {
+		if (instances == null || instances.isEmpty()) return null;
+		final int size = instances.size();
+		if (size == 1) return instances.get(0);
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int i = random.nextInt(size);
+		int j = random.nextInt(size - 1);
+		if (j >= i) j++;
+		final String first = instances.get(i), second = instances.get(j);
+		return load(appId, first).score() <= load(appId, second).score() ? first : second;
+	}
+
+	private InstanceLoad load(final String appId, final String instance) {
+		return loads.computeIfAbsent(key(appId, instance), k -> new InstanceLoad());
+	}
+
+	private static String key(final String appId, final String instance) {
+		return requireNonNull(trimToNull(appId), "A non-empty identifier expected") + " " + requireNonNull(instance, "A valid instance expected");
+	}
+
+	private static class Sample {
+		private final double ewma;
+		private final long timestamp;
+		public Sample(final double ewma, final long timestamp) {
+			this.ewma = ewma;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * Load of an instance. The latency average is updated lock-free, replacing the last sample with compare-and-set.
+	 */
+	private static class InstanceLoad {
+
+		private final AtomicInteger inflight = new AtomicInteger();
+		private final AtomicReference<Sample> sample = new AtomicReference<>(new Sample(0.0d, System.nanoTime()));
+
+		public void observe(final long latency, final long now, final double decayTime) {
+			Sample current, next;
+			do {
+				current = sample.get();
+				// latency peaks are adopted immediately, while improvements are averaged over the decay time
+				final double weight = Math.exp(-Math.max(0l, now - current.timestamp) / decayTime);
+				next = new Sample(latency > current.ewma ? latency : current.ewma * weight + latency * (1.0d - weight), now);
+			} while (!sample.compareAndSet(current, next));
+		}
+
+		/**
+		 * Instances without samples have a score of zero, so they are tried as soon as they are registered.
+		 */
+		public double score() {
+			return sample.get().ewma * (Math.max(0, inflight.get()) + 1);
+		}
+
+	}
+
+}
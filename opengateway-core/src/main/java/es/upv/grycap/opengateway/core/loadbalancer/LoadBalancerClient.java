@@ -23,8 +23,17 @@
 
 package es.upv.grycap.opengateway.core.loadbalancer;
 
+import static io.vertx.core.Future.failedFuture;
+import static io.vertx.core.Future.succeededFuture;
+
 import java.util.List;
 
+import javax.annotation.Nullable;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
 /**
  * Provides a load balancer that allows discovering service instances from a client.
  * @author Erik Torres <etserrano@gmail.com>
@@ -62,5 +71,77 @@ public interface LoadBalancerClient {
 	 * @return A service instance.
 	 */
 	String getServiceInstance(String appId);
+
+	/**
+	 * Gets a service instance from the default service catalog, allowing the service to route the requests with the same key to the same 
+	 * instance (for example, the requests that read or modify the same resource). The default implementation ignores the key.
+	 * @param appId - the application identifier
+	 * @param routingKey - (optional) the key used to route the request (e.g. the resource identifier)
+	 * @return A service instance.
+	 */
+	default String getServiceInstanceByKey(final String appId, final @Nullable String routingKey) {
+		return getServiceInstance(appId);
+	}
+
+	/**
+	 * Queries the default service catalog for a list of instances associated to the specified application, without blocking the caller.
+	 * The default implementation calls {@link #query(String)} and it's only suitable for load balancers that don't block (e.g. the 
+	 * registry is kept in memory).
+	 * @param appId - the application identifier
+	 * @param resultHandler - is called back with the list of instances associated to the specified application or <tt>null</tt> if no 
+	 *        record matches the query
+	 */
+	default void queryAsync(final String appId, final Handler<AsyncResult<List<String>>> resultHandler) {
+		try {
+			resultHandler.handle(succeededFuture(query(appId)));
+		} catch (RuntimeException e) {
+			resultHandler.handle(failedFuture(e));
+		}
+	}
+
+	/**
+	 * Gets a service instance from the default service catalog without blocking the caller. The default implementation calls 
+	 * {@link #getServiceInstanceByKey(String, String)} and it's only suitable for load balancers that don't block.
+	 * @param appId - the application identifier
+	 * @param routingKey - (optional) the key used to route the request (e.g. the resource identifier)
+	 * @param resultHandler - is called back with the selected service instance
+	 */
+	default void getServiceInstanceAsync(final String appId, final @Nullable String routingKey, final Handler<AsyncResult<String>> resultHandler) {
+		try {
+			resultHandler.handle(succeededFuture(getServiceInstanceByKey(appId, routingKey)));
+		} catch (RuntimeException e) {
+			resultHandler.handle(failedFuture(e));
+		}
+	}
+
+	/**
+	 * Notifies the load balancer that a request was submitted to a service instance. Load balancers that take into account the load of the
+	 * instances can override this method, the default implementation does nothing.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance that receives the request
+	 */
+	default void onRequestStart(final String appId, final String instance) { }
+
+	/**
+	 * Notifies the load balancer that a request submitted to a service instance has completed. Every call to 
+	 * {@link #onRequestStart(String, String)} is followed by a call to this method. The default implementation does nothing.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance that received the request
+	 * @param latencyNanos - time elapsed since the request was submitted (in nanoseconds)
+	 * @param succeeded - <tt>false</tt> when the request failed (e.g. connection error or server error)
+	 */
+	default void onRequestComplete(final String appId, final String instance, final long latencyNanos, final boolean succeeded) { }
+
+	/**
+	 * Starts the background tasks of the load balancer (e.g. health checks) in the specified Vert.x instance. This method is called once
+	 * the Vert.x instance is created. The default implementation does nothing.
+	 * @param vertx - the Vert.x instance where the services are deployed
+	 */
+	default void start(final Vertx vertx) { }
+
+	/**
+	 * Stops the background tasks of the load balancer. The default implementation does nothing.
+	 */
+	default void stop() { }
 	
 }
\ No newline at end of file
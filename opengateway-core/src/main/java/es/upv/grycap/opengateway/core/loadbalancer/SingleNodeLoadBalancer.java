@@ -23,20 +23,24 @@
 
 package es.upv.grycap.opengateway.core.loadbalancer;
 
-import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
-import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.IntMath;
 
 /**
- * Implements a load balancer for cases where only one instance of the service is deployed.
+ * Implements a load balancer for cases where the instances of the services are registered in the local node. The instance is selected with 
+ * the {@link BalancingStrategy strategy} configured for each application. Selection is lock-free, so the same load balancer can be shared by 
+ * all the verticles.
  * @author Erik Torres <etserrano@gmail.com>
  * @since 0.0.1
  */
@@ -47,19 +51,63 @@ public class SingleNodeLoadBalancer implements LoadBalancerClient {
 	 */
 	public final String SINGLE_NODE_REGISTRY = "SingleNodeServiceRegistry";
 
-	private final ListMultimap<String, String> registry = ArrayListMultimap.create();
-	
+	private final ConcurrentMap<String, Pool> registry = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, BalancingStrategy> strategies = new ConcurrentHashMap<>();
+	private final BalancingStrategy defaultStrategy;
+
+	public SingleNodeLoadBalancer() {
+		this(BalancingStrategy.ROUND_ROBIN);
+	}
+
+	public SingleNodeLoadBalancer(final BalancingStrategy defaultStrategy) {
+		this.defaultStrategy = requireNonNull(defaultStrategy, "A valid strategy expected");
+	}
+
 	public SingleNodeLoadBalancer addService(final String appId, final String url) {
+		return addService(appId, url, 1);
+	}
+
+	/**
+	 * Registers a new instance of the service.
+	 * @param appId - the application identifier
+	 * @param url - the URL of the instance
+	 * @param weight - the relative capacity of the instance, which is used by the weighted strategies
+	 * @return This load balancer.
+	 */
+	public SingleNodeLoadBalancer addService(final String appId, final String url, final int weight) {
 		final String appId2 = requireNonNull(trimToNull(appId), "A non-empty identifier expected");
 		final String url2 = requireNonNull(trimToNull(url), "A non-empty URL expected");
-		registry.put(appId2, url2);
+		if (weight <= 0) throw new IllegalArgumentException("A positive weight expected");
+		registry.compute(appId2, (k, pool) -> pool != null ? pool.add(url2, weight) : new Pool(ImmutableList.of(url2), new int[]{ weight }));
+		return this;
+	}
+
+	/**
+	 * Sets the strategy used to select the instances of the specified application.
+	 * @param appId - the application identifier
+	 * @param strategy - the strategy used to select the instances of the application
+	 * @return This load balancer.
+	 */
+	public SingleNodeLoadBalancer setStrategy(final String appId, final BalancingStrategy strategy) {
+		strategies.put(requireNonNull(trimToNull(appId), "A non-empty identifier expected"), requireNonNull(strategy, "A valid strategy expected"));
 		return this;
 	}
 
+	/**
+	 * Gets the strategy used to select the instances of the specified application.
+	 * @param appId - the application identifier
+	 * @return The strategy used to select the instances of the application.
+	 */
+	public BalancingStrategy getStrategy(final String appId) {
+		return strategies.getOrDefault(requireNonNull(trimToNull(appId), "A non-empty identifier expected"), defaultStrategy);
+	}
+
 	@Override @Nullable
 	public List<String> query(final String serviceRegistry, final String appId) {
 		final String appId2 = requireNonNull(trimToNull(appId), "A non-empty identifier expected");
-		return SINGLE_NODE_REGISTRY.equals(serviceRegistry) ? registry.get(appId2) : null;		
+		if (!SINGLE_NODE_REGISTRY.equals(serviceRegistry)) return null;
+		final Pool pool = registry.get(appId2);
+		return pool != null ? pool.urls : ImmutableList.of();
 	}
 
 	@Override @Nullable
@@ -70,7 +118,9 @@ public class SingleNodeLoadBalancer implements LoadBalancerClient {
 	@Override @Nullable
 	public String getServiceInstance(final String serviceRegistry, final String appId) {
 		final String appId2 = requireNonNull(trimToNull(appId), "A non-empty identifier expected");
-		return SINGLE_NODE_REGISTRY.equals(serviceRegistry) ? ofNullable(registry.get(appId2)).orElse(emptyList()).stream().findAny().orElse(null) : null;
+		if (!SINGLE_NODE_REGISTRY.equals(serviceRegistry)) return null;
+		final Pool pool = registry.get(appId2);
+		return pool != null ? pool.select(getStrategy(appId2)) : null;
 	}
 
 	@Override @Nullable
@@ -78,4 +128,73 @@ public class SingleNodeLoadBalancer implements LoadBalancerClient {
 		return getServiceInstance(SINGLE_NODE_REGISTRY, appId);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Instances of an application. Pools are immutable (except for the counter used to select the next instance) and they are replaced
+	 * when a new instance is registered.
+	 */
+	private static class Pool {
+
+		private final ImmutableList<String> urls;
+		private final int[] weights;
+		private final int[] cumulativeWeights;
+		private final int[] schedule;
+		private final AtomicLong counter = new AtomicLong();
+
+		public Pool(final ImmutableList<String> urls, final int[] weights) {
+			this.urls = urls;
+			this.weights = weights;
+			this.cumulativeWeights = new int[weights.length];
+			for (int i = 0, sum = 0; i < weights.length; i++) cumulativeWeights[i] = sum += weights[i];
+			this.schedule = smoothSchedule(weights);
+		}
+
+		public Pool add(final String url, final int weight) {
+			final int[] weights2 = new int[weights.length + 1];
+			System.arraycopy(weights, 0, weights2, 0, weights.length);
+			weights2[weights.length] = weight;
+			return new Pool(ImmutableList.<String>builder().addAll(urls).add(url).build(), weights2);
+		}
+
+		public String select(final BalancingStrategy strategy) {
+			switch (strategy) {
+			case WEIGHTED_ROUND_ROBIN:
+				return urls.get(schedule[(int)Math.floorMod(counter.getAndIncrement(), (long)schedule.length)]);
+			case RANDOM:
+				final int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+				int i = 0;
+				while (cumulativeWeights[i] <= value) i++;
+				return urls.get(i);
+			case ROUND_ROBIN:
+			default:
+				return urls.get((int)Math.floorMod(counter.getAndIncrement(), (long)urls.size()));
+			}
+		}
+
+		/**
+		 * Computes one period of the smooth weighted round-robin sequence (the algorithm used by nginx). The sequence is computed when the
+		 * pool is created, so that selecting an instance only requires incrementing an atomic counter. Weights are reduced by their greatest 
+		 * common divisor to keep the sequence short.
+		 */
+		private static int[] smoothSchedule(final int[] weights) {
+			int gcd = weights[0];
+			for (final int weight : weights) gcd = IntMath.gcd(gcd, weight);
+			final int[] reduced = new int[weights.length];
+			int total = 0;
+			for (int i = 0; i < weights.length; i++) total += reduced[i] = weights[i] / gcd;
+			final int[] current = new int[weights.length];
+			final int[] schedule = new int[total];
+			for (int n = 0; n < total; n++) {
+				int best = 0;
+				for (int i = 0; i < reduced.length; i++) {
+					current[i] += reduced[i];
+					if (current[i] > current[best]) best = i;
+				}
+				current[best] -= total;
+				schedule[n] = best;
+			}
+			return schedule;
+		}
+
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Circuit breaker that stops sending requests to an upstream service when the rate of failed or slow calls is too high. The outcome of the 
+ * calls is recorded in a count-based sliding window. When the failure rate or the slow-call rate exceeds the configured thresholds, the 
+ * circuit opens and the calls are rejected immediately. After a wait time, the circuit becomes half-open and a limited number of probe 
+ * calls are permitted: the circuit closes if the probes succeed, otherwise it opens again. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CircuitBreaker {
+
+	/**
+	 * States of the circuit breaker.
+	 */
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final CircuitBreakerConfig config;
+	private final LongSupplier clock;
+
+	private final boolean[] failures;
+	private final boolean[] slowCalls;
+	private int position = 0;
+	private int calls = 0;
+	private int failureCount = 0;
+	private int slowCallCount = 0;
+
+	private State state = State.CLOSED;
+	private long openedAt = 0l;
+	private int halfOpenPermits = 0;
+	private int halfOpenCalls = 0;
+
+	private final Map<State, Long> transitions = new EnumMap<>(State.class);
+	private long rejected = 0l;
+
+	public CircuitBreaker(final CircuitBreakerConfig config) {
+		this(config, System::nanoTime);
+	}
+
+	/**
+	 * Creates a new circuit breaker.
+	 * @param config - configuration of the circuit breaker
+	 * @param clock - source of the current time (in nanoseconds)
+	 */
+	public CircuitBreaker(final CircuitBreakerConfig config, final LongSupplier clock) {
+		this.config = config;
+		this.clock = clock;
+		this.failures = new boolean[config.getWindowSize()];
+		this.slowCalls = new boolean[config.getWindowSize()];
+	}
+
+	/**
+	 * Checks whether a call is permitted. Every permitted call must be followed by a call to {@link #onResult(long, boolean)}.
+	 * @return <tt>true</tt> if the call is permitted, otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN && clock.getAsLong() - openedAt >= MILLISECONDS.toNanos(config.getWaitDurationInOpenState())) transition(State.HALF_OPEN);
+		switch (state) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (halfOpenPermits < config.getPermittedCallsInHalfOpenState()) {
+				halfOpenPermits++;
+				return true;
+			}
+			rejected++;
+			return false;
+		default:
+			rejected++;
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the permit of a call that was not made.
+	 */
+	public synchronized void release() {
+		if (state == State.HALF_OPEN && halfOpenPermits > 0) halfOpenPermits--;
+	}
+
+	/**
+	 * Records the outcome of a permitted call.
+	 * @param durationNanos - duration of the call (in nanoseconds)
+	 * @param failed - <tt>true</tt> when the call failed
+	 */
+	public synchronized void onResult(final long durationNanos, final boolean failed) {
+		final boolean slow = durationNanos >= MILLISECONDS.toNanos(config.getSlowCallDuration());
+		switch (state) {
+		case HALF_OPEN:
+			if (failed || slow) {
+				transition(State.OPEN);
+			} else if (++halfOpenCalls >= config.getPermittedCallsInHalfOpenState()) {
+				transition(State.CLOSED);
+			}
+			break;
+		case CLOSED:
+			record(failed, slow);
+			if (calls >= config.getMinimumCalls() && (failureRate() >= config.getFailureRateThreshold() || slowCallRate() >= config.getSlowCallRateThreshold())) {
+				transition(State.OPEN);
+			}
+			break;
+		default:
+			// calls permitted before the circuit opened are ignored
+			break;
+		}
+	}
+
+	public synchronized State state() {
+		return state;
+	}
+
+	/**
+	 * Gets the percentage of failed calls in the sliding window.
+	 * @return The percentage of failed calls in the sliding window.
+	 */
+	public synchronized float failureRate() {
+		return calls > 0 ? 100.0f * failureCount / calls : 0.0f;
+	}
+
+	/**
+	 * Gets the percentage of slow calls in the sliding window.
+	 * @return The percentage of slow calls in the sliding window.
+	 */
+	public synchronized float slowCallRate() {
+		return calls > 0 ? 100.0f * slowCallCount / calls : 0.0f;
+	}
+
+	/**
+	 * Gets the metrics of the circuit breaker: current state, failure and slow-call rates, number of transitions to each state and number
+	 * of rejected calls.
+	 * @return A JSON object with the metrics of the circuit breaker.
+	 */
+	public synchronized JsonObject stats() {
+		final JsonObject stats = new JsonObject()
+				.put("state", state.name())
+				.put("failure-rate", failureRate())
+				.put("slow-call-rate", slowCallRate())
+				.put("rejected", rejected);
+		final JsonObject transitions2 = new JsonObject();
+		transitions.entrySet().stream().forEach(e -> transitions2.put(e.getKey().name(), e.getValue()));
+		return stats.put("transitions", transitions2);
+	}
+
+	private void record(final boolean failed, final boolean slow) {
+		if (calls == failures.length) {
+			if (failures[position]) failureCount--;
+			if (slowCalls[position]) slowCallCount--;
+		} else {
+			calls++;
+		}
+		failures[position] = failed;
+		slowCalls[position] = slow;
+		if (failed) failureCount++;
+		if (slow) slowCallCount++;
+		position = (position + 1) % failures.length;
+	}
+
+	private void transition(final State newState) {
+		state = newState;
+		transitions.merge(newState, 1l, Long::sum);
+		switch (newState) {
+		case OPEN:
+			openedAt = clock.getAsLong();
+			break;
+		case HALF_OPEN:
+			halfOpenPermits = 0;
+			halfOpenCalls = 0;
+			break;
+		case CLOSED:
+		default:
+			calls = position = failureCount = slowCallCount = 0;
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.Objects.requireNonNull;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Configuration of the {@link CircuitBreaker}. Instances of this class are immutable.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CircuitBreakerConfig {
+
+	public static final int WINDOW_SIZE = 20;
+	public static final int MINIMUM_CALLS = 10;
+	public static final float FAILURE_RATE_THRESHOLD = 50.0f;
+	public static final float SLOW_CALL_RATE_THRESHOLD = 80.0f;
+	public static final long SLOW_CALL_DURATION_MS = 2000l;
+	public static final long WAIT_DURATION_IN_OPEN_STATE_MS = 10000l;
+	public static final int PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+
+	private final int windowSize;
+	private final int minimumCalls;
+	private final float failureRateThreshold;
+	private final float slowCallRateThreshold;
+	private final long slowCallDuration;
+	private final long waitDurationInOpenState;
+	private final int permittedCallsInHalfOpenState;
+
+	public CircuitBreakerConfig() {
+		this(new JsonObject());
+	}
+
+	/**
+	 * Creates a new configuration from the following properties: <tt>window-size</tt> (number of calls), <tt>minimum-calls</tt>, 
+	 * <tt>failure-rate-threshold</tt> (percentage), <tt>slow-call-rate-threshold</tt> (percentage), <tt>slow-call-duration</tt> 
+	 * (milliseconds), <tt>wait-duration-in-open-state</tt> (milliseconds) and <tt>permitted-calls-in-half-open-state</tt>.
+	 * @param config - configuration properties
+	 */
+	public CircuitBreakerConfig(final JsonObject config) {
+		requireNonNull(config, "A valid configuration expected");
+		this.windowSize = config.getInteger("window-size", WINDOW_SIZE);
+		this.minimumCalls = Math.min(config.getInteger("minimum-calls", MINIMUM_CALLS), windowSize);
+		this.failureRateThreshold = config.getFloat("failure-rate-threshold", FAILURE_RATE_THRESHOLD);
+		this.slowCallRateThreshold = config.getFloat("slow-call-rate-threshold", SLOW_CALL_RATE_THRESHOLD);
+		this.slowCallDuration = config.getLong("slow-call-duration", SLOW_CALL_DURATION_MS);
+		this.waitDurationInOpenState = config.getLong("wait-duration-in-open-state", WAIT_DURATION_IN_OPEN_STATE_MS);
+		this.permittedCallsInHalfOpenState = config.getInteger("permitted-calls-in-half-open-state", PERMITTED_CALLS_IN_HALF_OPEN_STATE);
+		if (windowSize <= 0 || minimumCalls <= 0 || permittedCallsInHalfOpenState <= 0) throw new IllegalArgumentException("Positive number of calls expected");
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public float getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public float getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	public long getSlowCallDuration() {
+		return slowCallDuration;
+	}
+
+	public long getWaitDurationInOpenState() {
+		return waitDurationInOpenState;
+	}
+
+	public int getPermittedCallsInHalfOpenState() {
+		return permittedCallsInHalfOpenState;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.Objects.requireNonNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Circuit breakers of the upstream services, one per application and instance. A single instance is shared by all the verticles deployed
+ * in the same Vert.x instance (see {@link #sharedCircuitBreakers(Vertx, JsonObject)}), so that all of them see the same state of the 
+ * upstream services. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class CircuitBreakers implements Shareable {
+
+	private final static Logger LOGGER = getLogger(CircuitBreakers.class);
+
+	private static final String SHARED_MAP = "opengateway.circuit-breakers";
+
+	private final CircuitBreakerConfig config;
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakers(final CircuitBreakerConfig config) {
+		this.config = requireNonNull(config, "A valid configuration expected");
+	}
+
+	/**
+	 * Gets the circuit breakers shared by the verticles deployed in the specified Vert.x instance, creating them the first time that this
+	 * method is called.
+	 * @param vertx - Vert.x instance
+	 * @param config - configuration of the circuit breakers
+	 * @return The circuit breakers shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static CircuitBreakers sharedCircuitBreakers(final Vertx vertx, final JsonObject config) {
+		final LocalMap<String, CircuitBreakers> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		CircuitBreakers breakers = map.get(SHARED_MAP);
+		if (breakers == null) {
+			final CircuitBreakers newBreakers = new CircuitBreakers(new CircuitBreakerConfig(config));
+			breakers = map.putIfAbsent(SHARED_MAP, newBreakers);
+			if (breakers == null) breakers = newBreakers;
+		}
+		return breakers;
+	}
+
+	/**
+	 * Checks whether a call to the specified instance is permitted.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance
+	 * @return <tt>true</tt> if the call is permitted, otherwise <tt>false</tt>.
+	 */
+	public boolean tryAcquire(final String appId, final String instance) {
+		return breaker(appId, instance).tryAcquire();
+	}
+
+	/**
+	 * Records the outcome of a call to the specified instance, logging the changes of state.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance
+	 * @param durationNanos - duration of the call (in nanoseconds)
+	 * @param failed - <tt>true</tt> when the call failed
+	 */
+	public void onResult(final String appId, final String instance, final long durationNanos, final boolean failed) {
+		final CircuitBreaker breaker = breaker(appId, instance);
+		final CircuitBreaker.State before = breaker.state();
+		breaker.onResult(durationNanos, failed);
+		final CircuitBreaker.State after = breaker.state();
+		if (before != after) LOGGER.info("Circuit breaker state changed [appId=" + appId + ", instance=" + instance + ", from=" + before + ", to=" + after + "].");
+	}
+
+	/**
+	 * Gets the circuit breaker of the specified instance.
+	 * @param appId - the application identifier
+	 * @param instance - the service instance
+	 * @return The circuit breaker of the specified instance.
+	 */
+	public CircuitBreaker breaker(final String appId, final String instance) {
+		return breakers.computeIfAbsent(requireNonNull(appId, "A valid application id expected") + " " + requireNonNull(instance, "A valid instance expected"), 
+				k -> new CircuitBreaker(config));
+	}
+
+	/**
+	 * Gets the metrics of all the circuit breakers.
+	 * @return A JSON object with the metrics of each circuit breaker, indexed by application and instance.
+	 */
+	public JsonObject stats() {
+		final JsonObject stats = new JsonObject();
+		breakers.entrySet().stream().forEach(e -> stats.put(e.getKey(), e.getValue().stats()));
+		return stats;
+	}
+
+}
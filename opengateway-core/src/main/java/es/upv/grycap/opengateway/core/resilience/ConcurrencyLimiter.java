@@ -0,0 +1,145 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Adaptive limit of the number of concurrent requests that are submitted to an upstream service. The limit is adjusted from the observed 
+ * round-trip time (RTT), following the gradient algorithm: a long-term average of the RTT estimates the latency of the service without 
+ * queuing, and the ratio between this average and the latest sample (the gradient) drives the limit down when requests start queuing in 
+ * the service, while a small headroom (the square root of the limit) lets the limit grow when the latency is stable. The limit only grows
+ * when the service is actually used near the limit. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class ConcurrencyLimiter {
+
+	public static final int INITIAL_LIMIT = 100;
+	public static final int MIN_LIMIT = 4;
+	public static final int MAX_LIMIT = 500;
+	public static final double SMOOTHING = 0.2d;
+	public static final double RTT_TOLERANCE = 1.5d;
+	public static final int RTT_WINDOW = 100;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double smoothing;
+	private final double rttTolerance;
+	private final int rttWindow;
+
+	private double limit;
+	private int inflight = 0;
+	private double longRtt = 0.0d;
+	private long rejected = 0l;
+
+	public ConcurrencyLimiter() {
+		this(new JsonObject());
+	}
+
+	/**
+	 * Creates a new limiter from the following properties: <tt>initial-limit</tt>, <tt>min-limit</tt>, <tt>max-limit</tt>, <tt>smoothing</tt>
+	 * (weight of the new limit, between 0 and 1), <tt>rtt-tolerance</tt> (increase of the RTT that is tolerated before reducing the limit)
+	 * and <tt>rtt-window</tt> (number of samples of the long-term RTT average).
+	 * @param config - configuration properties
+	 */
+	public ConcurrencyLimiter(final JsonObject config) {
+		requireNonNull(config, "A valid configuration expected");
+		this.minLimit = config.getInteger("min-limit", MIN_LIMIT);
+		this.maxLimit = config.getInteger("max-limit", MAX_LIMIT);
+		this.smoothing = config.getDouble("smoothing", SMOOTHING);
+		this.rttTolerance = config.getDouble("rtt-tolerance", RTT_TOLERANCE);
+		this.rttWindow = config.getInteger("rtt-window", RTT_WINDOW);
+		this.limit = config.getInteger("initial-limit", INITIAL_LIMIT);
+		if (minLimit <= 0 || maxLimit < minLimit || limit < minLimit || limit > maxLimit) throw new IllegalArgumentException("Invalid limits");
+		if (smoothing <= 0.0d || smoothing > 1.0d || rttTolerance < 1.0d || rttWindow <= 0) throw new IllegalArgumentException("Invalid parameters");
+	}
+
+	/**
+	 * Checks whether a new request can be submitted without exceeding the limit. Every permitted request must be followed by a call to 
+	 * {@link #onComplete(long)} or to {@link #release()}.
+	 * @return <tt>true</tt> if the request is permitted, otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inflight >= (int)limit) {
+			rejected++;
+			return false;
+		}
+		inflight++;
+		return true;
+	}
+
+	/**
+	 * Releases a permit without updating the limit (e.g. the request was not submitted to the upstream service).
+	 */
+	public synchronized void release() {
+		if (inflight > 0) inflight--;
+	}
+
+	/**
+	 * Releases a permit and updates the limit with the round-trip time of the request.
+	 * @param rttNanos - round-trip time of the request (in nanoseconds)
+	 */
+	public synchronized void onComplete(final long rttNanos) {
+		final int inflightAtSample = inflight;
+		release();
+		if (rttNanos <= 0l) return;
+		longRtt = longRtt > 0.0d ? longRtt + (rttNanos - longRtt) / rttWindow : rttNanos;
+		// recover quickly when the latency of the service drops
+		if (longRtt / rttNanos > 2.0d) longRtt *= 0.95d;
+		// don't grow the limit when the service is not used near the limit
+		if (inflightAtSample < limit / 2.0d) return;
+		final double gradient = Math.max(0.5d, Math.min(1.0d, rttTolerance * longRtt / rttNanos));
+		final double newLimit = limit * gradient + Math.sqrt(limit);
+		limit = Math.max(minLimit, Math.min(maxLimit, limit * (1.0d - smoothing) + newLimit * smoothing));
+	}
+
+	/**
+	 * Gets the current limit.
+	 * @return The maximum number of concurrent requests that are currently permitted.
+	 */
+	public synchronized int limit() {
+		return (int)limit;
+	}
+
+	public synchronized int inflight() {
+		return inflight;
+	}
+
+	/**
+	 * Gets the metrics of the limiter: current limit, requests in flight, long-term RTT average and number of rejected requests.
+	 * @return A JSON object with the metrics of the limiter.
+	 */
+	public synchronized JsonObject stats() {
+		return new JsonObject()
+				.put("limit", (int)limit)
+				.put("inflight", inflight)
+				.put("rtt-ms", NANOSECONDS.toMillis((long)longRtt))
+				.put("rejected", rejected);
+	}
+
+}
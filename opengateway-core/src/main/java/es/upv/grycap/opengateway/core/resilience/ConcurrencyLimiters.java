@@ -0,0 +1,110 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Adaptive concurrency limiters of the upstream services, one per application. A single instance is shared by all the verticles deployed
+ * in the same Vert.x instance (see {@link #sharedLimiters(Vertx, JsonObject)}), so that the limit bounds the requests submitted by all of 
+ * them. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class ConcurrencyLimiters implements Shareable {
+
+	public static final long RETRY_AFTER_SECONDS = 1l;
+
+	private static final String SHARED_MAP = "opengateway.concurrency-limiters";
+
+	private final JsonObject config;
+	private final long retryAfter;
+	private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new set of limiters. Besides the properties of the {@link ConcurrencyLimiter}, the time that the rejected clients should 
+	 * wait before retrying is read from the property <tt>retry-after</tt> (seconds).
+	 * @param config - configuration of the limiters
+	 */
+	public ConcurrencyLimiters(final JsonObject config) {
+		this.config = requireNonNull(config, "A valid configuration expected").copy();
+		this.retryAfter = config.getLong("retry-after", RETRY_AFTER_SECONDS);
+		// fail early on invalid configurations
+		new ConcurrencyLimiter(this.config);
+	}
+
+	/**
+	 * Gets the limiters shared by the verticles deployed in the specified Vert.x instance, creating them the first time that this method 
+	 * is called.
+	 * @param vertx - Vert.x instance
+	 * @param config - configuration of the limiters
+	 * @return The limiters shared by the verticles deployed in the specified Vert.x instance.
+	 */
+	public static ConcurrencyLimiters sharedLimiters(final Vertx vertx, final JsonObject config) {
+		final LocalMap<String, ConcurrencyLimiters> map = requireNonNull(vertx, "A valid Vert.x instance expected").sharedData().getLocalMap(SHARED_MAP);
+		ConcurrencyLimiters limiters = map.get(SHARED_MAP);
+		if (limiters == null) {
+			final ConcurrencyLimiters newLimiters = new ConcurrencyLimiters(config);
+			limiters = map.putIfAbsent(SHARED_MAP, newLimiters);
+			if (limiters == null) limiters = newLimiters;
+		}
+		return limiters;
+	}
+
+	/**
+	 * Gets the limiter of the specified application.
+	 * @param appId - the application identifier
+	 * @return The limiter of the specified application.
+	 */
+	public ConcurrencyLimiter limiter(final String appId) {
+		return limiters.computeIfAbsent(requireNonNull(appId, "A valid application id expected"), k -> new ConcurrencyLimiter(config));
+	}
+
+	/**
+	 * Gets the time that the rejected clients should wait before retrying.
+	 * @return The value of the <tt>Retry-After</tt> header (in seconds) sent to the rejected clients.
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Gets the metrics of all the limiters.
+	 * @return A JSON object with the metrics of each limiter, indexed by application.
+	 */
+	public JsonObject stats() {
+		final JsonObject stats = new JsonObject();
+		limiters.entrySet().stream().forEach(e -> stats.put(e.getKey(), e.getValue().stats()));
+		return stats;
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Arrays;
+
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.HedgingConfig;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Decides when a hedged request is sent to a second instance of a service. The delay is a percentile of the latencies of the latest requests,
+ * which are kept in a fixed-size ring, and the number of hedged requests is capped by a {@link RetryBudget}. The percentile is recomputed 
+ * periodically rather than with every request. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class HedgingPolicy {
+
+	public static final double PERCENTILE = 95.0d;
+	public static final long MIN_DELAY_MS = 5l;
+	public static final long MAX_DELAY_MS = 1000l;
+	public static final double BUDGET_RATIO = 0.1d;
+	public static final int BUDGET_MAX_TOKENS = 10;
+
+	private static final int WINDOW_SIZE = 256;
+	private static final int MIN_SAMPLES = 20;
+	private static final int RECOMPUTE_INTERVAL = 16;
+
+	private final double percentile;
+	private final long minDelay;
+	private final long maxDelay;
+	private final RetryBudget budget;
+
+	private final long[] samples = new long[WINDOW_SIZE];
+	private int position = 0;
+	private int count = 0;
+	private int sinceRecompute = 0;
+	private long delay;
+
+	private long requests = 0l;
+	private long hedged = 0l;
+	private long hedgeWins = 0l;
+
+	/**
+	 * Creates a new policy. Properties that are not set in the configuration take their default values.
+	 * @param config - hedging configuration
+	 */
+	public HedgingPolicy(final HedgingConfig config) {
+		requireNonNull(config, "A valid hedging configuration expected");
+		this.percentile = ofNullable(config.getPercentile()).orElse(PERCENTILE);
+		this.minDelay = ofNullable(config.getMinDelay()).orElse(MIN_DELAY_MS);
+		this.maxDelay = ofNullable(config.getMaxDelay()).orElse(MAX_DELAY_MS);
+		this.budget = new RetryBudget(ofNullable(config.getBudgetRatio()).orElse(BUDGET_RATIO), ofNullable(config.getBudgetMaxTokens()).orElse(BUDGET_MAX_TOKENS));
+		if (percentile <= 0.0d || percentile > 100.0d) throw new IllegalArgumentException("Percentile must be in the range (0, 100]");
+		if (minDelay < 0l || maxDelay < minDelay) throw new IllegalArgumentException("Invalid delays");
+		this.delay = maxDelay;
+	}
+
+	/**
+	 * Records a new request, depositing its share of the retry budget.
+	 */
+	public synchronized void onRequest() {
+		requests++;
+		budget.deposit();
+	}
+
+	/**
+	 * Gets the time that the gateway waits for the first attempt before sending the hedged request. The maximum delay is used until enough 
+	 * samples are collected.
+	 * @return The time (in milliseconds) that the gateway waits for the first attempt.
+	 */
+	public synchronized long delay() {
+		return delay;
+	}
+
+	/**
+	 * Checks whether a hedged request can be sent, withdrawing a token from the retry budget.
+	 * @return <tt>true</tt> if the hedged request is permitted, otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean tryHedge() {
+		if (budget.tryWithdraw()) {
+			hedged++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records the latency of a first attempt. The latencies of the hedged requests are not recorded, so that the delay tracks the latency 
+	 * of the service and not the latency improved by hedging.
+	 * @param latencyNanos - time elapsed since the attempt was sent until the response was received (in nanoseconds)
+	 */
+	public synchronized void recordLatency(final long latencyNanos) {
+		samples[position] = latencyNanos;
+		position = (position + 1) % samples.length;
+		if (count < samples.length) count++;
+		if (count >= MIN_SAMPLES && ++sinceRecompute >= RECOMPUTE_INTERVAL) {
+			sinceRecompute = 0;
+			final long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			final int index = Math.min(count - 1, (int)Math.ceil(percentile / 100.0d * count) - 1);
+			delay = Math.max(minDelay, Math.min(maxDelay, NANOSECONDS.toMillis(sorted[Math.max(0, index)])));
+		}
+	}
+
+	/**
+	 * Records that a hedged request answered before the first attempt.
+	 */
+	public synchronized void onHedgeWin() {
+		hedgeWins++;
+	}
+
+	/**
+	 * Gets the metrics of the policy: current delay, number of requests, number of hedged requests, number of hedged requests that answered
+	 * first and the state of the retry budget.
+	 * @return A JSON object with the metrics of the policy.
+	 */
+	public synchronized JsonObject stats() {
+		return new JsonObject()
+				.put("delay-ms", delay)
+				.put("requests", requests)
+				.put("hedged", hedged)
+				.put("hedge-wins", hedgeWins)
+				.put("budget", budget.stats());
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.resilience;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Token bucket that caps the number of additional attempts (retries or hedged requests) to a fraction of the original requests. Every 
+ * request deposits a fraction of a token in the bucket and every additional attempt withdraws a complete token, so that additional attempts 
+ * can't amplify the load of a service that is already failing. This class is thread-safe.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+public class RetryBudget {
+
+	private final double ratio;
+	private final double maxTokens;
+
+	private double tokens;
+	private long granted = 0l;
+	private long denied = 0l;
+
+	/**
+	 * Creates a new budget. The bucket is created full.
+	 * @param ratio - tokens deposited with every request (e.g. 0.1 allows one additional attempt every ten requests)
+	 * @param maxTokens - maximum number of tokens that the bucket can accumulate
+	 */
+	public RetryBudget(final double ratio, final int maxTokens) {
+		if (ratio < 0.0d || maxTokens < 0) throw new IllegalArgumentException("Non-negative ratio and tokens expected");
+		this.ratio = ratio;
+		this.maxTokens = maxTokens;
+		this.tokens = maxTokens;
+	}
+
+	/**
+	 * Deposits the tokens earned by a new request.
+	 */
+	public synchronized void deposit() {
+		tokens = Math.min(maxTokens, tokens + ratio);
+	}
+
+	/**
+	 * Withdraws a token for an additional attempt.
+	 * @return <tt>true</tt> when the additional attempt is permitted, otherwise <tt>false</tt>.
+	 */
+	public synchronized boolean tryWithdraw() {
+		if (tokens >= 1.0d) {
+			tokens -= 1.0d;
+			granted++;
+			return true;
+		}
+		denied++;
+		return false;
+	}
+
+	/**
+	 * Gets the metrics of the budget: available tokens and number of granted and denied attempts.
+	 * @return A JSON object with the metrics of the budget.
+	 */
+	public synchronized JsonObject stats() {
+		return new JsonObject()
+				.put("tokens", tokens)
+				.put("granted", granted)
+				.put("denied", denied);
+	}
+
+}
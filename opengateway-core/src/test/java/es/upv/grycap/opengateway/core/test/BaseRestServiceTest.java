@@ -0,0 +1,479 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static es.upv.grycap.opengateway.core.http.RestServiceConfig.getRestServiceConfig;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.http.BaseRestService;
+import es.upv.grycap.opengateway.core.http.Deadline;
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.ApiConfig;
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.HedgingConfig;
+import es.upv.grycap.opengateway.core.http.RestServiceConfig.ScatterGatherConfig;
+import es.upv.grycap.opengateway.core.loadbalancer.SingleNodeLoadBalancer;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunnerWithParametersFactory;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+
+/**
+ * Tests the {@link BaseRestService}, proxying the requests to an upstream service that runs in the same Vert.x instance.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(VertxUnitRunnerWithParametersFactory.class)
+@Category(FunctionalTests.class)
+public class BaseRestServiceTest {
+
+	public static final int UPSTREAM_PORT = 9082;
+	public static final int GATEWAY_PORT = 9083;
+	public static final String APP_ID = "opengateway-test.product.v1";
+	public static final String HEDGED_APP_ID = "opengateway-test.hedged-product.v1";
+	public static final String SHARDED_APP_ID = "opengateway-test.sharded-product.v1";
+	public static final int LARGE_LIST_SIZE = 50000;
+	public static final long SLOW_DELAY_MS = 500l;
+	public static final String LAST_MODIFIED = "Thu, 01 Jan 2015 00:00:00 GMT";
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	/**
+	 * Provides different input datasets.
+	 * @return Parameters for the different test scenarios.
+	 */
+	@Parameters(name = "{index}: streaming={0}, converted={1}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] {
+			{ false, false },
+			{ false, true  },
+			{ true,  false }
+		});
+	}
+
+	@Parameter(value = 0) public boolean streaming;
+	@Parameter(value = 1) public boolean converted;
+
+	private Vertx vertx;
+	private HttpClient client;
+	private TestRestService service;
+	private final AtomicInteger slowRequests = new AtomicInteger();
+	private final AtomicInteger flakyRequests = new AtomicInteger();
+	private final AtomicInteger notModifiedResponses = new AtomicInteger();
+	private final List<String> shardLimits = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void before(final TestContext context) {
+		vertx = Vertx.vertx();
+		client = vertx.createHttpClient();
+		// start the upstream service
+		final Router router = Router.router(vertx);
+		router.route().handler(BodyHandler.create());
+		router.get("/products/large").handler(e -> {
+			final JsonArray products = new JsonArray();
+			for (int i = 0; i < LARGE_LIST_SIZE; i++) products.add(new JsonObject().put("id", "P" + i).put("name", "Product " + i));
+			e.response().putHeader("content-type", "application/json").end(products.encode());
+		});
+		router.getWithRegex("/products/SLOW[^/]*").handler(e -> {
+			slowRequests.incrementAndGet();
+			vertx.setTimer(SLOW_DELAY_MS, id -> e.response().putHeader("content-type", "application/json")
+					.end(new JsonObject().put("id", e.request().path().substring("/products/".length())).encode()));
+		});
+		// only the first request succeeds
+		router.getWithRegex("/products/FLAKY[^/]*").handler(e -> {
+			if (flakyRequests.getAndIncrement() == 0) e.response().putHeader("content-type", "application/json").putHeader("Cache-Control", "max-age=1, stale-if-error=60")
+				.end(new JsonObject().put("id", e.request().path().substring("/products/".length())).encode());
+			else e.response().setStatusCode(500).end();
+		});
+		// conditional requests are answered without body
+		router.getWithRegex("/products/REV[^/]*").handler(e -> {
+			e.response().putHeader("ETag", "\"v1\"").putHeader("Cache-Control", "max-age=1");
+			if ("\"v1\"".equals(e.request().getHeader("If-None-Match"))) {
+				notModifiedResponses.incrementAndGet();
+				e.response().setStatusCode(304).end();
+			} else e.response().putHeader("content-type", "application/json")
+				.end(new JsonObject().put("id", e.request().path().substring("/products/".length())).encode());
+		});
+		// the instance reached through the loopback name is slow
+		router.get("/hedged/:id").handler(e -> vertx.setTimer(e.request().getHeader("Host").startsWith("localhost") ? SLOW_DELAY_MS : 1l, 
+				id -> e.response().putHeader("content-type", "application/json").end(new JsonObject().put("id", e.request().getParam("id")).encode())));
+		// each shard holds a partition of the items sorted by rank, except the broken shard that always fails
+		router.get("/shards/:shard").handler(e -> {
+			shardLimits.add(String.valueOf(e.request().getParam("limit")));
+			final int offset = "a".equals(e.request().getParam("shard")) ? 1 : 2;
+			if ("broken".equals(e.request().getParam("shard"))) e.response().setStatusCode(500).end();
+			else e.response().putHeader("content-type", "application/json").putHeader("Cache-Control", offset == 1 ? "max-age=60" : "max-age=30")
+				.end(new JsonArray().add(new JsonObject().put("id", "S" + offset).put("rank", offset))
+						.add(new JsonObject().put("id", "S" + (offset + 3)).put("rank", offset + 3))
+						.add(new JsonObject().put("id", "S" + (offset + 6)).put("rank", offset + 6)).encode());
+		});
+		router.get("/products/:id").handler(e -> e.response().putHeader("content-type", "application/json").putHeader("Cache-Control", "public, max-age=86400")
+				.putHeader("Last-Modified", LAST_MODIFIED)
+				.end(new JsonObject().put("id", e.request().getParam("id")).put("timeout", e.request().getHeader(Deadline.TIMEOUT_HEADER)).encode()));
+		router.get("/products").handler(e -> e.response().putHeader("content-type", "application/json")
+				.end(new JsonArray().add(new JsonObject().put("id", "P001")).add(new JsonObject().put("id", "P002")).encode()));
+		router.post("/products").handler(e -> e.response().putHeader("Location", "/products/" + e.getBodyAsJson().getString("id")).setStatusCode(201).end());
+		router.put("/products/:id").handler(e -> e.response().setStatusCode(204).end());
+		router.delete("/products/:id").handler(e -> e.response().setStatusCode(204).end());
+		vertx.createHttpServer().requestHandler(router::accept).listen(UPSTREAM_PORT, context.asyncAssertSuccess(s -> {
+			// deploy the gateway
+			service = new TestRestService(streaming, converted);
+			service.setLoadBalancer(new SingleNodeLoadBalancer().addService(APP_ID, String.format("http://localhost:%d/products", UPSTREAM_PORT))
+					.addService(HEDGED_APP_ID, String.format("http://localhost:%d/hedged", UPSTREAM_PORT))
+					.addService(HEDGED_APP_ID, String.format("http://127.0.0.1:%d/hedged", UPSTREAM_PORT))
+					.addService(SHARDED_APP_ID, String.format("http://localhost:%d/shards/a", UPSTREAM_PORT))
+					.addService(SHARDED_APP_ID, String.format("http://localhost:%d/shards/b", UPSTREAM_PORT))
+					.addService(SHARDED_APP_ID, String.format("http://localhost:%d/shards/broken", UPSTREAM_PORT)));
+			vertx.deployVerticle(service, new DeploymentOptions().setConfig(new JsonObject().put("http.port", GATEWAY_PORT)), context.asyncAssertSuccess());
+		}));
+	}
+
+	@After
+	public void after(final TestContext context) {
+		vertx.close(context.asyncAssertSuccess());
+	}
+
+	@Test
+	public void testGet(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/P001", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			resp.bodyHandler(body -> {
+				context.assertEquals("P001", body.toJsonObject().getString("id"), "Object id coincides with expected");
+				context.assertEquals(converted, body.toJsonObject().getBoolean("converted", false), "Object was converted");
+				async.complete();
+			});
+		});
+	}
+
+	@Test
+	public void testCachedGet(final TestContext context) {
+		final Async async = context.async();
+		final String expected = streaming ? null : "MISS";
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/P002", resp -> {
+			context.assertEquals(expected, resp.getHeader(BaseRestService.CACHE_STATUS_HEADER), "First response was received from upstream");
+			client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/P002", resp2 -> {
+				context.assertEquals(streaming ? null : "HIT", resp2.getHeader(BaseRestService.CACHE_STATUS_HEADER), "Second response was served from the cache");
+				resp2.bodyHandler(body -> {
+					context.assertEquals("P002", body.toJsonObject().getString("id"), "Object id coincides with expected");
+					// modifying the object invalidates the cached response
+					client.put(GATEWAY_PORT, "localhost", "/test/v1/products/P002", resp3 -> {
+						context.assertEquals(204, resp3.statusCode(), "Status code coincides with expected");
+						client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/P002", resp4 -> {
+							context.assertEquals(expected, resp4.getHeader(BaseRestService.CACHE_STATUS_HEADER), "Response was received from upstream after modification");
+							async.complete();
+						});
+					}).putHeader("content-type", "application/json").end(new JsonObject().put("id", "P002").encode());
+				});
+			});
+		});
+	}
+
+	@Test
+	public void testConditionalGet(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/P005", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			context.assertEquals(LAST_MODIFIED, resp.getHeader("Last-Modified"), "Last modification date was forwarded");
+			final String etag = resp.getHeader("ETag");
+			pw.println(" >> ETag: " + etag);
+			if (!streaming) {
+				context.assertNotNull(etag, "Entity tag was sent");
+				context.assertTrue(etag.startsWith("\""), "Entity tag is strong");
+				context.assertEquals("public, max-age=86400", resp.getHeader("Cache-Control"), "Cache directives were forwarded");
+			}
+			// the gateway answers conditional requests when the client already has the representation
+			client.get(GATEWAY_PORT, "localhost", "/test/v1/products/P005", resp2 -> {
+				context.assertEquals(streaming ? 200 : 304, resp2.statusCode(), "Status code coincides with expected");
+				context.assertEquals(etag, resp2.getHeader("ETag"), "Entity tag coincides with expected");
+				client.get(GATEWAY_PORT, "localhost", "/test/v1/products/P005", resp3 -> {
+					context.assertEquals(streaming ? 200 : 304, resp3.statusCode(), "Status code coincides with expected");
+					client.get(GATEWAY_PORT, "localhost", "/test/v1/products/P005", resp4 -> {
+						context.assertEquals(200, resp4.statusCode(), "Status code coincides with expected");
+						resp4.bodyHandler(body -> {
+							context.assertEquals("P005", body.toJsonObject().getString("id"), "Object id coincides with expected");
+							async.complete();
+						});
+					}).putHeader("If-None-Match", "\"other\"").end();
+				}).putHeader("If-Modified-Since", "Fri, 01 Jan 2016 00:00:00 GMT").end();
+			}).putHeader("If-None-Match", etag != null ? "W/" + etag : "*").end();
+		});
+	}
+
+	@Test
+	public void testRevalidatedGet(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/REV001", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			// the expired response is revalidated with the upstream service, which doesn't send the body again
+			vertx.setTimer(1100l, timerId -> client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/REV001", resp2 -> {
+				context.assertEquals(200, resp2.statusCode(), "Status code coincides with expected");
+				context.assertEquals(streaming ? null : "REVALIDATED", resp2.getHeader(BaseRestService.CACHE_STATUS_HEADER), "Response was revalidated");
+				resp2.bodyHandler(body -> {
+					context.assertEquals("REV001", body.toJsonObject().getString("id"), "Object id coincides with expected");
+					context.assertEquals(streaming ? 0 : 1, notModifiedResponses.get(), "Upstream body was not sent again");
+					async.complete();
+				});
+			}));
+		});
+	}
+
+	@Test
+	public void testCoalescedGet(final TestContext context) {
+		final int numRequests = 5;
+		final Async async = context.async(numRequests);
+		for (int i = 0; i < numRequests; i++) {
+			client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/SLOW001", resp -> {
+				context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+				resp.bodyHandler(body -> {
+					context.assertEquals("SLOW001", body.toJsonObject().getString("id"), "Object id coincides with expected");
+					// concurrent requests are coalesced in a single upstream request, except when the bodies are streamed
+					if (async.count() == 1) context.assertEquals(streaming ? numRequests : 1, slowRequests.get(), "Upstream requests coincides with expected");
+					async.countDown();
+				});
+			});
+		}
+	}
+
+	@Test
+	public void testHedgedGet(final TestContext context) {
+		final int numRequests = 4;
+		final Async async = context.async(numRequests);
+		for (int i = 0; i < numRequests; i++) {
+			final long start = System.currentTimeMillis();
+			client.getNow(GATEWAY_PORT, "localhost", "/test/v1/hedged-products/H00" + i, resp -> {
+				context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+				resp.bodyHandler(body -> {
+					final long elapsed = System.currentTimeMillis() - start;
+					pw.println(" >> Response time: " + elapsed + " ms");
+					context.assertEquals(body.toJsonObject().getString("id").startsWith("H00"), true, "Object id coincides with expected");
+					// requests to the slow instance are answered by the hedged request, except when the bodies are streamed
+					if (!streaming) context.assertTrue(elapsed < SLOW_DELAY_MS, "Response time is below the delay of the slow instance");
+					async.countDown();
+				});
+			});
+		}
+	}
+
+	@Test
+	public void testScatterGather(final TestContext context) {
+		final Async async = context.async();
+		// the limit is sent to all the shards, and the lists are merged by rank
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/sharded-products?limit=4", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			context.assertEquals("1/3", resp.getHeader(BaseRestService.PARTIAL_RESULTS_HEADER), "Response is flagged as partial");
+			resp.bodyHandler(body -> {
+				final JsonArray products = body.toJsonArray();
+				pw.println(" >> Merged list: " + products.encode() + ", limits received by the shards: " + shardLimits);
+				context.assertEquals(4, products.size(), "Number of items coincides with expected");
+				for (int i = 0; i < products.size(); i++) {
+					context.assertEquals(new int[]{ 1, 2, 4, 5 }[i], products.getJsonObject(i).getInteger("rank"), "Items are sorted by rank");
+					context.assertEquals(converted, products.getJsonObject(i).getBoolean("converted", false), "Item was converted");
+				}
+				context.assertEquals(3, shardLimits.size(), "All the shards were requested");
+				shardLimits.stream().forEach(limit -> context.assertEquals("4", limit, "Limit was sent to the shards"));
+				// partial lists are not cached
+				client.getNow(GATEWAY_PORT, "localhost", "/test/v1/sharded-products", resp2 -> {
+					context.assertEquals("MISS", resp2.getHeader(BaseRestService.CACHE_STATUS_HEADER), "Response was received from upstream");
+					context.assertEquals("no-store", resp2.getHeader("Cache-Control"), "Partial response is not stored");
+					resp2.bodyHandler(body2 -> {
+						context.assertEquals(6, body2.toJsonArray().size(), "Number of items coincides with expected");
+						async.complete();
+					});
+				});
+			});
+		});
+	}
+
+	@Test
+	public void testDeadline(final TestContext context) {
+		final Async async = context.async(2);
+		// the remaining time is sent to the upstream service
+		client.get(GATEWAY_PORT, "localhost", "/test/v1/products/P004", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			resp.bodyHandler(body -> {
+				final long timeout = Long.parseLong(body.toJsonObject().getString("timeout"));
+				context.assertTrue(timeout > 0l && timeout <= 5000l, "Upstream timeout coincides with expected");
+				async.countDown();
+			});
+		}).putHeader(Deadline.TIMEOUT_HEADER, "5000").end();
+		// the request fails when the upstream service doesn't answer within the time requested by the client
+		final long start = System.currentTimeMillis();
+		client.get(GATEWAY_PORT, "localhost", "/test/v1/products/SLOW002", resp -> {
+			context.assertEquals(504, resp.statusCode(), "Status code coincides with expected");
+			context.assertTrue(System.currentTimeMillis() - start < SLOW_DELAY_MS, "Request completes before the upstream response");
+			async.countDown();
+		}).putHeader(Deadline.TIMEOUT_HEADER, "100").end();
+	}
+
+	@Test
+	public void testCoalescedDeadline(final TestContext context) {
+		final Async async = context.async(2);
+		// each coalesced request keeps its own deadline
+		final long start = System.currentTimeMillis();
+		client.get(GATEWAY_PORT, "localhost", "/test/v1/products/SLOW003", resp -> {
+			context.assertEquals(504, resp.statusCode(), "Status code coincides with expected");
+			context.assertTrue(System.currentTimeMillis() - start < SLOW_DELAY_MS, "Request completes before the upstream response");
+			async.countDown();
+		}).putHeader(Deadline.TIMEOUT_HEADER, "100").end();
+		// the shared request waits for the longest deadline
+		vertx.setTimer(50l, timerId -> client.get(GATEWAY_PORT, "localhost", "/test/v1/products/SLOW003", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			resp.bodyHandler(body -> {
+				context.assertEquals("SLOW003", body.toJsonObject().getString("id"), "Object id coincides with expected");
+				context.assertEquals(streaming ? 2 : 1, slowRequests.get(), "Upstream requests coincides with expected");
+				async.countDown();
+			});
+		}).putHeader(Deadline.TIMEOUT_HEADER, "5000").end());
+	}
+
+	@Test
+	public void testStaleIfError(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/FLAKY001", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			// the expired response is served when the upstream service fails, except when the bodies are streamed
+			vertx.setTimer(1100l, timerId -> client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/FLAKY001", resp2 -> {
+				context.assertEquals(streaming ? 500 : 200, resp2.statusCode(), "Status code coincides with expected");
+				context.assertEquals(streaming ? null : "STALE", resp2.getHeader(BaseRestService.CACHE_STATUS_HEADER), "Response was served stale");
+				context.assertEquals(2, flakyRequests.get(), "Upstream requests coincides with expected");
+				async.complete();
+			}));
+		});
+	}
+
+	@Test
+	public void testList(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			resp.bodyHandler(body -> {
+				context.assertEquals(2, body.toJsonArray().size(), "List size coincides with expected");
+				async.complete();
+			});
+		});
+	}
+
+	@Test
+	public void testLargeBody(final TestContext context) {
+		final Async async = context.async();
+		client.getNow(GATEWAY_PORT, "localhost", "/test/v1/products/large", resp -> {
+			context.assertEquals(200, resp.statusCode(), "Status code coincides with expected");
+			resp.bodyHandler(body -> {
+				pw.println(" >> Body size: " + body.length());
+				context.assertEquals(LARGE_LIST_SIZE, body.toJsonArray().size(), "List size coincides with expected");
+				async.complete();
+			});
+		});
+	}
+
+	@Test
+	public void testCreate(final TestContext context) {
+		final Async async = context.async();
+		if (service.getNegativeCache() != null) {
+			service.getNegativeCache().add(APP_ID, "/test/v1/products/P003");
+			service.getNegativeCache().add(APP_ID, "/test/v1/products/P404");
+		}
+		client.post(GATEWAY_PORT, "localhost", "/test/v1/products", resp -> {
+			context.assertEquals(201, resp.statusCode(), "Status code coincides with expected");
+			context.assertEquals("/products/P003", resp.getHeader("Location"), "Location coincides with expected");
+			// only the created item is forgotten by the negative cache, except when the bodies are streamed
+			if (!streaming && service.getNegativeCache() != null) {
+				context.assertFalse(service.getNegativeCache().contains(APP_ID, "/test/v1/products/P003"), "Created item is forgotten");
+				context.assertTrue(service.getNegativeCache().contains(APP_ID, "/test/v1/products/P404"), "Other items are remembered");
+			}
+			async.complete();
+		}).putHeader("content-type", "application/json").end(new JsonObject().put("id", "P003").encode());
+	}
+
+	@Test
+	public void testModify(final TestContext context) {
+		final Async async = context.async();
+		client.put(GATEWAY_PORT, "localhost", "/test/v1/products/P001", resp -> {
+			context.assertEquals(204, resp.statusCode(), "Status code coincides with expected");
+			async.complete();
+		}).putHeader("content-type", "application/json").end(Buffer.buffer(new JsonObject().put("id", "P001").encode()));
+	}
+
+	@Test
+	public void testDelete(final TestContext context) {
+		final Async async = context.async();
+		client.request(HttpMethod.DELETE, GATEWAY_PORT, "localhost", "/test/v1/products/P001", resp -> {
+			context.assertEquals(204, resp.statusCode(), "Status code coincides with expected");
+			async.complete();
+		}).end();
+	}
+
+	public static class TestRestService extends BaseRestService {
+
+		public TestRestService(final boolean streaming, final boolean converted) {
+			logger = getLogger(TestRestService.class);
+			if (converted) converter = obj -> obj.copy().put("converted", true);
+			final ApiConfig api = new ApiConfig(APP_ID, "/test/v1/products");
+			api.setStreaming(streaming);
+			final ApiConfig hedgedApi = new ApiConfig(HEDGED_APP_ID, "/test/v1/hedged-products");
+			hedgedApi.setStreaming(streaming);
+			hedgedApi.setHedging(new HedgingConfig(95.0d, 20l, 100l, 0.5d, 10));
+			final ApiConfig shardedApi = new ApiConfig(SHARDED_APP_ID, "/test/v1/sharded-products");
+			shardedApi.setScatterGather(new ScatterGatherConfig("rank", false, 2, 1000l, null));
+			serviceConfig = getRestServiceConfig(ImmutableMap.of(APP_ID, api, HEDGED_APP_ID, hedgedApi, SHARDED_APP_ID, shardedApi), null);
+		}
+
+	}
+
+}
\ No newline at end of file
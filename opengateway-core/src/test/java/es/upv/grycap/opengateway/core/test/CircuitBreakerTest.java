@@ -0,0 +1,122 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.resilience.CircuitBreaker;
+import es.upv.grycap.opengateway.core.resilience.CircuitBreaker.State;
+import es.upv.grycap.opengateway.core.resilience.CircuitBreakerConfig;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests the {@link CircuitBreaker}.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@Category(FunctionalTests.class)
+public class CircuitBreakerTest {
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	private final AtomicLong clock = new AtomicLong(0l);
+
+	private final CircuitBreakerConfig config = new CircuitBreakerConfig(new JsonObject()
+			.put("window-size", 10)
+			.put("minimum-calls", 5)
+			.put("failure-rate-threshold", 50)
+			.put("slow-call-rate-threshold", 80)
+			.put("slow-call-duration", 100)
+			.put("wait-duration-in-open-state", 1000)
+			.put("permitted-calls-in-half-open-state", 2));
+
+	@Test
+	public void testFailureRate() {
+		final CircuitBreaker breaker = new CircuitBreaker(config, clock::get);
+		// the circuit remains closed until the minimum number of calls is recorded
+		for (int i = 0; i < 4; i++) call(breaker, 10l, true);
+		assertThat("Circuit is closed", breaker.state(), equalTo(State.CLOSED));
+		call(breaker, 10l, false);
+		assertThat("Circuit is open", breaker.state(), equalTo(State.OPEN));
+		assertThat("Calls are rejected", breaker.tryAcquire(), equalTo(false));
+		// after the wait time, a limited number of probes is permitted
+		clock.addAndGet(MILLISECONDS.toNanos(1000l));
+		assertThat("First probe is permitted", breaker.tryAcquire(), equalTo(true));
+		assertThat("Circuit is half-open", breaker.state(), equalTo(State.HALF_OPEN));
+		assertThat("Second probe is permitted", breaker.tryAcquire(), equalTo(true));
+		assertThat("Third probe is rejected", breaker.tryAcquire(), equalTo(false));
+		breaker.onResult(MILLISECONDS.toNanos(10l), false);
+		breaker.onResult(MILLISECONDS.toNanos(10l), false);
+		assertThat("Circuit is closed", breaker.state(), equalTo(State.CLOSED));
+		final JsonObject stats = breaker.stats();
+		pw.println(" >> Circuit breaker stats: " + stats.encode());
+		assertThat("Rejected calls coincides with expected", stats.getLong("rejected"), equalTo(2l));
+		assertThat("Transitions to open coincides with expected", stats.getJsonObject("transitions").getLong("OPEN"), equalTo(1l));
+	}
+
+	@Test
+	public void testSlowCalls() {
+		final CircuitBreaker breaker = new CircuitBreaker(config, clock::get);
+		for (int i = 0; i < 10; i++) call(breaker, i < 2 ? 10l : 500l, false);
+		assertThat("Circuit is open", breaker.state(), equalTo(State.OPEN));
+		// a failed probe opens the circuit again
+		clock.addAndGet(MILLISECONDS.toNanos(1000l));
+		call(breaker, 10l, true);
+		assertThat("Circuit is open again", breaker.state(), equalTo(State.OPEN));
+		assertThat("Calls are rejected", breaker.tryAcquire(), equalTo(false));
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		final CircuitBreaker breaker = new CircuitBreaker(config, clock::get);
+		// old failures leave the window
+		for (int i = 0; i < 2; i++) call(breaker, 10l, true);
+		for (int i = 0; i < 20; i++) call(breaker, 10l, false);
+		assertThat("Failure rate coincides with expected", breaker.failureRate(), equalTo(0.0f));
+		for (int i = 0; i < 4; i++) call(breaker, 10l, true);
+		assertThat("Circuit is closed", breaker.state(), equalTo(State.CLOSED));
+	}
+
+	private static void call(final CircuitBreaker breaker, final long durationMillis, final boolean failed) {
+		assertThat("Call is permitted", breaker.tryAcquire(), equalTo(true));
+		breaker.onResult(MILLISECONDS.toNanos(durationMillis), failed);
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.resilience.ConcurrencyLimiter;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests the {@link ConcurrencyLimiter}.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@Category(FunctionalTests.class)
+public class ConcurrencyLimiterTest {
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	@Test
+	public void testLimit() {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new JsonObject().put("initial-limit", 10).put("min-limit", 2).put("max-limit", 100));
+		// requests above the limit are rejected
+		for (int i = 0; i < 10; i++) assertThat("Request is permitted", limiter.tryAcquire(), equalTo(true));
+		assertThat("Request is rejected", limiter.tryAcquire(), equalTo(false));
+		limiter.release();
+		assertThat("Request is permitted after release", limiter.tryAcquire(), equalTo(true));
+		// the limit grows while the latency is stable and the service is used near the limit
+		for (int i = 0; i < 50; i++) round(limiter, 10l);
+		final int grown = limiter.limit();
+		pw.println(" >> Limiter stats (stable latency): " + limiter.stats().encode());
+		assertThat("Limit grows", grown > 10, equalTo(true));
+		// the limit decreases when requests start queuing in the service
+		for (int i = 0; i < 2; i++) round(limiter, 50l);
+		pw.println(" >> Limiter stats (increased latency): " + limiter.stats().encode());
+		assertThat("Limit decreases", limiter.limit() < grown, equalTo(true));
+		assertThat("Limit is bounded", limiter.limit() >= 2, equalTo(true));
+	}
+
+	@Test
+	public void testIdle() {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new JsonObject().put("initial-limit", 10));
+		// the limit doesn't grow when the service is not used near the limit
+		for (int i = 0; i < 50; i++) {
+			limiter.tryAcquire();
+			limiter.onComplete(MILLISECONDS.toNanos(10l));
+		}
+		assertThat("Limit coincides with expected", limiter.limit(), equalTo(10));
+		assertThat("No request in flight", limiter.inflight(), equalTo(0));
+	}
+
+	/**
+	 * Submits as many requests as permitted by the limiter, completing all of them with the same round-trip time.
+	 */
+	private static void round(final ConcurrencyLimiter limiter, final long rttMillis) {
+		while (limiter.inflight() > 0) limiter.release();
+		int permitted = 0;
+		while (limiter.tryAcquire()) permitted++;
+		for (int i = 0; i < permitted; i++) limiter.onComplete(MILLISECONDS.toNanos(rttMillis));
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.cache.CacheControl;
+import es.upv.grycap.opengateway.core.cache.CachedResponse;
+import es.upv.grycap.opengateway.core.cache.DiskCache;
+import es.upv.grycap.opengateway.core.cache.ResponseCache;
+import es.upv.grycap.opengateway.core.cache.Validators;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests the {@link DiskCache}.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@Category(FunctionalTests.class)
+public class DiskCacheTest {
+
+	public static final String APP_ID = "opengateway-test.product.v1";
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRestart() throws Exception {
+		final Path directory = folder.newFolder().toPath();
+		DiskCache cache = new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000);
+		final long now = System.currentTimeMillis();
+		cache.put("k1", response("{\"id\":\"P001\"}", now), now + 60000l);
+		cache.put("k2", response("{\"id\":\"P002\"}", now), now + 60000l);
+		cache.put("k3", response("{\"id\":\"P003\"}", now), now - 1l);
+		cache.invalidate("k2");
+		assertThat("Response is found", cache.get("k1"), notNullValue());
+		assertThat("Removed response is not found", cache.get("k2"), nullValue());
+		assertThat("Expired response is not found", cache.get("k3"), nullValue());
+		// the index is probed without reading the responses
+		assertThat("Stored response might be found", cache.mightContain("k1"), equalTo(true));
+		assertThat("Removed response is not found in the index", cache.mightContain("k2"), equalTo(false));
+		assertThat("Expired response is not found in the index", cache.mightContain("k3"), equalTo(false));
+		assertThat("Missing response is not found in the index", cache.mightContain("k4"), equalTo(false));
+		cache.close();
+		// the index is reused after a clean shutdown
+		cache = new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000);
+		CachedResponse response = cache.get("k1");
+		assertThat("Response is found after restart", response, notNullValue());
+		assertThat("Body coincides with expected", response.getBody().toString(), equalTo("{\"id\":\"P001\"}"));
+		assertThat("Validators coincide with expected", response.getUpstreamValidators().getETag(), equalTo("\"v1\""));
+		assertThat("Directives coincide with expected", response.getCacheControl(), equalTo("max-age=60"));
+		cache.close();
+		// the index is rebuilt from the segments when the cache was not closed cleanly
+		try (final RandomAccessFile index = new RandomAccessFile(directory.resolve("index").toFile(), "rw")) {
+			index.seek(12l);
+			index.writeInt(0);
+		}
+		cache = new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000);
+		assertThat("Response is found after rebuild", cache.get("k1"), notNullValue());
+		assertThat("Removed response is not found after rebuild", cache.get("k2"), nullValue());
+		assertThat("Number of responses coincides with expected", cache.size(), equalTo(1));
+		pw.println(" >> Disk cache stats: " + cache.stats().encode());
+		cache.close();
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		final DiskCache cache = new DiskCache(folder.newFolder().toPath(), 64l * 1024l, 16l * 1024l, 1000);
+		final long now = System.currentTimeMillis();
+		// overwritten responses are compacted
+		for (int i = 0; i < 200; i++) cache.put("k0", response(new String(new char[1000]).replace('\0', 'a'), now), now + 60000l);
+		assertThat("Pending tasks complete", cache.awaitPending(5000l), equalTo(true));
+		assertThat("Overwritten response is found", cache.get("k0"), notNullValue());
+		assertThat("Cache is bounded", cache.totalSize() <= 64l * 1024l, equalTo(true));
+		// the oldest responses are dropped
+		for (int i = 1; i < 200; i++) cache.put("k" + i, response(new String(new char[1000]).replace('\0', 'b'), now), now + 60000l);
+		assertThat("Pending tasks complete", cache.awaitPending(5000l), equalTo(true));
+		pw.println(" >> Disk cache stats: " + cache.stats().encode());
+		assertThat("Cache is bounded", cache.totalSize() <= 64l * 1024l, equalTo(true));
+		assertThat("Last response is found", cache.get("k199"), notNullValue());
+		assertThat("First response is dropped", cache.get("k1"), nullValue());
+		assertThat("Compactions coincide with expected", cache.stats().getLong("compactions") > 0l, equalTo(true));
+		cache.close();
+	}
+
+	@Test
+	public void testCorrupted() throws Exception {
+		final Path directory = folder.newFolder().toPath();
+		final DiskCache cache = new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000);
+		final long now = System.currentTimeMillis();
+		cache.put("k1", response("{\"id\":\"P001\"}", now), now + 60000l);
+		// the last byte of the segment belongs to the body of the response
+		try (final RandomAccessFile segment = new RandomAccessFile(directory.resolve("segment-0.log").toFile(), "rw")) {
+			segment.seek(segment.length() - 1l);
+			segment.writeByte('x');
+		}
+		assertThat("Corrupted response is not found", cache.get("k1"), nullValue());
+		assertThat("Corrupted response is removed from the index", cache.mightContain("k1"), equalTo(false));
+		assertThat("Misses coincide with expected", cache.stats().getLong("misses"), equalTo(1l));
+		cache.close();
+	}
+
+	@Test
+	public void testDroppedWrites() throws Exception {
+		final DiskCache cache = new DiskCache(folder.newFolder().toPath(), 1024l * 1024l, 64l * 1024l, 1000, 1);
+		final long now = System.currentTimeMillis();
+		// the writes that don't fit in the queue are dropped, while the removals are always applied
+		for (int i = 0; i < 500; i++) cache.putAsync("k" + i, response(new String(new char[1000]).replace('\0', 'a'), now), now + 60000l);
+		cache.invalidateAsync("k0", () -> { });
+		assertThat("Pending tasks complete", cache.awaitPending(5000l), equalTo(true));
+		pw.println(" >> Disk cache stats: " + cache.stats().encode());
+		assertThat("Removed response is not found", cache.get("k0"), nullValue());
+		assertThat("Writes are dropped", cache.stats().getLong("dropped-writes") > 0l, equalTo(true));
+		assertThat("Writes coincide with expected", cache.stats().getLong("writes") + cache.stats().getLong("dropped-writes"), equalTo(500l));
+		cache.close();
+	}
+
+	@Test
+	public void testSecondTier() throws Exception {
+		final Path directory = folder.newFolder().toPath();
+		ResponseCache cache = new ResponseCache(1024l * 1024l, 1024, 60l, 60l, new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000));
+		cache.put(APP_ID, "/products/P001", CacheControl.parse(asList("max-age=60")), Buffer.buffer("{\"id\":\"P001\"}"));
+		cache.put(APP_ID, "/products/P002", CacheControl.parse(asList("max-age=60")), Buffer.buffer("{\"id\":\"P002\"}"));
+		cache.invalidate(APP_ID, "/products/P002");
+		cache.close();
+		// a new cache starts warm
+		cache = new ResponseCache(1024l * 1024l, 1024, 60l, 60l, new DiskCache(directory, 1024l * 1024l, 64l * 1024l, 1000));
+		assertThat("Response is not in memory", cache.isPresent(APP_ID, "/products/P001"), equalTo(false));
+		assertThat("Response is loaded from disk", cache.load(APP_ID, "/products/P001"), notNullValue());
+		assertThat("Response is found in memory", cache.get(APP_ID, "/products/P001"), notNullValue());
+		assertThat("Removed response is not loaded", cache.load(APP_ID, "/products/P002"), nullValue());
+		pw.println(" >> Cache stats: " + cache.stats().encode());
+		cache.close();
+	}
+
+	private static CachedResponse response(final String body, final long now) {
+		final Buffer buffer = Buffer.buffer(body);
+		return new CachedResponse(buffer, now, now + 60000l, now + 60000l, now + 60000l, new Validators(Validators.strongETag(buffer), null), "max-age=60", 
+				new Validators("\"v1\"", null));
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		final ResponseCache cache = new ResponseCache(1024l * 1024l, 64 * 1024, 60l, 0l);
+		final CacheControl cacheControl = CacheControl.parse(asList("max-age=60"));
+		for (int i = 0; i < 10; i++) cache.put("app", "/products/" + i, cacheControl, Buffer.buffer("product " + i));
+		cache.put("app", "/products/short", CacheControl.parse(asList("max-age=1")), Buffer.buffer("short"));
+		// the most used responses are saved
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j <= i; j++) cache.get("app", "/products/" + i);
+		}
+		cache.get("app", "/products/short");
+		final Path file = folder.newFolder().toPath().resolve("response-cache.snapshot");
+		final JsonObject written = cache.writeSnapshot(file, 6);
+		pw.println(" >> Snapshot written: " + written.encode());
+		assertThat("Written responses coincide with expected", written.getInteger("entries"), equalTo(6));
+		Thread.sleep(1100l);
+		// expired responses are skipped
+		final ResponseCache restored = new ResponseCache(1024l * 1024l, 64 * 1024, 60l, 0l);
+		final JsonObject loaded = restored.loadSnapshot(file);
+		pw.println(" >> Snapshot loaded: " + loaded.encode());
+		assertThat("Loaded responses coincide with expected", loaded.getLong("loaded"), equalTo(5l));
+		assertThat("Skipped responses coincide with expected", loaded.getLong("skipped"), equalTo(1l));
+		assertThat("Restored cache size coincides with expected", restored.size(), equalTo(5l));
+		for (int i = 0; i < 5; i++) {
+			final CachedResponse response = restored.get("app", "/products/" + i);
+			assertThat("Restored response is found", response, notNullValue());
+			assertThat("Restored response coincides with expected", response.getBody().toString(), equalTo("product " + i));
+			assertThat("Remaining lifetime is preserved", response.getExpiresAt(), equalTo(cache.get("app", "/products/" + i).getExpiresAt()));
+		}
+		assertThat("Cold response is not restored", restored.get("app", "/products/9"), nullValue());
+		assertThat("Expired response is not restored", restored.get("app", "/products/short"), nullValue());
+	}
+
+}
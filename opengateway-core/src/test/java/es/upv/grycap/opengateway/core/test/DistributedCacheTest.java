@@ -0,0 +1,127 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.Arrays.asList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+import org.junit.runner.RunWith;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.cache.CacheControl;
+import es.upv.grycap.opengateway.core.cache.DistributedCache;
+import es.upv.grycap.opengateway.core.cache.ResponseCache;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests the {@link DistributedCache}.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@RunWith(VertxUnitRunner.class)
+@Category(FunctionalTests.class)
+public class DistributedCacheTest {
+
+	public static final String APP_ID = "opengateway-test.product.v1";
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	private Vertx vertx;
+	private HazelcastInstance hazelcast;
+
+	@Before
+	public void before() {
+		vertx = Vertx.vertx();
+		// a single member is enough to test the cache
+		final Config config = new Config();
+		config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+		config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(false);
+		DistributedCache.configure(config, new JsonObject());
+		hazelcast = Hazelcast.newHazelcastInstance(config);
+	}
+
+	@Test
+	public void testDistributedCache(final TestContext context) {
+		final ResponseCache local1 = new ResponseCache(1024l * 1024l, 1024, 60l), local2 = new ResponseCache(1024l * 1024l, 1024, 60l);
+		final DistributedCache node1 = new DistributedCache(vertx, hazelcast.getMap(DistributedCache.MAP_NAME), local1, 5000l),
+				node2 = new DistributedCache(vertx, hazelcast.getMap(DistributedCache.MAP_NAME), local2, 5000l);
+		final CacheControl cacheControl = CacheControl.parse(asList("max-age=60"));
+		final Async async = context.async();
+		vertx.runOnContext(v -> {
+			// responses stored by a node are found by the other nodes
+			context.assertTrue(local1.put(APP_ID, "/products/P1", cacheControl, Buffer.buffer("P1")), "Response is stored");
+			node1.put(APP_ID, "/products/P1", local1.peek(APP_ID, "/products/P1"));
+			node2.get(APP_ID, "/products/P0", missing -> {
+				context.assertNull(missing, "Missing response is not found");
+				vertx.setTimer(200l, t -> node2.get(APP_ID, "/products/P1", shared -> {
+					context.assertNotNull(shared, "Response is found");
+					context.assertEquals("P1", shared.getBody().toString(), "Response coincides with expected");
+					context.assertEquals(local1.peek(APP_ID, "/products/P1").getExpiresAt(), shared.getExpiresAt(), "Lifetime is preserved");
+					context.assertTrue(local2.put(APP_ID, "/products/P1", shared), "Response is stored locally");
+					// removals are broadcast to the local caches of the other nodes
+					node1.invalidate(APP_ID, "/products/P1");
+					vertx.setTimer(200l, t2 -> {
+						context.assertNull(local2.peek(APP_ID, "/products/P1"), "Response is removed from the other nodes");
+						context.assertNotNull(local1.peek(APP_ID, "/products/P1"), "Removal is not applied to the sender");
+						node2.get(APP_ID, "/products/P1", removed -> {
+							context.assertNull(removed, "Response is removed from the distributed cache");
+							pw.println(" >> Distributed cache stats: " + node2.stats().encode());
+							context.assertEquals(1l, node2.stats().getLong("hits"), "Hits coincide with expected");
+							node1.close();
+							node2.close();
+							async.complete();
+						});
+					});
+				}));
+			});
+		});
+	}
+
+	@After
+	public void after(final TestContext context) {
+		hazelcast.shutdown();
+		vertx.close(context.asyncAssertSuccess());
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+
+import com.google.common.collect.ImmutableList;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.loadbalancer.BalancingStrategy;
+import es.upv.grycap.opengateway.core.loadbalancer.CachingLoadBalancer;
+import es.upv.grycap.opengateway.core.loadbalancer.ClusterRouter;
+import es.upv.grycap.opengateway.core.loadbalancer.ConsistentHashLoadBalancer;
+import es.upv.grycap.opengateway.core.loadbalancer.HealthCheckingLoadBalancer;
+import es.upv.grycap.opengateway.core.loadbalancer.LatencyAwareLoadBalancer;
+import es.upv.grycap.opengateway.core.loadbalancer.LoadBalancerClient;
+import es.upv.grycap.opengateway.core.loadbalancer.SingleNodeLoadBalancer;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests the load balancers.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@Category(FunctionalTests.class)
+public class LoadBalancerTest {
+
+	public static final String APP_ID = "opengateway-test.product.v1";
+	public static final int HEALTHY_PORT = 9084;
+	public static final int UNHEALTHY_PORT = 9085;
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	@Test
+	public void testRoundRobin() {
+		final SingleNodeLoadBalancer loadBalancer = new SingleNodeLoadBalancer()
+				.addService(APP_ID, "http://localhost:9080")
+				.addService(APP_ID, "http://localhost:9081", 5)
+				.addService(APP_ID, "http://localhost:9082");
+		final List<String> selected = IntStream.range(0, 6).mapToObj(i -> loadBalancer.getServiceInstance(APP_ID)).collect(toList());
+		assertThat("Instances are selected in turn", selected, equalTo(ImmutableList.of("http://localhost:9080", "http://localhost:9081", "http://localhost:9082", 
+				"http://localhost:9080", "http://localhost:9081", "http://localhost:9082")));
+		assertThat("Unknown application has no instances", loadBalancer.getServiceInstance("unknown"), nullValue());
+	}
+
+	@Test
+	public void testWeightedRoundRobin() {
+		final SingleNodeLoadBalancer loadBalancer = new SingleNodeLoadBalancer()
+				.addService(APP_ID, "a", 5)
+				.addService(APP_ID, "b", 1)
+				.addService(APP_ID, "c", 1)
+				.setStrategy(APP_ID, BalancingStrategy.fromName("weighted-round-robin"));
+		final StringBuilder sb = new StringBuilder();
+		IntStream.range(0, 14).forEach(i -> sb.append(loadBalancer.getServiceInstance(APP_ID)));
+		pw.println(" >> Sequence: " + sb);
+		assertThat("Selections are interleaved in proportion to the weights", sb.toString(), equalTo("aabacaaaabacaa"));
+	}
+
+	@Test
+	public void testConcurrentSelection() throws Exception {
+		final SingleNodeLoadBalancer loadBalancer = new SingleNodeLoadBalancer();
+		IntStream.range(0, 4).forEach(i -> loadBalancer.addService(APP_ID, "http://localhost:908" + i));
+		final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> IntStream.range(0, 1000).forEach(j -> counts.computeIfAbsent(loadBalancer.getServiceInstance(APP_ID), 
+					k -> new AtomicInteger()).incrementAndGet()));
+			threads[i].start();
+		}
+		for (final Thread thread : threads) thread.join();
+		pw.println(" >> Selections: " + counts);
+		counts.values().stream().forEach(count -> assertThat("Load is evenly distributed", count.get(), equalTo(2000)));
+	}
+
+	@Test
+	public void testLatencyAware() {
+		final LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer(new SingleNodeLoadBalancer()
+				.addService(APP_ID, "fast")
+				.addService(APP_ID, "slow"));
+		// record the latency of both instances
+		IntStream.range(0, 10).forEach(i -> {
+			loadBalancer.onRequestStart(APP_ID, "fast");
+			loadBalancer.onRequestComplete(APP_ID, "fast", MILLISECONDS.toNanos(10l), true);
+			loadBalancer.onRequestStart(APP_ID, "slow");
+			loadBalancer.onRequestComplete(APP_ID, "slow", MILLISECONDS.toNanos(200l), true);
+		});
+		pw.println(" >> Load: " + loadBalancer.stats(APP_ID).encode());
+		assertThat("Fastest instance is selected", loadBalancer.getServiceInstance(APP_ID), equalTo("fast"));
+		// requests in flight increase the load of the fastest instance until the slowest instance is preferred
+		IntStream.range(0, 25).forEach(i -> loadBalancer.onRequestStart(APP_ID, "fast"));
+		assertThat("Less loaded instance is selected", loadBalancer.getServiceInstance(APP_ID), equalTo("slow"));
+		assertThat("Requests in flight coincides with expected", loadBalancer.stats(APP_ID).getJsonObject("fast").getInteger("inflight"), equalTo(25));
+	}
+
+	@Test
+	public void testConsistentHash() {
+		final ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(new SingleNodeLoadBalancer()
+				.addService(APP_ID, "a")
+				.addService(APP_ID, "b")
+				.addService(APP_ID, "c")
+				.addService(APP_ID, "d"));
+		assertThat("Same key is routed to the same instance", loadBalancer.getServiceInstanceByKey(APP_ID, "P001"), 
+				equalTo(loadBalancer.getServiceInstanceByKey(APP_ID, "P001")));
+		// removing an instance only moves the keys assigned to that instance
+		final List<String> instances = ImmutableList.of("a", "b", "c", "d"), remaining = ImmutableList.of("a", "b", "d");
+		final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+		int moved = 0;
+		for (int i = 0; i < 10000; i++) {
+			final String key = "P" + i, before = loadBalancer.select(key, instances), after = loadBalancer.select(key, remaining);
+			counts.computeIfAbsent(before, k -> new AtomicInteger()).incrementAndGet();
+			if (!before.equals(after)) {
+				assertThat("Only the keys of the removed instance are moved", before, equalTo("c"));
+				moved++;
+			}
+		}
+		pw.println(" >> Selections: " + counts + ", moved keys: " + moved);
+		assertThat("About 1/N of the keys are moved", Math.abs(moved - 2500) < 300, equalTo(true));
+		counts.values().stream().forEach(count -> assertThat("Keys are evenly distributed", Math.abs(count.get() - 2500) < 300, equalTo(true)));
+	}
+
+	@Test
+	public void testClusterRouter() {
+		final Config config = new Config();
+		config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+		config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(false);
+		final HazelcastInstance hazelcast = Hazelcast.newHazelcastInstance(config);
+		try {
+			final ClusterRouter router = new ClusterRouter(hazelcast);
+			// a single node owns all the keys
+			final String owner = router.owner(APP_ID + "/P001");
+			assertThat("Same key is owned by the same node", router.owner(APP_ID + "/P001"), equalTo(owner));
+			assertThat("Local node owns the key", router.isLocal(owner), equalTo(true));
+			assertThat("Address coincides with expected", router.localAddress(), equalTo(router.address(owner)));
+			router.recordLocal();
+			router.recordForwarded(MILLISECONDS.toNanos(3l), MILLISECONDS.toNanos(1l));
+			final JsonObject stats = router.stats();
+			pw.println(" >> Cluster router stats: " + stats.encode());
+			assertThat("Members coincide with expected", stats.getInteger("members"), equalTo(1));
+			assertThat("Forwarded requests coincide with expected", stats.getLong("forwarded"), equalTo(1l));
+			assertThat("Overhead coincides with expected", stats.getDouble("mean-overhead-ms"), equalTo(2.0d));
+			router.close();
+		} finally {
+			hazelcast.shutdown();
+		}
+	}
+
+	@Test
+	public void testCachingLoadBalancer() throws Exception {
+		final AtomicInteger queries = new AtomicInteger();
+		final AtomicBoolean available = new AtomicBoolean(true);
+		final SingleNodeLoadBalancer registry = new SingleNodeLoadBalancer()
+				.addService(APP_ID, "http://localhost:9080")
+				.addService(APP_ID, "http://localhost:9081");
+		// simulate a remote registry that can fail
+		final LoadBalancerClient remoteRegistry = new LoadBalancerClient() {
+			@Override
+			public List<String> query(final String serviceRegistry, final String appId) {
+				return registry.query(serviceRegistry, appId);
+			}
+			@Override
+			public List<String> query(final String appId) {
+				queries.incrementAndGet();
+				if (!available.get()) throw new IllegalStateException("Registry is unavailable");
+				return registry.query(appId);
+			}
+			@Override
+			public String getServiceInstance(final String serviceRegistry, final String appId) {
+				return registry.getServiceInstance(serviceRegistry, appId);
+			}
+			@Override
+			public String getServiceInstance(final String appId) {
+				return registry.getServiceInstance(appId);
+			}
+		};
+		final Vertx vertx = Vertx.vertx();
+		try (final CachingLoadBalancer loadBalancer = new CachingLoadBalancer(remoteRegistry, 100l, 0.2d)) {
+			// the snapshot is refreshed in the background once the load balancer is started
+			loadBalancer.start(vertx);
+			// the first lookup queries the registry in the background
+			final CompletableFuture<String> instance = new CompletableFuture<>();
+			loadBalancer.getServiceInstanceAsync(APP_ID, null, res -> {
+				if (res.succeeded()) instance.complete(res.result());
+				else instance.completeExceptionally(res.cause());
+			});
+			assertThat("Instance is found", instance.get(5l, SECONDS), equalTo("http://localhost:9080"));
+			assertThat("Next instance is selected from the snapshot", loadBalancer.getServiceInstance(APP_ID), equalTo("http://localhost:9081"));
+			// stale instances are served when the registry is unavailable
+			available.set(false);
+			final int before = queries.get();
+			for (int i = 0; i < 50 && queries.get() < before + 2; i++) Thread.sleep(50l);
+			pw.println(" >> Snapshot stats: " + loadBalancer.stats().encode());
+			assertThat("Snapshot was refreshed in the background", queries.get() >= before + 2, equalTo(true));
+			assertThat("Failed refreshes are recorded", loadBalancer.stats().getLong("refresh-failures") > 0l, equalTo(true));
+			assertThat("Stale instances are served", loadBalancer.query(APP_ID).size(), equalTo(2));
+		} finally {
+			vertx.close();
+		}
+	}
+
+	@Test
+	public void testPassiveHealthChecks() {
+		final HealthCheckingLoadBalancer loadBalancer = new HealthCheckingLoadBalancer(new SingleNodeLoadBalancer()
+				.addService(APP_ID, "a")
+				.addService(APP_ID, "b"), new JsonObject().put("failure-threshold", 3));
+		IntStream.range(0, 3).forEach(i -> loadBalancer.onRequestComplete(APP_ID, "a", 0l, false));
+		pw.println(" >> Health: " + loadBalancer.stats(APP_ID).encode());
+		assertThat("Failing instance is ejected", loadBalancer.isAvailable(APP_ID, "a"), equalTo(false));
+		IntStream.range(0, 10).forEach(i -> assertThat("Only the healthy instance is selected", loadBalancer.getServiceInstance(APP_ID), equalTo("b")));
+		assertThat("Only the healthy instance is listed", loadBalancer.query(APP_ID), equalTo(ImmutableList.of("b")));
+		// all the instances are used when all of them are ejected
+		IntStream.range(0, 3).forEach(i -> loadBalancer.onRequestComplete(APP_ID, "b", 0l, false));
+		assertThat("All the instances are listed", loadBalancer.query(APP_ID), equalTo(ImmutableList.of("a", "b")));
+	}
+
+	@Test
+	public void testActiveHealthChecks() throws Exception {
+		final Vertx vertx = Vertx.vertx();
+		final CompletableFuture<Void> listening = new CompletableFuture<>();
+		vertx.createHttpServer().requestHandler(request -> request.response().end("OK")).listen(HEALTHY_PORT, res -> listening.complete(null));
+		listening.get(5l, SECONDS);
+		final String healthy = "http://localhost:" + HEALTHY_PORT, unhealthy = "http://localhost:" + UNHEALTHY_PORT;
+		final HealthCheckingLoadBalancer loadBalancer = new HealthCheckingLoadBalancer(new SingleNodeLoadBalancer()
+				.addService(APP_ID, healthy)
+				.addService(APP_ID, unhealthy), new JsonObject().put("interval", 50l).put("timeout", 500l).put("failure-threshold", 2));
+		try {
+			assertThat("Both instances are available", loadBalancer.query(APP_ID).size(), equalTo(2));
+			loadBalancer.start(vertx);
+			for (int i = 0; i < 100 && loadBalancer.isAvailable(APP_ID, unhealthy); i++) Thread.sleep(50l);
+			pw.println(" >> Health: " + loadBalancer.stats(APP_ID).encode());
+			assertThat("Unreachable instance is ejected", loadBalancer.isAvailable(APP_ID, unhealthy), equalTo(false));
+			assertThat("Reachable instance is available", loadBalancer.isAvailable(APP_ID, healthy), equalTo(true));
+		} finally {
+			loadBalancer.stop();
+			vertx.close();
+		}
+	}
+
+	@Test
+	public void testRandom() {
+		final SingleNodeLoadBalancer loadBalancer = new SingleNodeLoadBalancer(BalancingStrategy.RANDOM)
+				.addService(APP_ID, "a", 3)
+				.addService(APP_ID, "b", 1);
+		final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+		IntStream.range(0, 10000).forEach(i -> counts.computeIfAbsent(loadBalancer.getServiceInstance(APP_ID), k -> new AtomicInteger()).incrementAndGet());
+		pw.println(" >> Selections: " + counts);
+		assertThat("Instances are selected in proportion to the weights", Math.abs(counts.get("a").get() - 7500) < 500, equalTo(true));
+	}
+
+}
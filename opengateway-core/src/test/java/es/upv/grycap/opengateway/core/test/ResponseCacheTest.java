@@ -0,0 +1,226 @@
+/*
+ * Open Gateway - Core Components.
+ * Copyright 2015-2016 GRyCAP (Universitat Politecnica de Valencia)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This product combines work with different licenses. See the "NOTICE" text
+ * file for details on the various modules and licenses.
+ * 
+ * The "NOTICE" text file is part of the distribution. Any derivative works
+ * that you distribute must include a readable copy of the "NOTICE" text file.
+ */
+
+package es.upv.grycap.opengateway.core.test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestRule;
+
+import es.upv.grycap.coreutils.test.category.FunctionalTests;
+import es.upv.grycap.coreutils.test.rules.TestPrinter;
+import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.cache.CacheControl;
+import es.upv.grycap.opengateway.core.cache.CachedResponse;
+import es.upv.grycap.opengateway.core.cache.LocalResponseCache;
+import es.upv.grycap.opengateway.core.cache.NegativeCache;
+import es.upv.grycap.opengateway.core.cache.ResponseCache;
+import es.upv.grycap.opengateway.core.cache.Validators;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests the {@link ResponseCache}.
+ * @author Erik Torres <etserrano@gmail.com>
+ * @since 0.0.1
+ */
+@Category(FunctionalTests.class)
+public class ResponseCacheTest {
+
+	public static final String APP_ID = "opengateway-test.product.v1";
+
+	@Rule
+	public TestPrinter pw = new TestPrinter();
+
+	@Rule
+	public TestRule watchman = new TestWatcher2(pw);
+
+	@Test
+	public void testCacheControl() {
+		CacheControl cacheControl = CacheControl.parse(asList("public, max-age=86400"));
+		assertThat("Lifetime coincides with expected", cacheControl.sharedMaxAge(), equalTo(86400l));
+		cacheControl = CacheControl.parse(asList("max-age=60", "s-maxage=\"120\""));
+		assertThat("Shared lifetime takes precedence", cacheControl.sharedMaxAge(), equalTo(120l));
+		assertThat("Private responses are not stored", CacheControl.parse(asList("private, max-age=60")).sharedMaxAge(), equalTo(0l));
+		assertThat("Responses marked with no-store are not stored", CacheControl.parse(asList("no-store")).sharedMaxAge(), equalTo(0l));
+		assertThat("Responses without lifetime are not stored", CacheControl.parse(null).sharedMaxAge(), equalTo(0l));
+		assertThat("Invalid lifetime is ignored", CacheControl.parse(asList("max-age=abc")).getMaxAge(), equalTo(-1l));
+		cacheControl = CacheControl.parse(asList("max-age=60, stale-while-revalidate=30, stale-if-error=600"));
+		assertThat("Stale-while-revalidate coincides with expected", cacheControl.getStaleWhileRevalidate(), equalTo(30l));
+		assertThat("Stale-if-error coincides with expected", cacheControl.getStaleIfError(), equalTo(600l));
+	}
+
+	@Test
+	public void testValidators() {
+		final String etag = Validators.strongETag(Buffer.buffer("{\"id\":\"P001\"}"));
+		assertThat("Entity tag is strong", Validators.isStrong(etag), equalTo(true));
+		assertThat("Entity tag is stable", Validators.strongETag(Buffer.buffer("{\"id\":\"P001\"}")), equalTo(etag));
+		assertThat("Entity tag changes with the content", Validators.strongETag(Buffer.buffer("{\"id\":\"P002\"}")).equals(etag), equalTo(false));
+		final Validators validators = new Validators(etag, "Thu, 01 Jan 2015 00:00:00 GMT");
+		assertThat("Matching entity tag is not modified", validators.isNotModified(asList("\"abc\", " + etag), null), equalTo(true));
+		assertThat("Weak comparison is used", validators.isNotModified(asList("W/" + etag), null), equalTo(true));
+		assertThat("Other entity tag is modified", validators.isNotModified(asList("\"abc\""), "Fri, 01 Jan 2016 00:00:00 GMT"), equalTo(false));
+		assertThat("Later date is not modified", validators.isNotModified(null, "Fri, 01 Jan 2016 00:00:00 GMT"), equalTo(true));
+		assertThat("Earlier date is modified", validators.isNotModified(null, "Wed, 01 Jan 2014 00:00:00 GMT"), equalTo(false));
+		assertThat("Invalid date is ignored", validators.isNotModified(null, "yesterday"), equalTo(false));
+	}
+
+	@Test
+	public void testCache() {
+		final ResponseCache cache = new ResponseCache(1024l * 1024l, 1024, 60l);
+		final CacheControl cacheControl = CacheControl.parse(asList("max-age=60"));
+		// store and retrieve
+		assertThat("Response is stored", cache.put(APP_ID, "/products/P001", cacheControl, Buffer.buffer("{\"id\":\"P001\"}")), equalTo(true));
+		assertThat("Response is found", cache.get(APP_ID, "/products/P001"), notNullValue());
+		assertThat("Response of other path is not found", cache.get(APP_ID, "/products/P002"), nullValue());
+		// non-cacheable responses
+		assertThat("Response without lifetime is not stored", cache.put(APP_ID, "/products/P002", CacheControl.parse(null), Buffer.buffer("{}")), equalTo(false));
+		assertThat("Large response is not stored", cache.put(APP_ID, "/products/P003", cacheControl, Buffer.buffer(new byte[2048])), equalTo(false));
+		// invalidation
+		cache.invalidate(APP_ID, "/products/P001");
+		assertThat("Invalidated response is not found", cache.get(APP_ID, "/products/P001"), nullValue());
+		// metrics
+		final JsonObject stats = cache.stats();
+		pw.println(" >> Cache stats: " + stats.encode());
+		assertThat("Hits coincides with expected", stats.getLong("hits"), equalTo(1l));
+		assertThat("Misses coincides with expected", stats.getLong("misses"), equalTo(2l));
+	}
+
+	@Test
+	public void testStale() throws InterruptedException {
+		final ResponseCache cache = new ResponseCache(1024l * 1024l, 1024, 60l, 60l);
+		cache.put(APP_ID, "/products/P001", CacheControl.parse(asList("max-age=1, stale-while-revalidate=60")), Buffer.buffer("{\"id\":\"P001\"}"));
+		cache.put(APP_ID, "/products/P002", CacheControl.parse(asList("max-age=1, stale-if-error=60")), Buffer.buffer("{\"id\":\"P002\"}"));
+		cache.put(APP_ID, "/products/P003", CacheControl.parse(asList("max-age=1")), Buffer.buffer("{\"id\":\"P003\"}"));
+		final Buffer body = Buffer.buffer("{\"id\":\"P004\"}");
+		cache.put(APP_ID, "/products/P004", CacheControl.parse(asList("max-age=1")), body, new Validators(Validators.strongETag(body), null), 
+				new Validators("\"v1\"", null));
+		assertThat("Fresh response is not served stale", cache.getStaleWhileRevalidate(APP_ID, "/products/P001"), nullValue());
+		Thread.sleep(1100l);
+		// expired responses are only served stale when the upstream service allows it
+		assertThat("Expired response is not found", cache.get(APP_ID, "/products/P001"), nullValue());
+		assertThat("Response is served while revalidated", cache.getStaleWhileRevalidate(APP_ID, "/products/P001"), notNullValue());
+		assertThat("Response is not served on error", cache.getStaleIfError(APP_ID, "/products/P001"), nullValue());
+		assertThat("Response is served on error", cache.getStaleIfError(APP_ID, "/products/P002"), notNullValue());
+		assertThat("Response is not served while revalidated", cache.getStaleWhileRevalidate(APP_ID, "/products/P002"), nullValue());
+		assertThat("Expired response is not found", cache.get(APP_ID, "/products/P003"), nullValue());
+		assertThat("Expired response is removed", cache.getStaleIfError(APP_ID, "/products/P003"), nullValue());
+		// expired responses with upstream validators are kept until they are revalidated
+		assertThat("Expired response is not found", cache.get(APP_ID, "/products/P004"), nullValue());
+		final CachedResponse expired = cache.getForRevalidation(APP_ID, "/products/P004");
+		assertThat("Expired response can be revalidated", expired, notNullValue());
+		assertThat("Upstream validators coincide with expected", expired.getUpstreamValidators().getETag(), equalTo("\"v1\""));
+		assertThat("Response without validators cannot be revalidated", cache.getForRevalidation(APP_ID, "/products/P001"), nullValue());
+		assertThat("Revalidated response is fresh", cache.refresh(APP_ID, "/products/P004", expired, CacheControl.parse(null)).isFresh(System.currentTimeMillis()), equalTo(true));
+		assertThat("Revalidated response is found", cache.get(APP_ID, "/products/P004"), notNullValue());
+		// only one revalidation at a time
+		assertThat("First revalidation is started", cache.startRevalidation(APP_ID, "/products/P001"), equalTo(true));
+		assertThat("Concurrent revalidation is not started", cache.startRevalidation(APP_ID, "/products/P001"), equalTo(false));
+		cache.endRevalidation(APP_ID, "/products/P001");
+		assertThat("New revalidation is started", cache.startRevalidation(APP_ID, "/products/P001"), equalTo(true));
+		pw.println(" >> Cache stats: " + cache.stats().encode());
+		assertThat("Stale hits coincides with expected", cache.stats().getLong("stale-hits"), equalTo(2l));
+	}
+
+	@Test
+	public void testNegativeCache() {
+		final AtomicLong now = new AtomicLong(1000000l);
+		final NegativeCache cache = new NegativeCache(4000l, 100, now::get);
+		cache.add(APP_ID, "/products/P001");
+		cache.add(APP_ID, "/products/P002");
+		assertThat("Missing item is found", cache.contains(APP_ID, "/products/P001"), equalTo(true));
+		assertThat("Other item is not found", cache.contains(APP_ID, "/products/P003"), equalTo(false));
+		assertThat("Item of other application is not found", cache.contains("opengateway-test.other.v1", "/products/P001"), equalTo(false));
+		// invalidation
+		cache.invalidate(APP_ID, "/products/P002");
+		assertThat("Invalidated item is not found", cache.contains(APP_ID, "/products/P002"), equalTo(false));
+		// expiration
+		now.addAndGet(2000l);
+		assertThat("Item is found before it expires", cache.contains(APP_ID, "/products/P001"), equalTo(true));
+		now.addAndGet(2000l);
+		assertThat("Expired item is not found", cache.contains(APP_ID, "/products/P001"), equalTo(false));
+		// bounded buckets
+		for (int i = 0; i < 1000; i++) cache.add(APP_ID, "/products/X" + i);
+		assertThat("First item of the bucket is found", cache.contains(APP_ID, "/products/X0"), equalTo(true));
+		assertThat("Items beyond the limit are not stored", cache.contains(APP_ID, "/products/X999"), equalTo(false));
+		cache.invalidateAll(APP_ID);
+		assertThat("Cache is empty", cache.size(), equalTo(0l));
+		pw.println(" >> Negative cache stats: " + cache.stats().encode());
+		assertThat("Rejected coincides with expected", cache.stats().getLong("rejected"), equalTo(900l));
+	}
+
+	@Test
+	public void testEviction() {
+		final ResponseCache cache = new ResponseCache(16l * 1024l, 1024, 60l);
+		final CacheControl cacheControl = CacheControl.parse(asList("max-age=60"));
+		for (int i = 0; i < 100; i++) cache.put(APP_ID, "/products/P" + i, cacheControl, Buffer.buffer(new byte[1000]));
+		pw.println(" >> Cache stats: " + cache.stats().encode());
+		assertThat("Cache is bounded", cache.size() < 100l, equalTo(true));
+		assertThat("Last response is found", cache.get(APP_ID, "/products/P99"), notNullValue());
+	}
+
+	@Test
+	public void testLocalCache() {
+		final ResponseCache shared = new ResponseCache(1024l * 1024l, 1024, 60l);
+		final LocalResponseCache local1 = new LocalResponseCache(shared, 16), local2 = new LocalResponseCache(shared, 16);
+		final CacheControl cacheControl = CacheControl.parse(asList("max-age=60"));
+		shared.put(APP_ID, "/products/P1", cacheControl, Buffer.buffer("v1"));
+		// responses are promoted from the shared cache
+		assertThat("Response is not in the local cache", local1.isPresent(APP_ID, "/products/P1"), equalTo(false));
+		assertThat("Response is found", local1.get(APP_ID, "/products/P1").getBody().toString(), equalTo("v1"));
+		assertThat("Response is promoted", local1.isPresent(APP_ID, "/products/P1"), equalTo(true));
+		assertThat("Response is found", local1.get(APP_ID, "/products/P1").getBody().toString(), equalTo("v1"));
+		assertThat("Response is found", local2.get(APP_ID, "/products/P1").getBody().toString(), equalTo("v1"));
+		assertThat("Local hits coincide with expected", shared.stats().getLong("local-hits"), equalTo(1l));
+		assertThat("Hits coincide with expected", shared.stats().getLong("hits"), equalTo(3l));
+		// changes are applied to all the local caches
+		shared.put(APP_ID, "/products/P1", cacheControl, Buffer.buffer("v2"));
+		assertThat("Response is updated", local1.get(APP_ID, "/products/P1").getBody().toString(), equalTo("v2"));
+		assertThat("Response is updated", local2.get(APP_ID, "/products/P1").getBody().toString(), equalTo("v2"));
+		shared.invalidate(APP_ID, "/products/P1");
+		assertThat("Response is removed", local1.get(APP_ID, "/products/P1"), nullValue());
+		assertThat("Response is removed", local2.isPresent(APP_ID, "/products/P1"), equalTo(false));
+		// local caches are bounded
+		for (int i = 0; i < 100; i++) {
+			shared.put(APP_ID, "/products/P" + i, cacheControl, Buffer.buffer("v" + i));
+			local1.get(APP_ID, "/products/P" + i);
+		}
+		pw.println(" >> Cache stats: " + shared.stats().encode());
+		assertThat("Local cache is bounded", local1.size() <= 16, equalTo(true));
+		assertThat("Last response is promoted", local1.isPresent(APP_ID, "/products/P99"), equalTo(true));
+		shared.invalidateAll();
+		assertThat("Local cache is empty", local1.size(), equalTo(0));
+		local1.close();
+		local2.close();
+	}
+
+}
@@ -26,11 +26,14 @@ package es.upv.grycap.opengateway.core.test;
 import static com.google.common.collect.ImmutableList.of;
 import static com.google.common.collect.Lists.newArrayList;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.ArrayUtils.add;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -47,6 +50,7 @@ import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 import es.upv.grycap.coreutils.test.category.FunctionalTests;
 import es.upv.grycap.coreutils.test.rules.TestPrinter;
 import es.upv.grycap.coreutils.test.rules.TestWatcher2;
+import es.upv.grycap.opengateway.core.http.HttpTransport.Backend;
 import es.upv.grycap.opengateway.core.http.VertxHttp2Client;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServer;
@@ -73,12 +77,12 @@ public class VertxHttp2ClientTest {
 
 	/**
 	 * Provides an input dataset with different data formats (JSON, XML) and different access methods (URL fragment, 
-	 * query parameter). Some tests will surpass the concurrency level.
+	 * query parameter). Some tests will surpass the concurrency level. All the requests are submitted with the available transports.
 	 * @return Parameters for the different test scenarios.
 	 */
-	@Parameters(name = "{index}: method={0}, path={1}, objectId={2}, contentType={3}, parseResp={4}, nocache={5}")
+	@Parameters(name = "{index}: backend={0}, method={1}, path={2}, objectId={3}, contentType={4}, parseResp={5}, nocache={6}")
 	public static Collection<Object[]> data() {
-		return Arrays.asList(new Object[][] {
+		final List<Object[]> requests = Arrays.asList(new Object[][] {
 			/* 0*/ { "GET",    "/test/json/1",   "1", of("application/json"), false, true },
 			/* 1*/ { "GET",    "/test/json/2",   "2", of("application/json"), true,  true },
 			/* 2*/ { "GET",    "/test/xml/1",    "1", of("application/xml"),  false, true },
@@ -98,14 +102,16 @@ public class VertxHttp2ClientTest {
 			/*16*/ { "DELETE", "/test/json/2",   "2", of("application/json"), false, true  },
 			/*17*/ { "DELETE", "/test/xml/1",    "1", of("application/xml"),  false, true  }
 		});
+		return Stream.of(Backend.values()).flatMap(b -> requests.stream().map(r -> add(r, 0, b))).collect(toList());
 	}
 
-	@Parameter(value = 0) public String method;
-	@Parameter(value = 1) public String path;
-	@Parameter(value = 2) public String objectId;
-	@Parameter(value = 3) public List<String> contentType;
-	@Parameter(value = 4) public boolean parseResp;
-	@Parameter(value = 5) public boolean nocache;
+	@Parameter(value = 0) public Backend backend;
+	@Parameter(value = 1) public String method;
+	@Parameter(value = 2) public String path;
+	@Parameter(value = 3) public String objectId;
+	@Parameter(value = 4) public List<String> contentType;
+	@Parameter(value = 5) public boolean parseResp;
+	@Parameter(value = 6) public boolean nocache;
 
 	private Vertx vertx;
 
@@ -128,7 +134,7 @@ public class VertxHttp2ClientTest {
 			req.response().putHeader("content-type", respContentType).end(body);
 		});
 		server.listen(9080, "localhost", context.asyncAssertSuccess(s -> {
-			final VertxHttp2Client client = new VertxHttp2Client(vertx);
+			final VertxHttp2Client client = new VertxHttp2Client(backend.create(vertx));
 			final Async async = context.async();
 			// submit request
 			switch (method) {